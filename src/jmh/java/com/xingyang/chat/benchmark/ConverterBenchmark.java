@@ -0,0 +1,100 @@
+package com.xingyang.chat.benchmark;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xingyang.chat.convert.ConversationConverter;
+import com.xingyang.chat.model.dto.ConversationDto;
+import com.xingyang.chat.model.entity.Conversation;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Converting a page of conversations with the generated converter against the former reflective
+ * BeanUtils.copyProperties conversion
+ *
+ * @author XingYang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConverterBenchmark {
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    private ConversationConverter conversationConverter;
+
+    private Page<Conversation> page;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        conversationConverter = Mappers.getMapper(ConversationConverter.class);
+        page = samplePage(pageSize);
+    }
+
+    @Benchmark
+    public Page<ConversationDto> generated() {
+        return conversationConverter.toDtoPage(page);
+    }
+
+    /**
+     * The conversion as it was done before the generated converters
+     */
+    @Benchmark
+    public Page<ConversationDto> reflective() {
+        Page<ConversationDto> dtoPage = new Page<>();
+        BeanUtils.copyProperties(page, dtoPage, "records");
+        dtoPage.setRecords(page.getRecords().stream().map(conversation -> {
+            ConversationDto dto = new ConversationDto();
+            BeanUtils.copyProperties(conversation, dto);
+            if (conversation.getModelId() != null) {
+                dto.setModelId(conversation.getModelId().toString());
+            }
+            dto.setMessages(new ArrayList<>());
+            return dto;
+        }).collect(Collectors.toList()));
+        return dtoPage;
+    }
+
+    private static Page<Conversation> samplePage(int size) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Conversation> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Conversation conversation = new Conversation();
+            conversation.setId((long) i + 1);
+            conversation.setTitle("Conversation " + i);
+            conversation.setUserId(1L);
+            conversation.setModelId(1L);
+            conversation.setStatus(1);
+            conversation.setLastMessagePreview("How do I configure Redis cache in Spring Boot");
+            conversation.setMessageCount(i % 50);
+            conversation.setTotalTokens(i * 40);
+            conversation.setCreateTime(now.minusMinutes(i));
+            conversation.setUpdateTime(now.minusSeconds(i));
+            records.add(conversation);
+        }
+        Page<Conversation> page = new Page<>(1, size, size * 10L);
+        page.setRecords(records);
+        return page;
+    }
+}
@@ -0,0 +1,96 @@
+package com.xingyang.chat.benchmark;
+
+import com.xingyang.chat.util.InvertedIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build time and query latency of the message search index on synthetic messages
+ * <p>
+ * Messages are one of a few Chinese and English questions with a numeric suffix, 20 per conversation.
+ *
+ * @author XingYang
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SearchIndexBenchmark {
+
+    private static final String[] TEMPLATES = {
+            "如何在Spring Boot中配置Redis缓存", "什么是微服务架构以及它的优缺点", "请帮我写一个快速排序算法",
+            "MySQL索引为什么使用B+树", "How do I configure Redis cache in Spring Boot",
+            "Explain the difference between processes and threads", "Write a quicksort implementation in Java",
+            "Why does MySQL use B+ trees for indexes", "解释一下Java中的垃圾回收机制",
+            "What is the CAP theorem in distributed systems"
+    };
+
+    private static final String[] QUERIES = {
+            "如何配置Redis缓存", "configure Redis cache Spring Boot", "快速排序", "garbage collection Java",
+            "MySQL B+树索引", "CAP theorem"
+    };
+
+    @Param({"10000", "100000"})
+    private int documents;
+
+    private InvertedIndex index;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = build(documents);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<InvertedIndex.Hit> search() {
+        return index.search(QUERIES[next++ % QUERIES.length], 20);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public InvertedIndex buildIndex() {
+        return build(documents);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static InvertedIndex build(int documents) {
+        Random random = new Random(42);
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < documents; i++) {
+            String content = TEMPLATES[random.nextInt(TEMPLATES.length)] + " #" + random.nextInt(5000);
+            index.add(i / 20 + 1, i % 20 + 1, content);
+        }
+        return index;
+    }
+}
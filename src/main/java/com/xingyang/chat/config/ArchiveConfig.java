@@ -0,0 +1,51 @@
+package com.xingyang.chat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Conversation Archive Configuration
+ *
+ * @author XingYang
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.archive")
+public class ArchiveConfig {
+
+    /**
+     * Move idle conversations out of MySQL into MinIO
+     */
+    private Boolean enabled = true;
+
+    /**
+     * Days without activity after which a conversation is archived
+     */
+    private Integer idleDays = 14;
+
+    /**
+     * Time between two archive runs, in minutes
+     */
+    private Long intervalMinutes = 60L;
+
+    /**
+     * Maximum number of conversations archived per run
+     */
+    private Integer conversationsPerRun = 200;
+
+    /**
+     * Rows deleted or restored per statement
+     */
+    private Integer batchSize = 500;
+
+    /**
+     * Number of rehydrated conversations kept in memory
+     */
+    private Integer cacheSize = 200;
+
+    /**
+     * Object name prefix of the archive blobs in the MinIO bucket
+     */
+    private String objectPrefix = "conversation-archive/";
+}
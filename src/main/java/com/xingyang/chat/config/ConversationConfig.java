@@ -0,0 +1,117 @@
+package com.xingyang.chat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Conversation Configuration
+ *
+ * @author XingYang
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.conversation")
+public class ConversationConfig {
+
+    /**
+     * Number of messages per page when no limit is given
+     */
+    private Integer messagePageSize = 30;
+
+    /**
+     * Largest page of messages a client may request
+     */
+    private Integer maxMessagePageSize = 200;
+
+    /**
+     * Number of conversations per page of the cursor-paginated list
+     */
+    private Integer conversationPageSize = 20;
+
+    /**
+     * Largest page of conversations a client may request
+     */
+    private Integer maxConversationPageSize = 100;
+
+    /**
+     * Maximum length of the last-message preview stored on a conversation
+     */
+    private Integer previewLength = 100;
+
+    /**
+     * Serve conversation lists from the per-user Redis index
+     */
+    private Boolean recentIndexEnabled = true;
+
+    /**
+     * Maximum number of conversations kept in a user's index
+     */
+    private Integer recentIndexMaxSize = 500;
+
+    /**
+     * Idle time after which a user's index is dropped, in hours
+     */
+    private Integer recentIndexTtlHours = 168;
+
+    /**
+     * Time a rebuild holds a user's index before another node may start one, in seconds
+     */
+    private Integer recentIndexRebuildLockSeconds = 60;
+
+    /**
+     * Time activity on a cold index is kept for the next rebuild to replay, in seconds
+     */
+    private Integer recentIndexBufferSeconds = 300;
+
+    /**
+     * Maximum number of activity entries kept per cold index
+     */
+    private Integer recentIndexBufferSize = 1000;
+
+    /**
+     * Maximum number of conversations written per transaction by the bulk import
+     */
+    private Integer importBatchConversations = 200;
+
+    /**
+     * Maximum number of messages written per transaction by the bulk import
+     */
+    private Integer importBatchMessages = 2000;
+
+    /**
+     * Maximum number of rejected records described in the import result
+     */
+    private Integer importMaxErrors = 20;
+
+    /**
+     * Time between flushes of coalesced conversation activity, in milliseconds
+     */
+    private Long activityFlushMillis = 3000L;
+
+    /**
+     * Maximum number of conversations updated per activity flush statement
+     */
+    private Integer activityFlushBatchSize = 500;
+
+    /**
+     * Age after which a conversation still marked as having unflushed activity is recounted, and the
+     * time between looks for such conversations, in seconds
+     */
+    private Integer activityRepairSeconds = 60;
+
+    /**
+     * Number of local locks appends are spread over by conversation ID
+     */
+    private Integer appendLockStripes = 1024;
+
+    /**
+     * Lifetime of the cluster-wide append lease in milliseconds, bounds how long a crashed node blocks a conversation
+     */
+    private Long appendLeaseMillis = 10000L;
+
+    /**
+     * How long an append waits for its conversation before giving up, in milliseconds
+     */
+    private Long appendWaitMillis = 3000L;
+}
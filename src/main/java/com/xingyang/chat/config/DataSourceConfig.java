@@ -0,0 +1,68 @@
+package com.xingyang.chat.config;
+
+import com.xingyang.chat.datasource.RoutingDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Source Configuration
+ * <p>
+ * The primary pool is configured under {@code spring.datasource} as before; replicas under
+ * {@code chat.datasource.replicas} reuse its pool settings.
+ *
+ * @author XingYang
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public RoutingDataSource routingDataSource(HikariDataSource primaryDataSource, ReplicaConfig replicaConfig) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (ReplicaConfig.Replica replica : replicaConfig.getReplicas()) {
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setPoolName("replica-" + replicas.size());
+            config.setJdbcUrl(replica.getUrl());
+            if (replica.getUsername() != null) {
+                config.setUsername(replica.getUsername());
+                config.setPassword(replica.getPassword());
+            }
+            if (replica.getMaximumPoolSize() != null) {
+                config.setMaximumPoolSize(replica.getMaximumPoolSize());
+            }
+            config.setReadOnly(true);
+            replicas.add(new HikariDataSource(config));
+        }
+        return new RoutingDataSource(primaryDataSource, replicas);
+    }
+
+    /**
+     * Data source used by MyBatis and the transaction manager
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(RoutingDataSource routingDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routingDataSource);
+        // Known defaults, so no connection is taken at startup to find them out
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        return proxy;
+    }
+}
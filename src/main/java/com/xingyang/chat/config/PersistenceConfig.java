@@ -0,0 +1,103 @@
+package com.xingyang.chat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Message Persistence Configuration
+ *
+ * @author XingYang
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.persistence")
+public class PersistenceConfig {
+
+    /**
+     * Write chat turns through the local write-ahead log instead of directly to the database
+     */
+    private Boolean writeBehindEnabled = true;
+
+    /**
+     * Directory holding the write-ahead log segments
+     */
+    private String walDir = "data/wal";
+
+    /**
+     * Size at which a new log segment is started, in bytes
+     */
+    private Long walSegmentBytes = 16L * 1024 * 1024;
+
+    /**
+     * Maximum time between two fsyncs of the log, in milliseconds
+     */
+    private Long fsyncIntervalMillis = 10L;
+
+    /**
+     * Unsynced bytes that trigger an fsync before the interval elapses
+     */
+    private Long fsyncBytes = 256L * 1024;
+
+    /**
+     * Time between two group commits to the database, in milliseconds
+     */
+    private Long commitIntervalMillis = 200L;
+
+    /**
+     * Maximum number of messages per group commit
+     */
+    private Integer commitBatchSize = 500;
+
+    /**
+     * Failed commits of one logged batch after which it is moved to the dead-letter directory;
+     * failures to reach the database at all are not counted
+     */
+    private Integer commitMaxAttempts = 10;
+
+    /**
+     * Upper bound of the growing pause between retries of a failed batch, in milliseconds
+     */
+    private Long commitMaxBackoffMillis = 30000L;
+
+    /**
+     * Directory batches that could not be committed are written to, one JSON file per batch
+     */
+    private String deadLetterDir = "data/wal-dead-letter";
+
+    /**
+     * Maximum number of messages logged but not committed; further appends wait for the committer
+     */
+    private Integer maxPendingMessages = 20000;
+
+    /**
+     * Time an append waits for room in the commit queue before it is refused, in milliseconds
+     */
+    private Long submitWaitMillis = 2000L;
+
+    /**
+     * Time committed messages are still served from Redis, covering reads whose snapshot predates
+     * the commit, in milliseconds
+     */
+    private Long pendingGraceMillis = 5000L;
+
+    /**
+     * Idle time after which a conversation's messages waiting for commit are dropped from Redis, in hours
+     */
+    private Integer pendingTtlHours = 24;
+
+    /**
+     * Idle time after which a conversation's sequence counter is dropped from Redis, in hours
+     */
+    private Integer sequenceCounterTtlHours = 168;
+
+    /**
+     * Content length from which message content is stored compressed, in characters
+     */
+    private Integer compressionThreshold = 1024;
+
+    /**
+     * Rows converted per statement when compressing existing messages
+     */
+    private Integer compressionBatchSize = 500;
+}
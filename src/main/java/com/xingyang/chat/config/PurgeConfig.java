@@ -0,0 +1,51 @@
+package com.xingyang.chat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Deleted Conversation Purge Configuration
+ *
+ * @author XingYang
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.purge")
+public class PurgeConfig {
+
+    /**
+     * Hard-delete logically deleted conversations and their messages in the background
+     */
+    private Boolean enabled = true;
+
+    /**
+     * Days a deleted conversation is kept before it is purged
+     */
+    private Integer retentionDays = 30;
+
+    /**
+     * Time between two purge runs, in minutes
+     */
+    private Long intervalMinutes = 60L;
+
+    /**
+     * Maximum duration of one run, in minutes; the next run resumes where it stopped
+     */
+    private Long maxRunMinutes = 20L;
+
+    /**
+     * Width of the conversation ID range scanned per step
+     */
+    private Integer rangeSize = 5000;
+
+    /**
+     * Rows deleted per statement
+     */
+    private Integer batchSize = 500;
+
+    /**
+     * Pause after each delete statement, in milliseconds, on top of the time the statement took
+     */
+    private Long pauseMillis = 100L;
+}
@@ -0,0 +1,44 @@
+package com.xingyang.chat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read Replica Configuration
+ *
+ * @author XingYang
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.datasource")
+public class ReplicaConfig {
+
+    /**
+     * Read replicas; without any, all queries go to the primary
+     */
+    private List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * Time a user's reads stay on the primary after a write, to hide replica lag, in seconds
+     */
+    private Integer primaryPinSeconds = 5;
+
+    /**
+     * Connection settings of one replica, credentials default to the primary's
+     */
+    @Data
+    public static class Replica {
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        private Integer maximumPoolSize;
+    }
+}
@@ -0,0 +1,135 @@
+package com.xingyang.chat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Q&A Response Cache Configuration
+ *
+ * @author XingYang
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.cache")
+public class ResponseCacheConfig {
+
+    /**
+     * Logical lifetime of a cached answer in minutes
+     */
+    private Integer ttlMinutes = 5;
+
+    /**
+     * XFetch beta; values above 1.0 favour earlier refreshes
+     */
+    private Double beta = 1.0;
+
+    /**
+     * Lifetime of the cluster-wide recompute lock in seconds
+     */
+    private Integer lockSeconds = 30;
+
+    /**
+     * Number of threads used for background early refreshes
+     */
+    private Integer refreshThreads = 2;
+
+    /**
+     * User ID background refreshes are quota-checked and metered under, 0 being the system account
+     */
+    private Long refreshUserId = 0L;
+
+    /**
+     * Keep serving expired answers while the upstream model is failing
+     */
+    private Boolean serveStaleOnError = true;
+
+    /**
+     * How long an expired answer is kept around for stale serving, in minutes
+     */
+    private Integer staleGraceMinutes = 30;
+
+    /**
+     * Preload the cache from historical questions when the application starts
+     */
+    private Boolean warmupOnStartup = false;
+
+    /**
+     * Number of most frequent questions to preload
+     */
+    private Integer warmupTopN = 500;
+
+    /**
+     * How many days of history the warm-up looks at
+     */
+    private Integer warmupDays = 7;
+
+    /**
+     * Number of distinct questions tracked while counting frequencies
+     */
+    private Integer warmupSketchCapacity = 20000;
+
+    /**
+     * Number of entries written per pipelined batch
+     */
+    private Integer warmupBatchSize = 50;
+
+    /**
+     * Upper bound on cache writes per second during warm-up
+     */
+    private Integer warmupWritesPerSecond = 500;
+
+    /**
+     * Number of tokens per event when replaying a cached answer
+     */
+    private Integer replayTokensPerChunk = 1;
+
+    /**
+     * Replay pace in tokens per second, 0 replays instantly
+     */
+    private Integer replayTokensPerSecond = 0;
+
+    /**
+     * Look for an answer to a similar past question before calling the upstream
+     */
+    private Boolean similarFallbackEnabled = true;
+
+    /**
+     * Time window for similar-question lookup, in hours
+     */
+    private Integer similarWindowHours = 24;
+
+    /**
+     * Number of full-text candidates to check
+     */
+    private Integer similarCandidates = 10;
+
+    /**
+     * Minimum character-bigram overlap (Jaccard) for a candidate to count as the same question
+     */
+    private Double similarMinOverlap = 0.8;
+
+    /**
+     * Also reuse answers from other users' conversations; off keeps the lookup to the asker's own history
+     */
+    private Boolean similarCrossUser = false;
+
+    /**
+     * Number of distinct cache keys tracked for the hot-key report
+     */
+    private Integer hotKeySketchCapacity = 1000;
+
+    /**
+     * Number of hot keys shown in the stats view
+     */
+    private Integer hotKeyTopN = 20;
+
+    /**
+     * Model IDs reported as metric tags; any other model is reported as "other"
+     */
+    private List<String> metricModels = new ArrayList<>(Arrays.asList("qwen-plus", "qwen-turbo", "qwen-max"));
+}
@@ -0,0 +1,71 @@
+package com.xingyang.chat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Message Search Configuration
+ *
+ * @author XingYang
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.search")
+public class SearchConfig {
+
+    /**
+     * Serve /conversation/search from the per-user inverted index
+     */
+    private Boolean enabled = true;
+
+    /**
+     * Number of user indexes kept in memory
+     */
+    private Integer maxUsers = 500;
+
+    /**
+     * Age after which an index in memory picks up messages written through other nodes, in seconds
+     */
+    private Integer refreshSeconds = 30;
+
+    /**
+     * Overlap of each catch-up with the previous one, covering commit delay, replica lag and clock skew
+     */
+    private Integer catchUpMarginMinutes = 5;
+
+    /**
+     * Time between writes of changed indexes to Redis, in seconds
+     */
+    private Integer flushIntervalSeconds = 10;
+
+    /**
+     * Idle time after which a persisted index is dropped from Redis, in hours
+     */
+    private Integer ttlHours = 168;
+
+    /**
+     * Number of appended segments after which a user's index is written to Redis in full again
+     */
+    private Integer compactSegments = 50;
+
+    /**
+     * Number of results when no limit is given
+     */
+    private Integer defaultLimit = 20;
+
+    /**
+     * Largest number of results a client may request
+     */
+    private Integer maxLimit = 50;
+
+    /**
+     * Length of the content excerpt returned with each result, in characters
+     */
+    private Integer snippetLength = 120;
+
+    /**
+     * Longer queries are cut to this many characters
+     */
+    private Integer maxQueryLength = 200;
+}
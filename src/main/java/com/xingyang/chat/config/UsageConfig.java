@@ -0,0 +1,41 @@
+package com.xingyang.chat.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Token Usage Metering Configuration
+ *
+ * @author XingYang
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.usage")
+public class UsageConfig {
+
+    /**
+     * Whether usage is flushed to the usage table in the background
+     */
+    private Boolean enabled = true;
+
+    /**
+     * Delay between flushes in seconds
+     */
+    private Integer flushIntervalSeconds = 10;
+
+    /**
+     * Maximum number of rows per upsert statement
+     */
+    private Integer flushBatchSize = 500;
+
+    /**
+     * Tokens a user may spend per day, 0 for no limit
+     */
+    private Long dailyTokenQuota = 0L;
+
+    /**
+     * How long a user's flushed daily total is reused by the quota check, in seconds
+     */
+    private Integer quotaRefreshSeconds = 60;
+}
@@ -0,0 +1,70 @@
+package com.xingyang.chat.controller;
+
+import com.xingyang.chat.metrics.ResponseCacheMetrics;
+import com.xingyang.chat.model.vo.CacheStatsVO;
+import com.xingyang.chat.model.vo.CacheWarmupVO;
+import com.xingyang.chat.model.vo.Result;
+import com.xingyang.chat.service.CacheWarmupService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Cache Administration Controller
+ *
+ * @author XingYang
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/cache")
+@PreAuthorize("hasRole('ADMIN')")
+@Tag(name = "Cache Admin API", description = "Manage the Q&A response cache")
+public class CacheAdminController {
+
+    @Autowired
+    private CacheWarmupService cacheWarmupService;
+
+    @Autowired
+    private ResponseCacheMetrics responseCacheMetrics;
+
+    /**
+     * Show cache hit rates, savings and hot keys since startup
+     *
+     * @return Cache statistics
+     */
+    @GetMapping("/stats")
+    @Operation(summary = "Get cache statistics", description = "Hit rates per endpoint and model, savings and hot keys")
+    public Result<CacheStatsVO> getStats() {
+        try {
+            return Result.success(responseCacheMetrics.snapshot());
+        } catch (Exception e) {
+            log.error("Failed to collect cache statistics", e);
+            return Result.error(500, "Failed to collect cache statistics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Preload the cache from historical questions
+     *
+     * @param topN Number of questions to preload
+     * @param days Number of days of history to look at
+     * @return Warm-up result summary
+     */
+    @PostMapping("/warmup")
+    @Operation(summary = "Warm up cache", description = "Preload answers to the most frequent recent questions")
+    public Result<CacheWarmupVO> warmUp(
+            @Parameter(description = "Number of questions to preload") @RequestParam(required = false) Integer topN,
+            @Parameter(description = "Days of history to look at") @RequestParam(required = false) Integer days) {
+        try {
+            log.info("Cache warm-up requested, topN: {}, days: {}", topN, days);
+            return Result.success(cacheWarmupService.warmUp(topN, days));
+        } catch (Exception e) {
+            log.error("Cache warm-up failed", e);
+            return Result.error(500, "Cache warm-up failed: " + e.getMessage());
+        }
+    }
+}
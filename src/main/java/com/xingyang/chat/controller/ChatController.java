@@ -1,10 +1,15 @@
 package com.xingyang.chat.controller;
 
+import com.xingyang.chat.metrics.ResponseCacheMetrics;
 import com.xingyang.chat.model.dto.ChatMessageDto;
 import com.xingyang.chat.model.dto.ChatRequestDto;
+import com.xingyang.chat.model.dto.ResponseCacheEntry;
+import com.xingyang.chat.model.dto.ResponseCacheLookup;
 import com.xingyang.chat.model.vo.Result;
 import com.xingyang.chat.service.AiChatService;
+import com.xingyang.chat.service.ConversationService;
 import com.xingyang.chat.service.MessageService;
+import com.xingyang.chat.service.ResponseCacheService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -39,6 +44,15 @@ public class ChatController {
     
     @Autowired
     private MessageService messageService;
+    
+    @Autowired
+    private ConversationService conversationService;
+    
+    @Autowired
+    private ResponseCacheService responseCacheService;
+    
+    @Autowired
+    private ResponseCacheMetrics responseCacheMetrics;
 
     /**
      * Chat with AI (non-streaming)
@@ -51,32 +65,27 @@ public class ChatController {
     public Result<ChatMessageDto> chat(@RequestBody ChatRequestDto request) {
         log.info("Received chat request, model: {}, messages count: {}", 
                 request.getModel(), request.getMessages() != null ? request.getMessages().size() : 0);
+        ResponseCacheLookup lookup = null;
         try {
             // Check for cached response first if it's a user query
-            if (request.getMessages() != null && !request.getMessages().isEmpty()) {
-                ChatMessageDto lastUserMessage = request.getMessages().stream()
-                        .filter(msg -> "user".equals(msg.getRole()))
-                        .reduce((first, second) -> second)
-                        .orElse(null);
-                
-                if (lastUserMessage != null) {
-                    Optional<String> cachedResponse = messageService.findCachedResponse(lastUserMessage.getContent());
-                    if (cachedResponse.isPresent()) {
-                        log.info("Using cached response for question: {}", lastUserMessage.getContent());
-                        
-                        // Convert to DTO and return
-                        ChatMessageDto response = ChatMessageDto.assistantMessage(cachedResponse.get());
-                        return Result.success(response);
-                    }
-                }
+            String question = findLastUserQuestion(request);
+            lookup = question != null
+                    ? findCachedResponse("chat", question, request)
+                    : ResponseCacheLookup.miss(null);
+            if (lookup.isHit()) {
+                // Convert to DTO and return
+                ChatMessageDto response = ChatMessageDto.assistantMessage(lookup.getEntry().getValue());
+                return Result.success(response);
             }
             
-            // No cached response, use regular API
-            ChatMessageDto response = aiChatService.chat(request);
+            // No cached response, use regular API; the answer is cached through the lookup
+            ChatMessageDto response = aiChatService.chat(request, lookup);
             return Result.success(response);
         } catch (Exception e) {
             log.error("Error in chat controller", e);
             return Result.error(500, "Chat processing error: " + e.getMessage());
+        } finally {
+            responseCacheService.release(lookup);
         }
     }
 
@@ -93,82 +102,96 @@ public class ChatController {
                 request.getModel(), request.getMessages() != null ? request.getMessages().size() : 0, request.getConversationId());
         
         // Check for cached response first if it's a simple user query
-        if (request.getMessages() != null && !request.getMessages().isEmpty()) {
-            ChatMessageDto lastUserMessage = request.getMessages().stream()
-                    .filter(msg -> "user".equals(msg.getRole()))
-                    .reduce((first, second) -> second)
-                    .orElse(null);
+        String question = findLastUserQuestion(request);
+        ResponseCacheLookup lookup = question != null
+                ? findCachedResponse("stream", question, request)
+                : ResponseCacheLookup.miss(null);
+        if (lookup.isHit()) {
             
-            if (lastUserMessage != null) {
-                Optional<String> cachedResponse = messageService.findCachedResponse(lastUserMessage.getContent());
-                if (cachedResponse.isPresent()) {
-                    log.info("Using cached response for question: {}", lastUserMessage.getContent());
-                    
-                    // 如果有会话ID，保存消息到数据库
-                    if (request.getConversationId() != null) {
-                        try {
-                            // 保存用户问题
-                            log.info("Saving user message to conversation: {}", request.getConversationId());
-                            messageService.addMessage(request.getConversationId(), "user", lastUserMessage.getContent());
-                            
-                            // 保存缓存回复
-                            log.info("Saving cached AI response to conversation: {}", request.getConversationId());
-                            messageService.addMessage(request.getConversationId(), "assistant", cachedResponse.get());
-                        } catch (Exception e) {
-                            log.error("Error saving message to database", e);
-                        }
-                    }
-                    
-                    return Flux.just(cachedResponse.get());
+            // 如果有会话ID，保存消息到数据库
+            if (request.getConversationId() != null) {
+                try {
+                    // Question and cached answer are saved as one turn
+                    log.info("Saving cached turn to conversation: {}", request.getConversationId());
+                    conversationService.saveTurn(request.getConversationId(), request.getParentSequence(),
+                            question, lookup.getEntry().getValue());
+                } catch (Exception e) {
+                    log.error("Error saving message to database", e);
                 }
             }
+            
+            // Replay the answer in token-sized events, like a live stream
+            return responseCacheService.replay(lookup.getEntry());
         }
         
         // No cached response, use streaming API
         return Flux.create(sink -> {
             try {
-                // Create a collector for tokens
-                StringBuilder fullResponse = new StringBuilder();
-                
-                // Start streaming the response
-                aiChatService.streamChat(request, token -> {
-                    // Add token to response and emit it
-                    fullResponse.append(token);
-                    sink.next(token);
-                });
-                
-                // 完成后，如果有会话ID，保存消息到数据库
-                if (request.getConversationId() != null && request.getMessages() != null && !request.getMessages().isEmpty()) {
-                    try {
-                        // 获取最后一条用户消息
-                        ChatMessageDto lastUserMessage = request.getMessages().stream()
-                                .filter(msg -> "user".equals(msg.getRole()))
-                                .reduce((first, second) -> second)
-                                .orElse(null);
-                        
-                        if (lastUserMessage != null) {
-                            // 保存用户问题
-                            log.info("Saving user message to conversation: {}", request.getConversationId());
-                            messageService.addMessage(request.getConversationId(), "user", lastUserMessage.getContent());
-                            
-                            // 保存AI回复
-                            log.info("Saving AI response to conversation: {}", request.getConversationId());
-                            messageService.addMessage(request.getConversationId(), "assistant", fullResponse.toString());
-                        }
-                    } catch (Exception e) {
-                        log.error("Error saving message to database", e);
-                    }
-                }
+                // Start streaming the response; the chat service caches the answer and saves the turn
+                aiChatService.streamChat(request, lookup, sink::next);
                 
                 // When complete, signal completion
                 sink.complete();
             } catch (Exception e) {
                 log.error("Error in stream chat controller", e);
                 sink.error(e);
+            } finally {
+                responseCacheService.release(lookup);
             }
         });
     }
     
+    /**
+     * Find the content of the last user message in a request
+     */
+    private String findLastUserQuestion(ChatRequestDto request) {
+        if (request.getMessages() == null || request.getMessages().isEmpty()) {
+            return null;
+        }
+        
+        return request.getMessages().stream()
+                .filter(msg -> "user".equals(msg.getRole()))
+                .reduce((first, second) -> second)
+                .map(ChatMessageDto::getContent)
+                .orElse(null);
+    }
+    
+    /**
+     * Look up a cached answer, falling back to the answer of a similar recent question
+     *
+     * @param endpoint endpoint name, used as a metrics tag
+     * @param question user question
+     * @param request chat request
+     * @return lookup result; a miss may carry a recompute lock the caller has to finish
+     */
+    private ResponseCacheLookup findCachedResponse(String endpoint, String question, ChatRequestDto request) {
+        String cacheKey = responseCacheService.cacheKey(question);
+        ResponseCacheLookup lookup = responseCacheService.getEntry(question, aiChatService::refreshAnswer);
+        if (lookup.isHit()) {
+            ResponseCacheEntry entry = lookup.getEntry();
+            String result = entry.isStale() ? ResponseCacheMetrics.RESULT_STALE : ResponseCacheMetrics.RESULT_HIT;
+            log.debug("Cache {} on {} for key: {}", result, endpoint, cacheKey);
+            responseCacheMetrics.recordLookup(endpoint, cacheKey, entry, result);
+            return lookup;
+        }
+        
+        // An expired entry is recomputed upstream; a similar question would hand back the old answer
+        if (!lookup.isRecompute()) {
+            // Full-text lookup is cheaper than the upstream; cache the hit under this wording too
+            Optional<String> similarAnswer = messageService.findSimilarAnswer(question);
+            if (similarAnswer.isPresent()) {
+                ResponseCacheEntry entry = new ResponseCacheEntry(similarAnswer.get(), 0L, null, null);
+                responseCacheService.put(question, entry.getValue(), 0L);
+                log.debug("Similar-question hit on {} for key: {}", endpoint, cacheKey);
+                responseCacheMetrics.recordLookup(endpoint, cacheKey, entry, ResponseCacheMetrics.RESULT_SIMILAR);
+                return ResponseCacheLookup.hit(question, entry);
+            }
+        }
+        
+        responseCacheMetrics.recordLookup(endpoint, cacheKey, null, ResponseCacheMetrics.RESULT_MISS);
+        return lookup;
+    }
+    
     /**
      * Switch the AI model
      *
@@ -3,17 +3,31 @@ package com.xingyang.chat.controller;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.xingyang.chat.model.dto.ChatMessageDto;
 import com.xingyang.chat.model.dto.ConversationDto;
+import com.xingyang.chat.model.vo.ConversationImportVO;
+import com.xingyang.chat.model.vo.CursorPage;
 import com.xingyang.chat.model.vo.Result;
+import com.xingyang.chat.model.vo.SearchHitVO;
+import com.xingyang.chat.service.ConversationExportService;
+import com.xingyang.chat.service.ConversationImportService;
 import com.xingyang.chat.service.ConversationService;
+import com.xingyang.chat.service.MessageSearchService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Conversation Controller
@@ -29,6 +43,15 @@ public class ConversationController {
     @Autowired
     private ConversationService conversationService;
 
+    @Autowired
+    private ConversationExportService conversationExportService;
+
+    @Autowired
+    private ConversationImportService conversationImportService;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
     /**
      * Create new conversation
      *
@@ -87,17 +110,24 @@ public class ConversationController {
 
     /**
      * Get all conversations for current user
+     * <p>
+     * Answers 304 Not Modified when the If-None-Match tag still matches.
      *
      * @param page Page number
      * @param size Page size
-     * @return Page of conversations
+     * @param webRequest Request, for the conditional GET
+     * @return Page of conversations, null if not modified
      */
     @GetMapping("/list")
     @Operation(summary = "List conversations", description = "Get all conversations for current user")
     public Result<Page<ConversationDto>> listConversations(
             @Parameter(description = "Page number") @RequestParam(defaultValue = "1") Integer page,
-            @Parameter(description = "Page size") @RequestParam(defaultValue = "10") Integer size) {
+            @Parameter(description = "Page size") @RequestParam(defaultValue = "10") Integer size,
+            WebRequest webRequest) {
         try {
+            if (webRequest.checkNotModified(conversationService.getConversationListTag("page=" + page + "&size=" + size))) {
+                return null;
+            }
             log.info("Listing conversations for current user, page: {}, size: {}", page, size);
             
             Page<ConversationDto> conversations = conversationService.getConversationsByUserId(page, size);
@@ -124,6 +154,101 @@ public class ConversationController {
         }
     }
 
+    /**
+     * Get conversations for current user using a keyset cursor
+     *
+     * @param cursor Cursor returned with the previous page
+     * @param limit Page size
+     * @param webRequest Request, for the conditional GET
+     * @return Page of conversations, most recently updated first; null if not modified
+     */
+    @GetMapping("/list/cursor")
+    @Operation(summary = "List conversations by cursor", description = "Get a page of conversations without counting them")
+    public Result<CursorPage<ConversationDto>> listConversationsByCursor(
+            @Parameter(description = "Cursor returned with the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size") @RequestParam(required = false) Integer limit,
+            WebRequest webRequest) {
+        try {
+            if (webRequest.checkNotModified(conversationService.getConversationListTag("cursor=" + cursor + "&limit=" + limit))) {
+                return null;
+            }
+            CursorPage<ConversationDto> conversations = conversationService.getConversationPage(cursor, limit);
+            log.debug("Found {} conversations, has more: {}", conversations.getRecords().size(), conversations.isHasMore());
+            return Result.success(conversations);
+        } catch (Exception e) {
+            log.error("Failed to list conversations", e);
+            return Result.error(500, "Failed to list conversations: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Search the current user's messages
+     *
+     * @param q Query text
+     * @param limit Maximum number of conversations
+     * @return Best matching message of each matching conversation, best first
+     */
+    @GetMapping("/search")
+    @Operation(summary = "Search messages", description = "Full-text search across the current user's message history")
+    public Result<List<SearchHitVO>> searchMessages(
+            @Parameter(description = "Query text") @RequestParam String q,
+            @Parameter(description = "Maximum number of conversations") @RequestParam(required = false) Integer limit) {
+        try {
+            List<SearchHitVO> hits = messageSearchService.search(q, limit);
+            log.debug("Search found {} conversations", hits.size());
+            return Result.success(hits);
+        } catch (Exception e) {
+            log.error("Failed to search messages", e);
+            return Result.error(500, "Failed to search messages: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Export all conversations and messages of the current user
+     *
+     * @param gzip Whether to gzip the export
+     * @param response HTTP response the NDJSON is streamed to
+     * @throws IOException if writing the response fails
+     */
+    @GetMapping("/export")
+    @Operation(summary = "Export conversations", description = "Stream all conversations and messages as NDJSON, one record per line")
+    public void exportConversations(
+            @Parameter(description = "Gzip the export") @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletResponse response) throws IOException {
+        String fileName = gzip ? "conversations.ndjson.gz" : "conversations.ndjson";
+        response.setContentType(gzip ? "application/gzip" : "application/x-ndjson;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            GZIPOutputStream gzipOut = new GZIPOutputStream(out, 8192);
+            conversationExportService.export(gzipOut);
+            gzipOut.finish();
+        } else {
+            conversationExportService.export(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Import conversations with their messages
+     *
+     * @param file JSON array or NDJSON of conversations
+     * @return Import summary
+     */
+    @PostMapping("/import")
+    @Operation(summary = "Import conversations", description = "Bulk import conversations with messages from a JSON array or NDJSON upload")
+    public Result<ConversationImportVO> importConversations(
+            @Parameter(description = "JSON array or NDJSON file") @RequestParam("file") MultipartFile file) {
+        try (InputStream in = file.getInputStream()) {
+            log.info("Importing conversations from {} ({} bytes)", file.getOriginalFilename(), file.getSize());
+            return Result.success(conversationImportService.importConversations(in));
+        } catch (Exception e) {
+            log.error("Failed to import conversations", e);
+            return Result.error(500, "Failed to import conversations: " + e.getMessage());
+        }
+    }
+
     /**
      * Update conversation title
      *
@@ -170,35 +295,46 @@ public class ConversationController {
     }
 
     /**
-     * Get messages for a conversation
+     * Get a page of messages for a conversation
+     * <p>
+     * A client that already holds messages up to some sequence passes it as sinceSequence and gets
+     * only the newer ones. Answers 304 Not Modified when the If-None-Match tag still matches.
      *
      * @param conversationId Conversation ID
-     * @return List of messages
+     * @param before Return messages before this sequence number
+     * @param after Return messages after this sequence number
+     * @param sinceSequence Same as after, for delta sync
+     * @param limit Page size
+     * @param webRequest Request, for the conditional GET
+     * @return Page of messages in ascending order, null if not modified
      */
     @GetMapping("/{conversationId}/messages")
-    @Operation(summary = "Get messages", description = "Get all messages for a conversation")
-    public Result<List<ChatMessageDto>> getMessages(
-            @Parameter(description = "Conversation ID") @PathVariable Long conversationId) {
+    @Operation(summary = "Get messages", description = "Get a page of messages for a conversation, latest first by default")
+    public Result<CursorPage<ChatMessageDto>> getMessages(
+            @Parameter(description = "Conversation ID") @PathVariable Long conversationId,
+            @Parameter(description = "Return messages before this sequence number") @RequestParam(required = false) Integer before,
+            @Parameter(description = "Return messages after this sequence number") @RequestParam(required = false) Integer after,
+            @Parameter(description = "Return only messages newer than this sequence number") @RequestParam(required = false) Integer sinceSequence,
+            @Parameter(description = "Page size") @RequestParam(required = false) Integer limit,
+            WebRequest webRequest) {
         try {
-            log.info("Getting messages for conversation ID: {}", conversationId);
-            
-            List<ChatMessageDto> messages = conversationService.getMessagesByConversationId(conversationId);
+            if (after == null) {
+                after = sinceSequence;
+            }
+            String tag = conversationService.getMessagesTag(conversationId,
+                    "before=" + before + "&after=" + after + "&limit=" + limit);
+            if (webRequest.checkNotModified(tag)) {
+                return null;
+            }
+            log.info("Getting messages for conversation ID: {}, before: {}, after: {}, limit: {}",
+                    conversationId, before, after, limit);
             
-            log.info("Found {} messages for conversation ID: {}", messages.size(), conversationId);
+            CursorPage<ChatMessageDto> messages = conversationService.getMessagePage(conversationId, before, after, limit);
             
-            if (messages.isEmpty()) {
-                log.warn("No messages found for conversation ID: {}", conversationId);
-            } else {
-                log.info("First message: role={}, content preview='{}'", 
-                        messages.get(0).getRole(),
-                        messages.get(0).getContent().length() > 50 
-                            ? messages.get(0).getContent().substring(0, 50) + "..." 
-                            : messages.get(0).getContent());
-            }
+            log.info("Found {} messages for conversation ID: {}, has more: {}",
+                    messages.getRecords().size(), conversationId, messages.isHasMore());
             
-            Result<List<ChatMessageDto>> result = Result.success(messages);
-            log.debug("Returning messages result: {}", result);
-            return result;
+            return Result.success(messages);
         } catch (Exception e) {
             log.error("Failed to get messages for conversation ID: {}", conversationId, e);
             return Result.error(500, "Failed to get messages: " + e.getMessage());
@@ -230,4 +366,73 @@ public class ConversationController {
             return Result.error(500, "Failed to add message: " + e.getMessage());
         }
     }
+
+    /**
+     * Add a message under an earlier one, starting a new branch
+     * <p>
+     * Editing a question is a fork from the message before it; the new branch becomes the active one.
+     *
+     * @param conversationId Conversation ID
+     * @param sequence Sequence of the parent message, 0 for a new first message
+     * @param message Message DTO
+     * @return Added message
+     */
+    @PostMapping("/{conversationId}/messages/{sequence}/fork")
+    @Operation(summary = "Fork conversation", description = "Add a message as a new child of an earlier message and make its branch active")
+    public Result<ChatMessageDto> forkMessage(
+            @Parameter(description = "Conversation ID") @PathVariable Long conversationId,
+            @Parameter(description = "Sequence of the parent message, 0 for a new first message") @PathVariable Integer sequence,
+            @RequestBody ChatMessageDto message) {
+        try {
+            if (message.getRole() == null || message.getContent() == null) {
+                return Result.error(400, "Role and content are required");
+            }
+            
+            return Result.success(conversationService.forkMessage(conversationId, sequence, message.getRole(),
+                    message.getContent()));
+        } catch (Exception e) {
+            log.error("Failed to fork conversation {} at message {}", conversationId, sequence, e);
+            return Result.error(500, "Failed to fork conversation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the alternatives of a message, for switching between branches
+     *
+     * @param conversationId Conversation ID
+     * @param sequence Sequence of the message
+     * @return Messages with the same parent, itself included, in sequence order
+     */
+    @GetMapping("/{conversationId}/messages/{sequence}/branches")
+    @Operation(summary = "List branches", description = "Get the sibling versions of a message")
+    public Result<List<ChatMessageDto>> getBranches(
+            @Parameter(description = "Conversation ID") @PathVariable Long conversationId,
+            @Parameter(description = "Sequence of the message") @PathVariable Integer sequence) {
+        try {
+            return Result.success(conversationService.getBranches(conversationId, sequence));
+        } catch (Exception e) {
+            log.error("Failed to get branches of message {} in conversation {}", sequence, conversationId, e);
+            return Result.error(500, "Failed to get branches: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Make the branch through a message the active one
+     *
+     * @param conversationId Conversation ID
+     * @param sequence Sequence of any message on the branch
+     * @return Conversation with the latest page of the active branch
+     */
+    @PutMapping("/{conversationId}/branch/{sequence}")
+    @Operation(summary = "Switch branch", description = "Make the branch through a message active, down to its latest reply")
+    public Result<ConversationDto> switchBranch(
+            @Parameter(description = "Conversation ID") @PathVariable Long conversationId,
+            @Parameter(description = "Sequence of a message on the branch") @PathVariable Integer sequence) {
+        try {
+            return Result.success(conversationService.switchBranch(conversationId, sequence));
+        } catch (Exception e) {
+            log.error("Failed to switch conversation {} to message {}", conversationId, sequence, e);
+            return Result.error(500, "Failed to switch branch: " + e.getMessage());
+        }
+    }
 } 
\ No newline at end of file
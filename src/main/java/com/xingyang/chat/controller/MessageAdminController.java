@@ -0,0 +1,69 @@
+package com.xingyang.chat.controller;
+
+import com.xingyang.chat.model.vo.CompressionBackfillVO;
+import com.xingyang.chat.model.vo.PurgeResultVO;
+import com.xingyang.chat.model.vo.Result;
+import com.xingyang.chat.service.ConversationPurgeService;
+import com.xingyang.chat.service.MessageCompressionService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Message Storage Administration Controller
+ *
+ * @author XingYang
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/messages")
+@PreAuthorize("hasRole('ADMIN')")
+@Tag(name = "Message Admin API", description = "Maintain stored messages")
+public class MessageAdminController {
+
+    @Autowired
+    private MessageCompressionService messageCompressionService;
+
+    @Autowired
+    private ConversationPurgeService conversationPurgeService;
+
+    /**
+     * Compress the long content of existing messages
+     *
+     * @param batchSize Rows per statement
+     * @return Backfill result summary
+     */
+    @PostMapping("/compress")
+    @Operation(summary = "Compress existing messages", description = "Move long message content to the compressed column")
+    public Result<CompressionBackfillVO> compressExisting(
+            @Parameter(description = "Rows per statement") @RequestParam(required = false) Integer batchSize) {
+        try {
+            log.info("Message compression backfill requested, batch size: {}", batchSize);
+            return Result.success(messageCompressionService.compressExisting(batchSize));
+        } catch (Exception e) {
+            log.error("Message compression backfill failed", e);
+            return Result.error(500, "Message compression backfill failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hard-delete conversations deleted longer ago than the retention period, with their messages
+     *
+     * @return Purge result summary
+     */
+    @PostMapping("/purge")
+    @Operation(summary = "Purge deleted conversations", description = "Hard-delete logically deleted conversations and their messages past the retention period")
+    public Result<PurgeResultVO> purgeDeleted() {
+        try {
+            log.info("Conversation purge requested");
+            return Result.success(conversationPurgeService.purgeDeleted());
+        } catch (Exception e) {
+            log.error("Conversation purge failed", e);
+            return Result.error(500, "Conversation purge failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.xingyang.chat.convert;
+
+import com.xingyang.chat.model.dto.ChatMessageDto;
+import com.xingyang.chat.model.entity.ChatMessage;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.Named;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Chat Message Converter, implementation generated at compile time
+ *
+ * @author XingYang
+ */
+@Mapper(componentModel = "spring")
+public interface ChatMessageConverter {
+
+    /**
+     * Convert a stored message for the client
+     *
+     * @param message Chat message entity
+     * @return Chat message DTO, timestamped with the creation time
+     */
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "timestamp", source = "createTime", qualifiedByName = "epochMillis")
+    ChatMessageDto toDto(ChatMessage message);
+
+    /**
+     * Convert stored messages for the client
+     *
+     * @param messages Chat message entities
+     * @return Chat message DTOs in the same order
+     */
+    List<ChatMessageDto> toDtoList(List<ChatMessage> messages);
+
+    /**
+     * Creation time as epoch milliseconds, whole seconds only
+     */
+    @Named("epochMillis")
+    default Long epochMillis(LocalDateTime time) {
+        return time != null ? time.toEpochSecond(ZoneOffset.UTC) * 1000 : null;
+    }
+}
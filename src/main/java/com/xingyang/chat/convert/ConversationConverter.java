@@ -0,0 +1,48 @@
+package com.xingyang.chat.convert;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xingyang.chat.model.dto.ConversationDto;
+import com.xingyang.chat.model.entity.Conversation;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+import java.util.List;
+
+/**
+ * Conversation Converter, implementation generated at compile time
+ *
+ * @author XingYang
+ */
+@Mapper(componentModel = "spring")
+public interface ConversationConverter {
+
+    /**
+     * Convert a conversation without its messages
+     *
+     * @param conversation Conversation entity
+     * @return Conversation DTO with an empty message list
+     */
+    @Mapping(target = "messages", expression = "java(new java.util.ArrayList<>())")
+    @Mapping(target = "hasMoreMessages", ignore = true)
+    ConversationDto toDto(Conversation conversation);
+
+    /**
+     * Convert conversations without their messages
+     *
+     * @param conversations Conversation entities
+     * @return Conversation DTOs in the same order
+     */
+    List<ConversationDto> toDtoList(List<Conversation> conversations);
+
+    /**
+     * Convert a page of conversations, keeping its paging fields
+     *
+     * @param page Page of conversation entities
+     * @return Page of conversation DTOs
+     */
+    default Page<ConversationDto> toDtoPage(Page<Conversation> page) {
+        Page<ConversationDto> dtoPage = new Page<>(page.getCurrent(), page.getSize(), page.getTotal());
+        dtoPage.setRecords(toDtoList(page.getRecords()));
+        return dtoPage;
+    }
+}
@@ -0,0 +1,77 @@
+package com.xingyang.chat.convert;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xingyang.chat.model.dto.RegisterDTO;
+import com.xingyang.chat.model.dto.UserUpdateDTO;
+import com.xingyang.chat.model.entity.User;
+import com.xingyang.chat.model.vo.UserVO;
+import org.mapstruct.BeanMapping;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
+import org.mapstruct.NullValuePropertyMappingStrategy;
+
+import java.util.List;
+
+/**
+ * User Converter, implementation generated at compile time
+ *
+ * @author XingYang
+ */
+@Mapper(componentModel = "spring")
+public interface UserConverter {
+
+    /**
+     * Convert a user for the client, without the password
+     *
+     * @param user User entity
+     * @return User view object
+     */
+    UserVO toVo(User user);
+
+    /**
+     * Convert users for the client
+     *
+     * @param users User entities
+     * @return User view objects in the same order
+     */
+    List<UserVO> toVoList(List<User> users);
+
+    /**
+     * Convert a page of users, keeping its paging fields
+     *
+     * @param page Page of user entities
+     * @return Page of user view objects
+     */
+    default Page<UserVO> toVoPage(Page<User> page) {
+        Page<UserVO> voPage = new Page<>(page.getCurrent(), page.getSize(), page.getTotal());
+        voPage.setRecords(toVoList(page.getRecords()));
+        return voPage;
+    }
+
+    /**
+     * Create a user from the registration form; the password is encoded by the caller
+     *
+     * @param registerDTO Registration form
+     * @return User entity with username, nickname, email and phone set
+     */
+    @BeanMapping(ignoreByDefault = true)
+    @Mapping(target = "username", source = "username")
+    @Mapping(target = "nickname", source = "nickname")
+    @Mapping(target = "email", source = "email")
+    @Mapping(target = "phone", source = "phone")
+    User fromRegister(RegisterDTO registerDTO);
+
+    /**
+     * Apply the profile fields that are set in the update form
+     *
+     * @param userUpdateDTO Update form
+     * @param user User entity to update
+     */
+    @BeanMapping(ignoreByDefault = true, nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
+    @Mapping(target = "nickname", source = "nickname")
+    @Mapping(target = "avatar", source = "avatar")
+    @Mapping(target = "email", source = "email")
+    @Mapping(target = "phone", source = "phone")
+    void updateFromDto(UserUpdateDTO userUpdateDTO, @MappingTarget User user);
+}
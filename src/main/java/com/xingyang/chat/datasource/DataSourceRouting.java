@@ -0,0 +1,60 @@
+package com.xingyang.chat.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Holds the data source route of the current thread
+ *
+ * @author XingYang
+ */
+public final class DataSourceRouting {
+
+    public enum Route {
+        PRIMARY,
+        REPLICA
+    }
+
+    private static final ThreadLocal<Route> CURRENT = new ThreadLocal<>();
+
+    private DataSourceRouting() {
+    }
+
+    /**
+     * Get the route of the current thread
+     *
+     * @return Route, or null if none was chosen
+     */
+    public static Route current() {
+        return CURRENT.get();
+    }
+
+    public static boolean isReplica() {
+        return CURRENT.get() == Route.REPLICA;
+    }
+
+    static void set(Route route) {
+        if (route == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(route);
+        }
+    }
+
+    /**
+     * Run queries on the primary, e.g. to re-read a row that may not have reached the replica yet
+     * <p>
+     * Has no effect inside a transaction that already holds a connection.
+     *
+     * @param action Queries to run
+     * @return Result of the action
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Route previous = CURRENT.get();
+        CURRENT.set(Route.PRIMARY);
+        try {
+            return action.get();
+        } finally {
+            set(previous);
+        }
+    }
+}
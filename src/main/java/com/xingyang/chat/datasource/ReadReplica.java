@@ -0,0 +1,20 @@
+package com.xingyang.chat.datasource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Route the queries of a method to a read replica without opening a transaction
+ * <p>
+ * Methods with {@code @Transactional(readOnly = true)} are routed the same way.
+ *
+ * @author XingYang
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadReplica {
+}
@@ -0,0 +1,122 @@
+package com.xingyang.chat.datasource;
+
+import com.xingyang.chat.config.ReplicaConfig;
+import com.xingyang.chat.util.SecurityUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the data source route of service methods
+ * <p>
+ * Read-only transactions and {@link ReadReplica} methods go to a replica, unless the user wrote
+ * within the last few seconds: every completed write transaction pins its user to the primary,
+ * locally and in Redis for the other nodes, so users always read their own writes. Runs outside
+ * the transaction interceptor so a read-only method joining a write transaction stays on the primary.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(0)
+public class ReplicaRoutingAspect {
+
+    private static final String PIN_PREFIX = "chat:ds:pin:";
+
+    @Autowired
+    private RoutingDataSource routingDataSource;
+
+    @Autowired
+    private ReplicaConfig replicaConfig;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    /**
+     * Pin expiry per user written on this node, in epoch millis
+     */
+    private final Map<Long, Long> localPins = new ConcurrentHashMap<>();
+
+    @Around("@annotation(transactional)")
+    public Object routeTransactional(ProceedingJoinPoint joinPoint, Transactional transactional) throws Throwable {
+        if (transactional.readOnly()) {
+            return routeRead(joinPoint);
+        }
+
+        boolean outermost = !TransactionSynchronizationManager.isActualTransactionActive();
+        Object result = joinPoint.proceed();
+        if (outermost && routingDataSource.hasReplicas()) {
+            pin(SecurityUtil.getCurrentUserId());
+        }
+        return result;
+    }
+
+    @Around("@annotation(com.xingyang.chat.datasource.ReadReplica)")
+    public Object routeReplica(ProceedingJoinPoint joinPoint) throws Throwable {
+        return routeRead(joinPoint);
+    }
+
+    private Object routeRead(ProceedingJoinPoint joinPoint) throws Throwable {
+        // Nested calls keep the outer route, and reads inside a write transaction use its connection
+        if (!routingDataSource.hasReplicas() || DataSourceRouting.current() != null
+                || TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return joinPoint.proceed();
+        }
+
+        // Set first: resolving the user may itself run a routed query
+        DataSourceRouting.set(DataSourceRouting.Route.REPLICA);
+        try {
+            if (isPinned(SecurityUtil.getCurrentUserId())) {
+                DataSourceRouting.set(DataSourceRouting.Route.PRIMARY);
+            }
+            return joinPoint.proceed();
+        } finally {
+            DataSourceRouting.set(null);
+        }
+    }
+
+    private void pin(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        int seconds = replicaConfig.getPrimaryPinSeconds();
+        localPins.put(userId, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds));
+        try {
+            redisTemplate.opsForValue().set(PIN_PREFIX + userId, "1", seconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("Failed to share primary pin of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private boolean isPinned(Long userId) {
+        if (userId == null) {
+            return false;
+        }
+        Long expiry = localPins.get(userId);
+        if (expiry != null) {
+            if (expiry > System.currentTimeMillis()) {
+                return true;
+            }
+            localPins.remove(userId, expiry);
+        }
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(PIN_PREFIX + userId));
+        } catch (Exception e) {
+            // Without Redis we cannot tell, and the primary is always up to date
+            return true;
+        }
+    }
+}
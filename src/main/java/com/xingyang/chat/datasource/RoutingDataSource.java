@@ -0,0 +1,60 @@
+package com.xingyang.chat.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data source that hands out replica connections for replica-routed work and read-only transactions
+ * <p>
+ * Must be wrapped in a lazy connection proxy, so the connection is fetched after the transaction
+ * is set up and the route is known.
+ *
+ * @author XingYang
+ */
+public class RoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final String PRIMARY = "primary";
+
+    private final List<HikariDataSource> replicas;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    public RoutingDataSource(DataSource primary, List<HikariDataSource> replicas) {
+        this.replicas = replicas;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put("replica-" + i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        DataSourceRouting.Route route = DataSourceRouting.current();
+        boolean replica = route == DataSourceRouting.Route.REPLICA
+                || route == null && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (!replica || replicas.isEmpty()) {
+            return PRIMARY;
+        }
+        return "replica-" + Math.floorMod(next.getAndIncrement(), replicas.size());
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(HikariDataSource::close);
+    }
+}
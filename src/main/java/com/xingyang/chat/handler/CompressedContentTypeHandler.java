@@ -0,0 +1,48 @@
+package com.xingyang.chat.handler;
+
+import com.xingyang.chat.util.ContentCodec;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Type handler for the content_blob column
+ * <p>
+ * Writes long content compressed and NULL for short content, which stays in the content column.
+ * Reads any value with a codec byte, including the {@code COALESCE(content_blob, CONCAT(X'00', content))}
+ * expression the mappers select.
+ *
+ * @author XingYang
+ */
+public class CompressedContentTypeHandler extends BaseTypeHandler<String> {
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, String parameter, JdbcType jdbcType)
+            throws SQLException {
+        if (ContentCodec.isCompressible(parameter)) {
+            ps.setBytes(i, ContentCodec.encode(parameter));
+        } else {
+            ps.setNull(i, Types.LONGVARBINARY);
+        }
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return ContentCodec.decode(rs.getBytes(columnName));
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return ContentCodec.decode(rs.getBytes(columnIndex));
+    }
+
+    @Override
+    public String getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return ContentCodec.decode(cs.getBytes(columnIndex));
+    }
+}
@@ -0,0 +1,46 @@
+package com.xingyang.chat.handler;
+
+import com.xingyang.chat.util.ContentCodec;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Type handler for the plain content column
+ * <p>
+ * Writes short content as is and NULL for content that goes compressed to content_blob.
+ *
+ * @author XingYang
+ */
+public class InlineContentTypeHandler extends BaseTypeHandler<String> {
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, String parameter, JdbcType jdbcType)
+            throws SQLException {
+        if (ContentCodec.isCompressible(parameter)) {
+            ps.setNull(i, Types.LONGVARCHAR);
+        } else {
+            ps.setString(i, parameter);
+        }
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return rs.getString(columnName);
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return rs.getString(columnIndex);
+    }
+
+    @Override
+    public String getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return cs.getString(columnIndex);
+    }
+}
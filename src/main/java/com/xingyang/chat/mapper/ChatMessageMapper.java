@@ -1,12 +1,26 @@
 package com.xingyang.chat.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xingyang.chat.handler.CompressedContentTypeHandler;
 import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.util.MessagePath;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.ResultMap;
+import org.apache.ibatis.annotations.Results;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Chat Message Mapper Interface
@@ -16,15 +30,150 @@ import java.util.List;
 @Mapper
 public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
 
+    /**
+     * Content of a row, whether stored plain or compressed, prefixed with its codec byte
+     */
+    String CONTENT = "COALESCE(content_blob, CONCAT(X'00', content)) AS content";
+
+    /**
+     * All columns of a row with the content decoded through {@link CompressedContentTypeHandler}
+     */
+    String COLUMNS = "id, conversation_id, role, sequence, parent_sequence, path, token_count, model_id, " +
+            "create_time, update_time, " +
+            "create_by, update_by, deleted, version, " + CONTENT;
+
+    /**
+     * Parameters writing a message's content to the plain or the compressed column
+     */
+    String INLINE_CONTENT = "#{m.content, typeHandler=com.xingyang.chat.handler.InlineContentTypeHandler}";
+
+    String COMPRESSED_CONTENT = "#{m.content, typeHandler=com.xingyang.chat.handler.CompressedContentTypeHandler}";
+
     /**
      * Find messages by conversation ID
      *
      * @param conversationId Conversation ID
      * @return List of messages
      */
-    @Select("SELECT * FROM chat_message WHERE conversation_id = #{conversationId} AND deleted = 0 ORDER BY sequence ASC")
+    @Select("SELECT " + COLUMNS + " FROM chat_message WHERE conversation_id = #{conversationId} AND deleted = 0 " +
+            "ORDER BY sequence ASC")
+    @Results(id = "chatMessageResult", value = {
+            @Result(column = "content", property = "content", typeHandler = CompressedContentTypeHandler.class)
+    })
     List<ChatMessage> findByConversationId(@Param("conversationId") Long conversationId);
     
+    /**
+     * Restricts a query to the sequence runs of a branch, one index range per run
+     */
+    String IN_RANGES = "<foreach collection='ranges' item='r' open='AND (' separator=' OR ' close=')'>" +
+            "sequence BETWEEN #{r.from} AND #{r.to}</foreach>";
+    
+    /**
+     * Find the page of messages just before a sequence number, newest first
+     *
+     * @param conversationId Conversation ID
+     * @param ranges Sequence runs of the branch to read, null for messages of all branches
+     * @param before Exclusive upper bound of the sequence, null for the latest messages
+     * @param limit Maximum number of messages
+     * @return Messages in descending sequence order
+     */
+    @Select({"<script>",
+            "SELECT " + COLUMNS + " FROM chat_message WHERE conversation_id = #{conversationId} AND deleted = 0",
+            "<if test='ranges != null'>" + IN_RANGES + "</if>",
+            "<if test='before != null'>AND sequence &lt; #{before}</if>",
+            "ORDER BY sequence DESC LIMIT #{limit}",
+            "</script>"})
+    @ResultMap("chatMessageResult")
+    List<ChatMessage> findPageBefore(@Param("conversationId") Long conversationId,
+                                     @Param("ranges") List<MessagePath.Range> ranges,
+                                     @Param("before") Integer before, @Param("limit") int limit);
+    
+    /**
+     * Find the page of messages just after a sequence number, oldest first
+     *
+     * @param conversationId Conversation ID
+     * @param ranges Sequence runs of the branch to read, null for messages of all branches
+     * @param after Exclusive lower bound of the sequence
+     * @param limit Maximum number of messages
+     * @return Messages in ascending sequence order
+     */
+    @Select({"<script>",
+            "SELECT " + COLUMNS + " FROM chat_message WHERE conversation_id = #{conversationId} AND deleted = 0",
+            "<if test='ranges != null'>" + IN_RANGES + "</if>",
+            "AND sequence &gt; #{after} ORDER BY sequence ASC LIMIT #{limit}",
+            "</script>"})
+    @ResultMap("chatMessageResult")
+    List<ChatMessage> findPageAfter(@Param("conversationId") Long conversationId,
+                                    @Param("ranges") List<MessagePath.Range> ranges,
+                                    @Param("after") Integer after, @Param("limit") int limit);
+    
+    /**
+     * Find the messages of one branch
+     *
+     * @param conversationId Conversation ID
+     * @param ranges Sequence runs of the branch, not empty
+     * @return Messages in ascending sequence order
+     */
+    @Select({"<script>",
+            "SELECT " + COLUMNS + " FROM chat_message WHERE conversation_id = #{conversationId} AND deleted = 0",
+            IN_RANGES,
+            "ORDER BY sequence ASC",
+            "</script>"})
+    @ResultMap("chatMessageResult")
+    List<ChatMessage> findBranch(@Param("conversationId") Long conversationId,
+                                 @Param("ranges") List<MessagePath.Range> ranges);
+    
+    /**
+     * Find the shape of a conversation's message tree, read from the parent index alone
+     *
+     * @param conversationId Conversation ID
+     * @return Messages (sequence and parent sequence only) in ascending sequence order
+     */
+    @Select("SELECT sequence, parent_sequence FROM chat_message WHERE conversation_id = #{conversationId} " +
+            "AND deleted = 0 ORDER BY sequence ASC")
+    List<ChatMessage> findTree(@Param("conversationId") Long conversationId);
+    
+    /**
+     * Find user questions similar to the given content within a time window, most relevant first
+     * <p>
+     * The full-text index only covers the plain content column, so only uncompressed questions are
+     * searched; questions long enough to have been compressed are never found.
+     *
+     * @param content Question content
+     * @param userId Only search this user's questions, null to search everybody's
+     * @param hours Size of the time window in hours
+     * @param limit Maximum number of questions
+     * @return List of similar messages with their relevance score
+     */
+    @Select({"<script>",
+            "SELECT " + COLUMNS + ", MATCH(content) AGAINST(#{content} IN NATURAL LANGUAGE MODE) AS relevance",
+            "FROM chat_message",
+            "WHERE MATCH(content) AGAINST(#{content} IN NATURAL LANGUAGE MODE)",
+            "AND content_blob IS NULL AND role = 'user' AND deleted = 0",
+            "<if test='userId != null'>AND conversation_id IN (SELECT id FROM conversation WHERE user_id = #{userId})</if>",
+            "AND create_time &gt; DATE_SUB(NOW(), INTERVAL #{hours} HOUR)",
+            "ORDER BY relevance DESC LIMIT #{limit}",
+            "</script>"})
+    @ResultMap("chatMessageResult")
+    List<ChatMessage> findSimilarQuestions(@Param("content") String content, @Param("userId") Long userId,
+                                           @Param("hours") int hours, @Param("limit") int limit);
+    
+    /**
+     * Find the assistant answer to a question
+     * <p>
+     * The answer is a child of the question; messages stored before branching have no parent and
+     * the answer is the next message. Of several answers on different branches the first is taken.
+     *
+     * @param conversationId Conversation ID
+     * @param sequence Sequence number of the question
+     * @return Answer message, or null if none
+     */
+    @Select("SELECT " + COLUMNS + " FROM chat_message WHERE conversation_id = #{conversationId} " +
+            "AND (parent_sequence = #{sequence} OR (parent_sequence IS NULL AND sequence = #{sequence} + 1)) " +
+            "AND role = 'assistant' AND deleted = 0 ORDER BY sequence ASC LIMIT 1")
+    @ResultMap("chatMessageResult")
+    ChatMessage findAnswer(@Param("conversationId") Long conversationId, @Param("sequence") Integer sequence);
+    
     /**
      * Get the max sequence number for a conversation
      *
@@ -33,4 +182,213 @@ public interface ChatMessageMapper extends BaseMapper<ChatMessage> {
      */
     @Select("SELECT COALESCE(MAX(sequence), 0) FROM chat_message WHERE conversation_id = #{conversationId} AND deleted = 0")
     Integer getMaxSequence(@Param("conversationId") Long conversationId);
-} 
\ No newline at end of file
+    
+    /**
+     * Get the highest sequence ever allocated in a conversation, soft-deleted messages included
+     *
+     * @param conversationId Conversation ID
+     * @return Max sequence number
+     */
+    @Select("SELECT COALESCE(MAX(sequence), 0) FROM chat_message WHERE conversation_id = #{conversationId}")
+    Integer getMaxAllocatedSequence(@Param("conversationId") Long conversationId);
+    
+    /**
+     * Stream user questions created since the given time, row by row
+     *
+     * @param since Lower bound of the creation time
+     * @return Cursor over the questions (id, conversation ID, sequence and content only)
+     */
+    @Select("SELECT id, conversation_id, sequence, " + CONTENT + " FROM chat_message " +
+            "WHERE create_time >= #{since} AND role = 'user' AND deleted = 0")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultMap("chatMessageResult")
+    Cursor<ChatMessage> streamUserQuestionsSince(@Param("since") LocalDateTime since);
+    
+    /**
+     * Stream the stored messages of all of a user's conversations that are not archived, row by row
+     *
+     * @param userId User ID
+     * @return Cursor over the messages, ordered by conversation ID and sequence
+     */
+    @Select("SELECT m.id, m.conversation_id, m.role, m.sequence, m.parent_sequence, m.path, m.token_count, " +
+            "m.model_id, m.create_time, " +
+            "m.update_time, m.create_by, m.update_by, m.deleted, m.version, " +
+            "COALESCE(m.content_blob, CONCAT(X'00', m.content)) AS content " +
+            "FROM conversation c JOIN chat_message m ON m.conversation_id = c.id AND m.deleted = 0 " +
+            "WHERE c.user_id = #{userId} AND c.deleted = 0 AND NOT c.status <=> 0 " +
+            "ORDER BY m.conversation_id ASC, m.sequence ASC")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultMap("chatMessageResult")
+    Cursor<ChatMessage> streamByUserId(@Param("userId") Long userId);
+    
+    /**
+     * Stream the stored messages of a user's conversations that are not archived, for the search index
+     *
+     * @param userId User ID
+     * @param since Exclusive lower bound of the creation time, null for all messages
+     * @return Cursor over the messages (conversation ID, sequence and content only)
+     */
+    @Select({"<script>",
+            "SELECT m.conversation_id, m.sequence, COALESCE(m.content_blob, CONCAT(X'00', m.content)) AS content",
+            "FROM conversation c JOIN chat_message m ON m.conversation_id = c.id AND m.deleted = 0",
+            "WHERE c.user_id = #{userId} AND c.deleted = 0 AND NOT c.status &lt;=&gt; 0",
+            "<if test='since != null'>AND m.create_time &gt; #{since}</if>",
+            "</script>"})
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultMap("chatMessageResult")
+    Cursor<ChatMessage> streamForSearch(@Param("userId") Long userId, @Param("since") LocalDateTime since);
+    
+    /**
+     * Find messages by conversation ID and sequence
+     *
+     * @param keys Messages with conversation ID and sequence set
+     * @return Found messages, in no particular order
+     */
+    @Select({"<script>",
+            "SELECT " + COLUMNS + " FROM chat_message WHERE deleted = 0 AND (conversation_id, sequence) IN",
+            "<foreach collection='keys' item='k' open='(' separator=',' close=')'>(#{k.conversationId}, #{k.sequence})</foreach>",
+            "</script>"})
+    @ResultMap("chatMessageResult")
+    List<ChatMessage> findBySequences(@Param("keys") Collection<ChatMessage> keys);
+    
+    /**
+     * Find the assistant answers to the given questions, children of the question or, for messages
+     * stored before branching, the next message; a question answered on several branches has one
+     * row per answer, earliest first
+     *
+     * @param questionIds IDs of user messages
+     * @return Rows with question_id and content columns, the content encoded as by {@link com.xingyang.chat.util.ContentCodec}
+     */
+    @Select({"<script>",
+            "SELECT u.id AS question_id, COALESCE(a.content_blob, CONCAT(X'00', a.content)) AS content",
+            "FROM chat_message u",
+            "JOIN chat_message a ON a.conversation_id = u.conversation_id",
+            "AND (a.parent_sequence = u.sequence OR (a.parent_sequence IS NULL AND a.sequence = u.sequence + 1))",
+            "WHERE u.id IN",
+            "<foreach collection='questionIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "AND a.role = 'assistant' AND a.deleted = 0",
+            "ORDER BY a.sequence ASC",
+            "</script>"})
+    List<Map<String, Object>> findAnswersForQuestions(@Param("questionIds") Collection<Long> questionIds);
+    
+    /**
+     * Insert several messages in one multi-row statement
+     * <p>
+     * Audit columns are not auto-filled here and must be set on the entities.
+     *
+     * @param messages Messages to insert, IDs are written back
+     * @return Number of inserted rows
+     */
+    @Insert({"<script>",
+            "INSERT INTO chat_message (conversation_id, role, content, content_blob, sequence, parent_sequence, path,",
+            "token_count, model_id, create_time, update_time, create_by, update_by, deleted, version) VALUES",
+            "<foreach collection='messages' item='m' separator=','>",
+            "(#{m.conversationId}, #{m.role}, " + INLINE_CONTENT + ", " + COMPRESSED_CONTENT + ",",
+            "#{m.sequence}, #{m.parentSequence}, #{m.path}, #{m.tokenCount}, #{m.modelId},",
+            "#{m.createTime}, #{m.updateTime}, #{m.createBy}, #{m.updateBy}, 0, 1)",
+            "</foreach>",
+            "</script>"})
+    @Options(useGeneratedKeys = true, keyProperty = "messages.id", keyColumn = "id")
+    int insertBatch(@Param("messages") List<ChatMessage> messages);
+    
+    /**
+     * Find which of the given sequence numbers already exist in a conversation
+     *
+     * @param conversationId Conversation ID
+     * @param sequences Sequence numbers to check
+     * @return Existing sequence numbers
+     */
+    @Select({"<script>",
+            "SELECT sequence FROM chat_message WHERE conversation_id = #{conversationId} AND deleted = 0",
+            "AND sequence IN",
+            "<foreach collection='sequences' item='s' open='(' separator=',' close=')'>#{s}</foreach>",
+            "</script>"})
+    List<Integer> findExistingSequences(@Param("conversationId") Long conversationId,
+                                        @Param("sequences") Collection<Integer> sequences);
+    
+    /**
+     * Insert archived messages back with their original IDs, skipping rows that still exist
+     *
+     * @param messages Messages read from an archive
+     * @return Number of inserted rows
+     */
+    @Insert({"<script>",
+            "INSERT IGNORE INTO chat_message (id, conversation_id, role, content, content_blob, sequence,",
+            "parent_sequence, path, token_count, model_id, create_time, update_time, create_by, update_by, deleted,",
+            "version) VALUES",
+            "<foreach collection='messages' item='m' separator=','>",
+            "(#{m.id}, #{m.conversationId}, #{m.role}, " + INLINE_CONTENT + ", " + COMPRESSED_CONTENT + ",",
+            "#{m.sequence}, #{m.parentSequence}, #{m.path}, #{m.tokenCount}, #{m.modelId},",
+            "#{m.createTime}, #{m.updateTime}, #{m.createBy}, #{m.updateBy}, 0, #{m.version})",
+            "</foreach>",
+            "</script>"})
+    int restoreBatch(@Param("messages") List<ChatMessage> messages);
+    
+    /**
+     * Physically delete one batch of archived messages
+     *
+     * @param conversationId Conversation ID
+     * @param maxId Highest message ID contained in the archive
+     * @param limit Maximum number of rows
+     * @return Number of deleted rows
+     */
+    @Delete("DELETE FROM chat_message WHERE conversation_id = #{conversationId} AND deleted = 0 " +
+            "AND id <= #{maxId} LIMIT #{limit}")
+    int deleteArchived(@Param("conversationId") Long conversationId, @Param("maxId") Long maxId,
+                       @Param("limit") int limit);
+    
+    /**
+     * Find messages still stored uncompressed that are long enough to be compressed, in ID order
+     *
+     * @param afterId Exclusive lower bound of the ID
+     * @param minLength Minimum content length in characters
+     * @param limit Maximum number of messages
+     * @return Messages (id and content only)
+     */
+    @Select("SELECT id, content FROM chat_message WHERE id > #{afterId} AND content_blob IS NULL " +
+            "AND CHAR_LENGTH(content) >= #{minLength} ORDER BY id ASC LIMIT #{limit}")
+    List<ChatMessage> findUncompressed(@Param("afterId") Long afterId, @Param("minLength") int minLength,
+                                       @Param("limit") int limit);
+    
+    /**
+     * Move the content of several messages to the compressed column
+     *
+     * @param blobs Encoded content by message ID
+     * @return Number of updated rows
+     */
+    @Update({"<script>",
+            "UPDATE chat_message SET content_blob = CASE id",
+            "<foreach collection='blobs' index='id' item='blob'>WHEN #{id} THEN #{blob} </foreach>",
+            "END, content = NULL",
+            "WHERE content_blob IS NULL AND id IN",
+            "<foreach collection='blobs' index='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int compressBatch(@Param("blobs") Map<Long, byte[]> blobs);
+    
+    /**
+     * Find IDs of messages belonging to any of the given conversations
+     *
+     * @param conversationIds Conversation IDs
+     * @param limit Maximum number of IDs
+     * @return Message IDs
+     */
+    @Select({"<script>",
+            "SELECT id FROM chat_message WHERE conversation_id IN",
+            "<foreach collection='conversationIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "LIMIT #{limit}",
+            "</script>"})
+    List<Long> findIdsByConversationIds(@Param("conversationIds") Collection<Long> conversationIds,
+                                        @Param("limit") int limit);
+    
+    /**
+     * Hard-delete messages by ID, regardless of the logical delete flag
+     *
+     * @param ids Message IDs
+     * @return Number of deleted rows
+     */
+    @Delete({"<script>",
+            "DELETE FROM chat_message WHERE id IN",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int deletePurged(@Param("ids") Collection<Long> ids);
+}
@@ -2,10 +2,22 @@ package com.xingyang.chat.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xingyang.chat.model.dto.ConversationActivity;
+import com.xingyang.chat.model.dto.ConversationListStamp;
 import com.xingyang.chat.model.entity.Conversation;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Conversation Mapper Interface
@@ -24,4 +36,201 @@ public interface ConversationMapper extends BaseMapper<Conversation> {
      */
     @Select("SELECT * FROM conversation WHERE user_id = #{userId} AND deleted = 0 ORDER BY update_time DESC")
     Page<Conversation> findByUserId(Page<?> page, @Param("userId") Long userId);
-} 
\ No newline at end of file
+    
+    /**
+     * Find a page of a user's conversations after a keyset cursor, most recently updated first
+     *
+     * @param userId User ID
+     * @param updateTime Update time of the last conversation on the previous page, null for the first page
+     * @param id ID of the last conversation on the previous page
+     * @param limit Maximum number of conversations
+     * @return Conversations ordered by update time and ID, descending
+     */
+    @Select({"<script>",
+            "SELECT * FROM conversation WHERE user_id = #{userId} AND deleted = 0",
+            "<if test='updateTime != null'>",
+            "AND (update_time &lt; #{updateTime} OR (update_time = #{updateTime} AND id &lt; #{id}))",
+            "</if>",
+            "ORDER BY update_time DESC, id DESC LIMIT #{limit}",
+            "</script>"})
+    List<Conversation> findPageByUserId(@Param("userId") Long userId, @Param("updateTime") LocalDateTime updateTime,
+                                        @Param("id") Long id, @Param("limit") int limit);
+    
+    /**
+     * Summarize a user's conversations for cache validation
+     * <p>
+     * New messages move the update time, renames and archiving bump the version.
+     *
+     * @param userId User ID
+     * @return Count, latest update time and version sum of the conversations
+     */
+    @Select("SELECT COUNT(*) AS conversation_count, MAX(update_time) AS update_time, " +
+            "COALESCE(SUM(version), 0) AS version_sum FROM conversation WHERE user_id = #{userId} AND deleted = 0")
+    ConversationListStamp selectListStamp(@Param("userId") Long userId);
+    
+    /**
+     * Stream all conversations of a user row by row, in ID order
+     *
+     * @param userId User ID
+     * @return Cursor over the conversations
+     */
+    @Select("SELECT * FROM conversation WHERE user_id = #{userId} AND deleted = 0 ORDER BY id ASC")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<Conversation> streamByUserId(@Param("userId") Long userId);
+    
+    /**
+     * Insert several conversations in one multi-row statement
+     * <p>
+     * Audit columns are not auto-filled here and must be set on the entities.
+     *
+     * @param conversations Conversations to insert, IDs are written back
+     * @return Number of inserted rows
+     */
+    @Insert({"<script>",
+            "INSERT INTO conversation (title, user_id, model_id, model_config, status, last_message_preview,",
+            "message_count, total_tokens, create_time, update_time, create_by, update_by, deleted, version) VALUES",
+            "<foreach collection='conversations' item='c' separator=','>",
+            "(#{c.title}, #{c.userId}, #{c.modelId}, #{c.modelConfig}, #{c.status}, #{c.lastMessagePreview},",
+            "#{c.messageCount}, #{c.totalTokens}, #{c.createTime}, #{c.updateTime}, #{c.createBy}, #{c.updateBy}, 0, 1)",
+            "</foreach>",
+            "</script>"})
+    @Options(useGeneratedKeys = true, keyProperty = "conversations.id", keyColumn = "id")
+    int insertBatch(@Param("conversations") List<Conversation> conversations);
+    
+    /**
+     * Apply coalesced activity to several conversations in one statement
+     * <p>
+     * Adds to the message and token counters and replaces the preview. Each conversation gets its own
+     * update time, which never moves backwards. Archived conversations are left alone. The version is
+     * left alone too, these fields are never edited by users so there is nothing to conflict with.
+     *
+     * @param activities Activity per conversation with its update time, at most one per conversation
+     * @return Number of updated rows
+     */
+    @Update({"<script>",
+            "UPDATE conversation SET",
+            "message_count = message_count + CASE id",
+            "<foreach collection='activities' item='a'>WHEN #{a.conversationId} THEN #{a.messageCount} </foreach>",
+            "END,",
+            "total_tokens = total_tokens + CASE id",
+            "<foreach collection='activities' item='a'>WHEN #{a.conversationId} THEN #{a.totalTokens} </foreach>",
+            "END,",
+            "last_message_preview = CASE id",
+            "<foreach collection='activities' item='a'>WHEN #{a.conversationId} THEN #{a.lastMessagePreview} </foreach>",
+            "END,",
+            "update_time = GREATEST(update_time, CASE id",
+            "<foreach collection='activities' item='a'>WHEN #{a.conversationId} THEN #{a.updateTime} </foreach>",
+            "END)",
+            "WHERE deleted = 0 AND status = 1 AND id IN",
+            "<foreach collection='activities' item='a' open='(' separator=',' close=')'>#{a.conversationId}</foreach>",
+            "</script>"})
+    int applyActivity(@Param("activities") Collection<ConversationActivity> activities);
+    
+    /**
+     * Recount the message and token counters of conversations from chat_message, and move their
+     * update time up to their newest message
+     * <p>
+     * Repairs conversations whose activity was lost before it was flushed, or whose flush failed and may
+     * have been applied anyway; the preview is left alone. Scans all messages of each conversation, so
+     * it is never part of the regular flush.
+     *
+     * @param ids Conversation IDs
+     * @return Number of updated rows
+     */
+    @Update({"<script>",
+            "UPDATE conversation SET",
+            "message_count = (SELECT COUNT(*) FROM chat_message m WHERE m.conversation_id = conversation.id AND m.deleted = 0),",
+            "total_tokens = (SELECT COALESCE(SUM(m.token_count), 0) FROM chat_message m",
+            "WHERE m.conversation_id = conversation.id AND m.deleted = 0),",
+            "update_time = GREATEST(update_time, COALESCE((SELECT MAX(m.create_time) FROM chat_message m",
+            "WHERE m.conversation_id = conversation.id AND m.deleted = 0), update_time))",
+            "WHERE deleted = 0 AND status = 1 AND id IN",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int recountActivity(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Find active conversations without activity since the given time, least recently updated first
+     *
+     * @param before Exclusive upper bound of the update time
+     * @param limit Maximum number of conversations
+     * @return Conversations (id, user ID and update time only)
+     */
+    @Select("SELECT id, user_id, update_time FROM conversation WHERE update_time < #{before} " +
+            "AND status = 1 AND deleted = 0 ORDER BY update_time ASC LIMIT #{limit}")
+    List<Conversation> findIdle(@Param("before") LocalDateTime before, @Param("limit") int limit);
+    
+    /**
+     * Mark a conversation archived, unless it changed since it was read
+     *
+     * @param id Conversation ID
+     * @param updateTime Update time seen when the archive was taken
+     * @return Number of updated rows, 0 if the conversation changed
+     */
+    @Update("UPDATE conversation SET status = 0, version = version + 1 " +
+            "WHERE id = #{id} AND status = 1 AND update_time = #{updateTime} AND deleted = 0")
+    int markArchived(@Param("id") Long id, @Param("updateTime") LocalDateTime updateTime);
+    
+    /**
+     * Mark an archived conversation active again
+     *
+     * @param id Conversation ID
+     * @return Number of updated rows, 0 if another caller already did
+     */
+    @Update("UPDATE conversation SET status = 1, version = version + 1 WHERE id = #{id} AND status = 0")
+    int markActive(@Param("id") Long id);
+    
+    /**
+     * Set the active branch of a conversation; the version is left alone, like for activity
+     *
+     * @param id Conversation ID
+     * @param activeSequence Last message of the branch, null for the latest message
+     * @return Number of updated rows
+     */
+    @Update("UPDATE conversation SET active_sequence = #{activeSequence} WHERE id = #{id} AND deleted = 0")
+    int updateActiveSequence(@Param("id") Long id, @Param("activeSequence") Integer activeSequence);
+    
+    /**
+     * Logically delete a conversation, recording the deletion time in the update time
+     *
+     * @param id Conversation ID
+     * @param deleteTime Deletion time, the purge retention is counted from it
+     * @return Number of updated rows, 0 if already deleted
+     */
+    @Update("UPDATE conversation SET deleted = 1, update_time = #{deleteTime}, version = version + 1 " +
+            "WHERE id = #{id} AND deleted = 0")
+    int markDeleted(@Param("id") Long id, @Param("deleteTime") LocalDateTime deleteTime);
+    
+    /**
+     * Highest conversation ID
+     *
+     * @return Highest ID, null if the table is empty
+     */
+    @Select("SELECT MAX(id) FROM conversation")
+    Long selectMaxId();
+    
+    /**
+     * Find logically deleted conversations in an ID range, deleted before the given time
+     *
+     * @param fromId Inclusive lower bound of the ID
+     * @param toId Exclusive upper bound of the ID
+     * @param before Exclusive upper bound of the deletion time
+     * @return Conversations (id and status only) in ID order
+     */
+    @Select("SELECT id, status FROM conversation WHERE id >= #{fromId} AND id < #{toId} " +
+            "AND deleted = 1 AND update_time < #{before} ORDER BY id ASC")
+    List<Conversation> findDeletedInRange(@Param("fromId") long fromId, @Param("toId") long toId,
+                                          @Param("before") LocalDateTime before);
+    
+    /**
+     * Hard-delete logically deleted conversations
+     *
+     * @param ids Conversation IDs
+     * @return Number of deleted rows
+     */
+    @Delete({"<script>",
+            "DELETE FROM conversation WHERE deleted = 1 AND id IN",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int deletePurged(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,51 @@
+package com.xingyang.chat.mapper;
+
+import com.xingyang.chat.model.entity.UsageHourly;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Hourly Token Usage Mapper
+ *
+ * @author XingYang
+ */
+@Mapper
+public interface UsageHourlyMapper {
+
+    /**
+     * Add usage to the hourly rows in one statement, creating the rows that do not exist yet
+     *
+     * @param rows Usage deltas, at most one per user, hour and model
+     * @param updateTime Update time
+     * @return Number of affected rows as reported by MySQL
+     */
+    @Insert({"<script>",
+            "INSERT INTO usage_hourly (user_id, hour, model, prompt_tokens, completion_tokens, requests, update_time)",
+            "VALUES",
+            "<foreach collection='rows' item='r' separator=','>",
+            "(#{r.userId}, #{r.hour}, #{r.model}, #{r.promptTokens}, #{r.completionTokens}, #{r.requests}, #{updateTime})",
+            "</foreach>",
+            "ON DUPLICATE KEY UPDATE",
+            "prompt_tokens = prompt_tokens + VALUES(prompt_tokens),",
+            "completion_tokens = completion_tokens + VALUES(completion_tokens),",
+            "requests = requests + VALUES(requests),",
+            "update_time = VALUES(update_time)",
+            "</script>"})
+    int upsertBatch(@Param("rows") List<UsageHourly> rows, @Param("updateTime") LocalDateTime updateTime);
+
+    /**
+     * Sum a user's prompt and completion tokens from an hour on
+     *
+     * @param userId User ID
+     * @param since Start of the first hour
+     * @return Token total
+     */
+    @Select("SELECT COALESCE(SUM(prompt_tokens + completion_tokens), 0) FROM usage_hourly " +
+            "WHERE user_id = #{userId} AND hour >= #{since}")
+    long sumTokens(@Param("userId") Long userId, @Param("since") LocalDateTime since);
+}
@@ -0,0 +1,186 @@
+package com.xingyang.chat.metrics;
+
+import com.xingyang.chat.config.AiModelConfig;
+import com.xingyang.chat.config.ResponseCacheConfig;
+import com.xingyang.chat.model.dto.ResponseCacheEntry;
+import com.xingyang.chat.model.vo.CacheStatsVO;
+import com.xingyang.chat.util.TokenChunker;
+import com.xingyang.chat.util.TopKSketch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Q&A response cache metrics
+ * <p>
+ * Lookups are counted per endpoint, model and result, served answers feed a size histogram,
+ * and every hit adds the tokens and upstream time it saved. Keys, never question text, are
+ * tracked in a heavy-hitters sketch for the hot-key report.
+ *
+ * @author XingYang
+ */
+@Component
+public class ResponseCacheMetrics {
+
+    public static final String RESULT_HIT = "hit";
+    public static final String RESULT_STALE = "stale";
+    public static final String RESULT_SIMILAR = "similar";
+    public static final String RESULT_MISS = "miss";
+
+    private static final String REQUESTS = "chat.cache.requests";
+
+    private static final String OTHER_MODEL = "other";
+
+    private final MeterRegistry meterRegistry;
+
+    private final ResponseCacheConfig cacheConfig;
+
+    private final AiModelConfig aiModelConfig;
+
+    private final TopKSketch hotKeys;
+
+    private final DistributionSummary valueSize;
+
+    private final Counter savedTokens;
+
+    private final Counter savedMillis;
+
+    private final Timer upstreamLatency;
+
+    public ResponseCacheMetrics(MeterRegistry meterRegistry, ResponseCacheConfig cacheConfig,
+                                AiModelConfig aiModelConfig) {
+        this.meterRegistry = meterRegistry;
+        this.cacheConfig = cacheConfig;
+        this.aiModelConfig = aiModelConfig;
+        this.hotKeys = new TopKSketch(cacheConfig.getHotKeySketchCapacity());
+        this.valueSize = DistributionSummary.builder("chat.cache.value.size")
+                .description("Size of answers served from the cache")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.savedTokens = Counter.builder("chat.cache.saved.tokens")
+                .description("Estimated upstream tokens saved by cache hits")
+                .register(meterRegistry);
+        this.savedMillis = Counter.builder("chat.cache.saved.millis")
+                .description("Estimated upstream time saved by cache hits")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.upstreamLatency = Timer.builder("chat.upstream.latency")
+                .description("Upstream completion latency")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record a cache lookup
+     *
+     * @param endpoint Endpoint that did the lookup
+     * @param cacheKey Cache key of the question
+     * @param entry Entry served, or null on a miss
+     * @param result Lookup result, one of the RESULT_ constants
+     */
+    public void recordLookup(String endpoint, String cacheKey, ResponseCacheEntry entry, String result) {
+        Counter.builder(REQUESTS)
+                .description("Q&A cache lookups")
+                .tag("endpoint", endpoint)
+                .tag("model", modelTag())
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+        hotKeys.add(cacheKey);
+
+        if (entry == null || entry.getValue() == null) {
+            return;
+        }
+
+        valueSize.record(entry.getValue().getBytes(StandardCharsets.UTF_8).length);
+        savedTokens.increment(TokenChunker.countTokens(entry.getValue()));
+
+        // Entries cached before timing was recorded are credited with the average upstream latency
+        Long computeMillis = entry.getComputeMillis();
+        savedMillis.increment(computeMillis != null && computeMillis > 0
+                ? computeMillis
+                : upstreamLatency.mean(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Record the latency of an upstream completion
+     *
+     * @param millis Call duration in milliseconds
+     */
+    public void recordUpstream(long millis) {
+        upstreamLatency.record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Build the admin stats view from the current meter values
+     *
+     * @return Cache statistics
+     */
+    public CacheStatsVO snapshot() {
+        Map<String, CacheStatsVO.LookupStats> lookups = new LinkedHashMap<>();
+        for (Counter counter : meterRegistry.find(REQUESTS).counters()) {
+            String endpoint = counter.getId().getTag("endpoint");
+            String model = counter.getId().getTag("model");
+            CacheStatsVO.LookupStats stats = lookups.computeIfAbsent(endpoint + "/" + model, k -> {
+                CacheStatsVO.LookupStats created = new CacheStatsVO.LookupStats();
+                created.setEndpoint(endpoint);
+                created.setModel(model);
+                return created;
+            });
+
+            long count = (long) counter.count();
+            String result = counter.getId().getTag("result");
+            if (RESULT_HIT.equals(result)) {
+                stats.setHits(stats.getHits() + count);
+            } else if (RESULT_STALE.equals(result)) {
+                stats.setStale(stats.getStale() + count);
+            } else if (RESULT_SIMILAR.equals(result)) {
+                stats.setSimilar(stats.getSimilar() + count);
+            } else {
+                stats.setMisses(stats.getMisses() + count);
+            }
+        }
+
+        long served = 0;
+        long total = 0;
+        for (CacheStatsVO.LookupStats stats : lookups.values()) {
+            long statsServed = stats.getHits() + stats.getStale() + stats.getSimilar();
+            long statsTotal = statsServed + stats.getMisses();
+            stats.setHitRatio(statsTotal > 0 ? (double) statsServed / statsTotal : 0);
+            served += statsServed;
+            total += statsTotal;
+        }
+
+        CacheStatsVO vo = new CacheStatsVO();
+        vo.getLookups().addAll(lookups.values());
+        vo.setHitRatio(total > 0 ? (double) served / total : 0);
+        vo.setServedValues(valueSize.count());
+        vo.setMeanValueBytes(valueSize.mean());
+        vo.setMaxValueBytes(valueSize.max());
+        vo.setSavedTokens(savedTokens.count());
+        vo.setSavedMillis(savedMillis.count());
+        vo.setUpstreamMeanMillis(upstreamLatency.mean(TimeUnit.MILLISECONDS));
+        vo.getHotKeys().addAll(hotKeys.top(cacheConfig.getHotKeyTopN()));
+        return vo;
+    }
+
+    /**
+     * Tag of the model answering requests, clamped to the configured models
+     * <p>
+     * The model can be switched through the API, so an unbounded tag would let clients create a
+     * time series per made-up model ID.
+     */
+    private String modelTag() {
+        String modelId = aiModelConfig.getModelId();
+        List<String> models = cacheConfig.getMetricModels();
+        return modelId != null && models != null && models.contains(modelId) ? modelId : OTHER_MODEL;
+    }
+}
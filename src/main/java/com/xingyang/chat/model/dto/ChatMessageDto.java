@@ -38,6 +38,16 @@ public class ChatMessageDto {
      */
     private Long timestamp;
     
+    /**
+     * Message sequence in the conversation, used as the pagination cursor
+     */
+    private Integer sequence;
+    
+    /**
+     * Sequence of the message this one answers or follows, 0 for a first message
+     */
+    private Integer parentSequence;
+    
     /**
      * Create a user message
      */
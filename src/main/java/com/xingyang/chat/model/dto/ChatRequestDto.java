@@ -53,6 +53,9 @@ public class ChatRequestDto {
     @Schema(description = "Conversation ID (if continuing an existing conversation)")
     private Long conversationId;
     
+    @Schema(description = "Message the turn continues from (0 for a new first question, a user message to regenerate its answer); the active branch if not set")
+    private Integer parentSequence;
+    
     @Schema(description = "Whether to save this conversation")
     @Builder.Default
     private boolean saveConversation = true;
@@ -0,0 +1,88 @@
+package com.xingyang.chat.model.dto;
+
+import com.xingyang.chat.model.entity.ChatMessage;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes to a conversation's denormalized list fields caused by new messages
+ *
+ * @author XingYang
+ */
+@Data
+public class ConversationActivity implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Conversation ID
+     */
+    private Long conversationId;
+
+    /**
+     * Number of messages added
+     */
+    private int messageCount;
+
+    /**
+     * Tokens added
+     */
+    private int totalTokens;
+
+    /**
+     * Start of the newest message
+     */
+    private String lastMessagePreview;
+
+    /**
+     * Sequence of the newest message, to pick the right preview
+     */
+    private int lastSequence;
+
+    /**
+     * Time of the newest message, set when the activity is applied later than it happened
+     */
+    private LocalDateTime updateTime;
+
+    /**
+     * Summarize new messages per conversation
+     *
+     * @param messages New messages, possibly of several conversations
+     * @param previewLength Maximum preview length in characters
+     * @return One activity per conversation
+     */
+    public static List<ConversationActivity> fromMessages(Collection<ChatMessage> messages, int previewLength) {
+        Map<Long, ConversationActivity> activities = new LinkedHashMap<>();
+        for (ChatMessage message : messages) {
+            ConversationActivity activity = activities.computeIfAbsent(message.getConversationId(), id -> {
+                ConversationActivity created = new ConversationActivity();
+                created.setConversationId(id);
+                created.setLastSequence(Integer.MIN_VALUE);
+                return created;
+            });
+            activity.setMessageCount(activity.getMessageCount() + 1);
+            activity.setTotalTokens(activity.getTotalTokens()
+                    + (message.getTokenCount() != null ? message.getTokenCount() : 0));
+            if (message.getSequence() >= activity.getLastSequence()) {
+                activity.setLastSequence(message.getSequence());
+                activity.setLastMessagePreview(preview(message.getContent(), previewLength));
+            }
+        }
+        return new ArrayList<>(activities.values());
+    }
+
+    private static String preview(String content, int previewLength) {
+        if (content == null) {
+            return null;
+        }
+        String collapsed = content.replaceAll("\\s+", " ").trim();
+        return collapsed.length() > previewLength ? collapsed.substring(0, previewLength) : collapsed;
+    }
+}
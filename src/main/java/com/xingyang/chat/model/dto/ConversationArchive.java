@@ -0,0 +1,44 @@
+package com.xingyang.chat.model.dto;
+
+import com.xingyang.chat.model.entity.ChatMessage;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Archived rows of one conversation, stored as a compressed blob
+ *
+ * @author XingYang
+ */
+@Data
+public class ConversationArchive implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Conversation ID
+     */
+    private Long conversationId;
+
+    /**
+     * Update time of the conversation when it was archived
+     */
+    private LocalDateTime updateTime;
+
+    /**
+     * Time the archive was written
+     */
+    private LocalDateTime archiveTime;
+
+    /**
+     * Rows of the chat_message table in sequence order
+     */
+    private List<ChatMessage> chatMessages;
+
+    /**
+     * Rows of the former message table, only in archives written before it was merged into chat_message
+     */
+    private List<ChatMessage> messages;
+}
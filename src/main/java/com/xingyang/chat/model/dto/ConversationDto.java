@@ -33,6 +33,15 @@ public class ConversationDto implements Serializable {
     @Schema(description = "Conversation status (0: archived, 1: active)")
     private Integer status;
     
+    @Schema(description = "Start of the latest message")
+    private String lastMessagePreview;
+    
+    @Schema(description = "Number of messages")
+    private Integer messageCount;
+    
+    @Schema(description = "Total tokens of all messages")
+    private Integer totalTokens;
+    
     @Schema(description = "Creation time")
     private LocalDateTime createTime;
     
@@ -41,4 +50,7 @@ public class ConversationDto implements Serializable {
     
     @Schema(description = "Messages in the conversation")
     private List<ChatMessageDto> messages;
+    
+    @Schema(description = "Whether older messages exist than the ones included")
+    private Boolean hasMoreMessages;
 } 
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.xingyang.chat.model.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Summary of a user's conversation list that changes whenever a conversation is added, removed or updated
+ *
+ * @author XingYang
+ */
+@Data
+public class ConversationListStamp implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of conversations
+     */
+    private long conversationCount;
+
+    /**
+     * Latest update time of any conversation
+     */
+    private LocalDateTime updateTime;
+
+    /**
+     * Sum of the conversation versions
+     */
+    private long versionSum;
+}
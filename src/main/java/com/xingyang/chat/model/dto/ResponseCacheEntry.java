@@ -0,0 +1,52 @@
+package com.xingyang.chat.model.dto;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Cached Q&A answer together with the data needed for early refresh
+ *
+ * @author XingYang
+ */
+@Data
+@NoArgsConstructor
+public class ResponseCacheEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Cached answer
+     */
+    private String value;
+
+    /**
+     * Time the upstream call took to produce the answer, in milliseconds
+     */
+    private Long computeMillis;
+
+    /**
+     * Logical expiry as epoch milliseconds
+     */
+    private Long expireAt;
+
+    /**
+     * Number of tokens per chunk the answer is replayed in, null for the configured default
+     */
+    private Integer tokensPerChunk;
+
+    /**
+     * Whether the entry was served after its logical expiry (lookup result only, not stored)
+     */
+    @JSONField(serialize = false, deserialize = false)
+    private boolean stale;
+
+    public ResponseCacheEntry(String value, Long computeMillis, Long expireAt, Integer tokensPerChunk) {
+        this.value = value;
+        this.computeMillis = computeMillis;
+        this.expireAt = expireAt;
+        this.tokensPerChunk = tokensPerChunk;
+    }
+}
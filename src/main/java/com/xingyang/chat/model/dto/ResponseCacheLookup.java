@@ -0,0 +1,57 @@
+package com.xingyang.chat.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Result of a Q&A cache lookup
+ * <p>
+ * When the entry has expired and this caller won the right to recompute it, the lookup carries
+ * the recompute token. The caller must finish it with {@code ResponseCacheService.put(lookup, ...)}
+ * or {@code ResponseCacheService.release(lookup)}, or other readers keep getting the stale value
+ * until the lock times out.
+ *
+ * @author XingYang
+ */
+@Data
+@AllArgsConstructor
+public class ResponseCacheLookup {
+
+    /**
+     * Question looked up
+     */
+    private String question;
+
+    /**
+     * Entry found, null on a miss
+     */
+    private ResponseCacheEntry entry;
+
+    /**
+     * Token of the recompute lock held by this caller, null if it holds none
+     */
+    private String recomputeToken;
+
+    public static ResponseCacheLookup hit(String question, ResponseCacheEntry entry) {
+        return new ResponseCacheLookup(question, entry, null);
+    }
+
+    public static ResponseCacheLookup miss(String question) {
+        return new ResponseCacheLookup(question, null, null);
+    }
+
+    public static ResponseCacheLookup recompute(String question, String recomputeToken) {
+        return new ResponseCacheLookup(question, null, recomputeToken);
+    }
+
+    public boolean isHit() {
+        return entry != null;
+    }
+
+    /**
+     * Whether this caller has to recompute an expired entry
+     */
+    public boolean isRecompute() {
+        return recomputeToken != null;
+    }
+}
@@ -1,5 +1,6 @@
 package com.xingyang.chat.model.entity;
 
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableName;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
@@ -22,15 +23,31 @@ public class ChatMessage extends BaseEntity {
     @Schema(description = "Message role (user, assistant, system)")
     private String role;
     
+    /**
+     * Stored in content, or compressed in content_blob when long; see {@link com.xingyang.chat.util.ContentCodec}
+     */
     @Schema(description = "Message content")
     private String content;
     
     @Schema(description = "Message sequence in conversation")
     private Integer sequence;
     
+    @Schema(description = "Sequence of the parent message, 0 for a first message")
+    private Integer parentSequence;
+    
+    /**
+     * Ancestor sequences as runs; see {@link com.xingyang.chat.util.MessagePath}
+     */
+    @Schema(description = "Sequences from the first message to this one")
+    private String path;
+    
     @Schema(description = "Token count")
     private Integer tokenCount;
     
     @Schema(description = "Model ID used for this message")
     private String modelId;
+    
+    @Schema(description = "Full-text relevance score (search results only)")
+    @TableField(exist = false)
+    private Double relevance;
 } 
\ No newline at end of file
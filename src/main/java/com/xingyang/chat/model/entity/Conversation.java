@@ -30,4 +30,16 @@ public class Conversation extends BaseEntity {
     
     @Schema(description = "Conversation status (0: archived, 1: active)")
     private Integer status;
+    
+    @Schema(description = "Start of the latest message")
+    private String lastMessagePreview;
+    
+    @Schema(description = "Number of messages")
+    private Integer messageCount;
+    
+    @Schema(description = "Total tokens of all messages")
+    private Integer totalTokens;
+    
+    @Schema(description = "Last message of the active branch, null for the latest message")
+    private Integer activeSequence;
 } 
\ No newline at end of file
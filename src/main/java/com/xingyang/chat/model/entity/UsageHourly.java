@@ -0,0 +1,39 @@
+package com.xingyang.chat.model.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Hourly Token Usage Entity
+ *
+ * @author XingYang
+ */
+@Data
+@TableName("usage_hourly")
+@Schema(description = "Hourly Token Usage Entity")
+public class UsageHourly implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "User ID, 0 for calls without a user")
+    private Long userId;
+
+    @Schema(description = "Start of the hour")
+    private LocalDateTime hour;
+
+    @Schema(description = "Upstream model ID")
+    private String model;
+
+    @Schema(description = "Prompt tokens")
+    private Long promptTokens;
+
+    @Schema(description = "Completion tokens")
+    private Long completionTokens;
+
+    @Schema(description = "Number of upstream calls")
+    private Integer requests;
+}
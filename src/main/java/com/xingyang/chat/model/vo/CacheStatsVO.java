@@ -0,0 +1,79 @@
+package com.xingyang.chat.model.vo;
+
+import com.xingyang.chat.util.TopKSketch;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response Cache Statistics View Object
+ *
+ * @author XingYang
+ */
+@Data
+@Schema(description = "Response Cache Statistics View Object")
+public class CacheStatsVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "Lookup results per endpoint and model")
+    private List<LookupStats> lookups = new ArrayList<>();
+
+    @Schema(description = "Overall hit ratio, stale and similar hits included")
+    private double hitRatio;
+
+    @Schema(description = "Number of answers served from the cache")
+    private long servedValues;
+
+    @Schema(description = "Average size of served answers in bytes")
+    private double meanValueBytes;
+
+    @Schema(description = "Largest served answer in bytes")
+    private double maxValueBytes;
+
+    @Schema(description = "Estimated upstream tokens saved")
+    private double savedTokens;
+
+    @Schema(description = "Estimated upstream milliseconds saved")
+    private double savedMillis;
+
+    @Schema(description = "Average upstream call latency in milliseconds")
+    private double upstreamMeanMillis;
+
+    @Schema(description = "Most frequently requested cache keys")
+    private List<TopKSketch.Entry> hotKeys = new ArrayList<>();
+
+    /**
+     * Lookup counts for one endpoint and model
+     */
+    @Data
+    @Schema(description = "Lookup results for one endpoint and model")
+    public static class LookupStats implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Schema(description = "Endpoint name")
+        private String endpoint;
+
+        @Schema(description = "Model ID")
+        private String model;
+
+        @Schema(description = "Fresh hits")
+        private long hits;
+
+        @Schema(description = "Hits served after logical expiry")
+        private long stale;
+
+        @Schema(description = "Hits answered from a similar question")
+        private long similar;
+
+        @Schema(description = "Misses")
+        private long misses;
+
+        @Schema(description = "Hit ratio, stale and similar hits included")
+        private double hitRatio;
+    }
+}
@@ -0,0 +1,33 @@
+package com.xingyang.chat.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * Cache Warm-up Result View Object
+ *
+ * @author XingYang
+ */
+@Data
+@Schema(description = "Cache Warm-up Result View Object")
+public class CacheWarmupVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "Number of historical questions scanned")
+    private long scannedQuestions;
+
+    @Schema(description = "Number of frequent questions selected")
+    private int selectedQuestions;
+
+    @Schema(description = "Number of selected questions that had an answer")
+    private int answeredQuestions;
+
+    @Schema(description = "Number of cache entries written")
+    private int loadedEntries;
+
+    @Schema(description = "Elapsed time in milliseconds")
+    private long elapsedMillis;
+}
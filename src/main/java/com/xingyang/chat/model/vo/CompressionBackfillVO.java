@@ -0,0 +1,30 @@
+package com.xingyang.chat.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * Message Compression Backfill Result View Object
+ *
+ * @author XingYang
+ */
+@Data
+@Schema(description = "Message Compression Backfill Result View Object")
+public class CompressionBackfillVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "Number of chat_message rows compressed")
+    private long chatMessageRows;
+
+    @Schema(description = "Content size before compression in bytes")
+    private long originalBytes;
+
+    @Schema(description = "Content size after compression in bytes")
+    private long compressedBytes;
+
+    @Schema(description = "Elapsed time in milliseconds")
+    private long elapsedMillis;
+}
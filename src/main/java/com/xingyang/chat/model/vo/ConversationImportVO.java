@@ -0,0 +1,44 @@
+package com.xingyang.chat.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversation Import Result View Object
+ *
+ * @author XingYang
+ */
+@Data
+@Schema(description = "Conversation Import Result View Object")
+public class ConversationImportVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "Number of records read from the upload")
+    private long records;
+
+    @Schema(description = "Number of conversations imported")
+    private long conversations;
+
+    @Schema(description = "Number of messages imported")
+    private long messages;
+
+    @Schema(description = "Number of records rejected")
+    private long rejected;
+
+    @Schema(description = "Number of committed batches")
+    private int batches;
+
+    @Schema(description = "Whether the whole upload was read; false if parsing stopped at a malformed array")
+    private boolean complete = true;
+
+    @Schema(description = "Reasons for the first rejected records")
+    private List<String> errors = new ArrayList<>();
+
+    @Schema(description = "Elapsed time in milliseconds")
+    private long elapsedMillis;
+}
@@ -0,0 +1,32 @@
+package com.xingyang.chat.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Cursor-Based Page View Object
+ *
+ * @author XingYang
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Cursor-Based Page View Object")
+public class CursorPage<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "Records on this page")
+    private List<T> records;
+
+    @Schema(description = "Cursor to pass to fetch the next page, null if there is none")
+    private String nextCursor;
+
+    @Schema(description = "Whether more records exist beyond this page")
+    private boolean hasMore;
+}
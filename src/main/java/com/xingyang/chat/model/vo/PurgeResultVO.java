@@ -0,0 +1,42 @@
+package com.xingyang.chat.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * Deleted Conversation Purge Result View Object
+ *
+ * @author XingYang
+ */
+@Data
+@Schema(description = "Deleted Conversation Purge Result View Object")
+public class PurgeResultVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "Number of conversations hard-deleted")
+    private long conversations;
+
+    @Schema(description = "Number of chat_message rows hard-deleted")
+    private long messages;
+
+    @Schema(description = "Number of archive blobs removed")
+    private long archives;
+
+    @Schema(description = "Number of delete statements executed")
+    private long statements;
+
+    @Schema(description = "Conversation ID the scan stopped at")
+    private long scannedUpToId;
+
+    @Schema(description = "Highest conversation ID when the run started")
+    private long maxId;
+
+    @Schema(description = "Whether the scan reached the highest conversation ID")
+    private boolean complete;
+
+    @Schema(description = "Elapsed time in milliseconds")
+    private long elapsedMillis;
+}
@@ -0,0 +1,40 @@
+package com.xingyang.chat.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Message Search Result View Object
+ *
+ * @author XingYang
+ */
+@Data
+@Schema(description = "Message Search Result View Object")
+public class SearchHitVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Schema(description = "Conversation ID")
+    private Long conversationId;
+
+    @Schema(description = "Conversation title")
+    private String title;
+
+    @Schema(description = "Last update time of the conversation")
+    private LocalDateTime updateTime;
+
+    @Schema(description = "Sequence of the best matching message")
+    private Integer sequence;
+
+    @Schema(description = "Role of the best matching message")
+    private String role;
+
+    @Schema(description = "Excerpt of the best matching message around the first match")
+    private String snippet;
+
+    @Schema(description = "BM25 relevance score")
+    private double score;
+}
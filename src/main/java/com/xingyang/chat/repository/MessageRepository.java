@@ -0,0 +1,114 @@
+package com.xingyang.chat.repository;
+
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.util.MessagePath;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message Repository Interface
+ * <p>
+ * The single store of chat messages. Hides whether a message is still waiting for the group
+ * commit, stored in MySQL or archived in MinIO.
+ *
+ * @author XingYang
+ */
+public interface MessageRepository {
+
+    /**
+     * Append messages of one conversation and record the activity on the conversation
+     * <p>
+     * Audit fields and sequence numbers must be set.
+     *
+     * @param userId Owner of the conversation
+     * @param messages Messages in sequence order
+     * @param now Time of the write
+     */
+    void append(Long userId, List<ChatMessage> messages, LocalDateTime now);
+
+    /**
+     * Find all messages of a conversation
+     *
+     * @param conversation Conversation
+     * @return Messages in sequence order
+     */
+    List<ChatMessage> findAll(Conversation conversation);
+
+    /**
+     * Find messages by keyset on the sequence number
+     *
+     * @param conversation Conversation
+     * @param path Branch to read, null for messages of all branches
+     * @param before Exclusive upper bound of the sequence, used when after is null; null for the latest messages
+     * @param after Exclusive lower bound of the sequence, null to page backwards
+     * @param limit Maximum number of messages
+     * @return Messages in ascending sequence order when paging forwards, descending otherwise
+     */
+    List<ChatMessage> findPage(Conversation conversation, MessagePath path, Integer before, Integer after, int limit);
+    
+    /**
+     * Find the path of the active branch: the conversation's active sequence, or else its latest message
+     *
+     * @param conversation Conversation
+     * @return Path from the first message to the last one of the active branch, the root if there are no messages
+     */
+    MessagePath findActivePath(Conversation conversation);
+    
+    /**
+     * Find the messages of one branch
+     *
+     * @param conversation Conversation
+     * @param path Path of the branch's last message
+     * @return Messages on the path in sequence order
+     */
+    List<ChatMessage> findBranch(Conversation conversation, MessagePath path);
+    
+    /**
+     * Find messages by sequence number
+     *
+     * @param conversation Conversation
+     * @param sequences Sequence numbers
+     * @return Found messages in sequence order
+     */
+    List<ChatMessage> findBySequences(Conversation conversation, Collection<Integer> sequences);
+    
+    /**
+     * Find the shape of a conversation's message tree without loading the messages
+     *
+     * @param conversation Conversation
+     * @return Parent sequence by sequence, in ascending sequence order
+     */
+    Map<Integer, Integer> findTree(Conversation conversation);
+
+    /**
+     * Find the highest sequence of a conversation that a read on this node would return, without
+     * loading messages; archived conversations are not looked into and report 0
+     *
+     * @param conversation Conversation
+     * @return Highest sequence, 0 if there are no messages
+     */
+    int findMaxSequence(Conversation conversation);
+
+    /**
+     * Find uncompressed user questions similar to the given content within a time window, most relevant first
+     *
+     * @param content Question content
+     * @param userId Only search this user's questions, null to search everybody's
+     * @param hours Size of the time window in hours
+     * @param limit Maximum number of questions
+     * @return Similar questions with their relevance score
+     */
+    List<ChatMessage> findSimilarQuestions(String content, Long userId, int hours, int limit);
+
+    /**
+     * Find the assistant answer that directly follows a question
+     *
+     * @param question User message
+     * @return Answer, or null if none
+     */
+    ChatMessage findAnswer(ChatMessage question);
+}
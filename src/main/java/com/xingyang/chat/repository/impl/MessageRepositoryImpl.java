@@ -0,0 +1,274 @@
+package com.xingyang.chat.repository.impl;
+
+import com.xingyang.chat.config.ConversationConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.model.dto.ConversationActivity;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.repository.MessageRepository;
+import com.xingyang.chat.service.ConversationActivityService;
+import com.xingyang.chat.service.ConversationArchiveService;
+import com.xingyang.chat.service.ConversationIndexService;
+import com.xingyang.chat.service.MessageSearchService;
+import com.xingyang.chat.service.MessageWriteBehindService;
+import com.xingyang.chat.util.MessagePath;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Message Repository Implementation
+ * <p>
+ * Messages live in the chat_message table. Writes go through the write-ahead log when write-behind
+ * is enabled; reads merge in messages still waiting for the group commit and those of archived
+ * conversations. Messages form a tree, and reads of one branch are limited to the sequence runs of
+ * its path.
+ * <p>
+ * Pending messages are looked up before the table: one that is no longer pending by then was
+ * committed before the query, or within the grace period before it, and the query returns it.
+ *
+ * @author XingYang
+ */
+@Repository
+public class MessageRepositoryImpl implements MessageRepository {
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private MessageWriteBehindService messageWriteBehindService;
+
+    @Autowired
+    private ConversationArchiveService conversationArchiveService;
+
+    @Autowired
+    private ConversationActivityService conversationActivityService;
+
+    @Autowired
+    private ConversationIndexService conversationIndexService;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private ConversationConfig conversationConfig;
+
+    @Override
+    public void append(Long userId, List<ChatMessage> messages, LocalDateTime now) {
+        List<ConversationActivity> activities = ConversationActivity.fromMessages(messages,
+                conversationConfig.getPreviewLength());
+
+        // The sidebar index is updated right away, also when the database write is deferred
+        if (messageWriteBehindService.isEnabled()) {
+            messageWriteBehindService.submit(messages);
+            conversationIndexService.onActivity(userId, activities, now);
+            messageSearchService.onAppended(userId, messages);
+            return;
+        }
+
+        if (chatMessageMapper.insertBatch(messages) != messages.size()) {
+            throw new BusinessException("Failed to add messages");
+        }
+
+        // Update last update time and list-view fields, coalesced with other turns
+        conversationActivityService.touch(userId, activities, now);
+        conversationIndexService.onActivity(userId, activities, now);
+        messageSearchService.onAppended(userId, messages);
+    }
+
+    @Override
+    public List<ChatMessage> findAll(Conversation conversation) {
+        Long conversationId = conversation.getId();
+        List<ChatMessage> pending = findPending(conversationId);
+        List<ChatMessage> messages = chatMessageMapper.findByConversationId(conversationId);
+        if (conversationArchiveService.isArchived(conversation)) {
+            // Rows left behind by an interrupted archive run are in both; keep the stored copy
+            Map<Integer, ChatMessage> bySequence = new TreeMap<>();
+            conversationArchiveService.getArchivedMessages(conversation)
+                    .forEach(message -> bySequence.put(message.getSequence(), message));
+            messages.forEach(message -> bySequence.put(message.getSequence(), message));
+            messages = new ArrayList<>(bySequence.values());
+        }
+        return withPending(messages, pending, message -> true);
+    }
+
+    @Override
+    public List<ChatMessage> findPage(Conversation conversation, MessagePath path, Integer before, Integer after,
+                                      int limit) {
+        if (path != null && path.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        Long conversationId = conversation.getId();
+        List<MessagePath.Range> ranges = path != null ? path.getRanges() : null;
+        boolean forward = after != null;
+        List<ChatMessage> messages;
+        if (conversationArchiveService.isArchived(conversation)) {
+            // Archived conversations are paged in memory from the rehydrated messages
+            messages = findAll(conversation).stream()
+                    .filter(message -> path == null || path.contains(message.getSequence()))
+                    .filter(message -> forward
+                            ? message.getSequence() > after
+                            : before == null || message.getSequence() < before)
+                    .collect(Collectors.toList());
+            if (!forward) {
+                Collections.reverse(messages);
+            }
+        } else {
+            List<ChatMessage> pending = findPending(conversationId);
+            messages = forward
+                    ? chatMessageMapper.findPageAfter(conversationId, ranges, after, limit)
+                    : chatMessageMapper.findPageBefore(conversationId, ranges, before, limit);
+
+            // Messages still waiting for the group commit belong to the page too
+            messages = withPending(messages, pending, message ->
+                    (path == null || path.contains(message.getSequence())) && (forward
+                            ? message.getSequence() > after
+                            : before == null || message.getSequence() < before));
+            if (!forward) {
+                Collections.reverse(messages);
+            }
+        }
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    @Override
+    public MessagePath findActivePath(Conversation conversation) {
+        ChatMessage leaf = null;
+        if (conversation.getActiveSequence() != null) {
+            List<ChatMessage> active = findBySequences(conversation,
+                    Collections.singletonList(conversation.getActiveSequence()));
+            leaf = active.isEmpty() ? null : active.get(0);
+        }
+        if (leaf == null) {
+            List<ChatMessage> latest = findPage(conversation, null, null, null, 1);
+            leaf = latest.isEmpty() ? null : latest.get(0);
+        }
+        return leaf != null ? MessagePath.of(leaf) : MessagePath.root();
+    }
+
+    @Override
+    public List<ChatMessage> findBranch(Conversation conversation, MessagePath path) {
+        if (path.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (conversationArchiveService.isArchived(conversation)) {
+            return findAll(conversation).stream()
+                    .filter(message -> path.contains(message.getSequence()))
+                    .collect(Collectors.toList());
+        }
+
+        List<ChatMessage> pending = findPending(conversation.getId());
+        List<ChatMessage> messages = chatMessageMapper.findBranch(conversation.getId(), path.getRanges());
+        return withPending(messages, pending, message -> path.contains(message.getSequence()));
+    }
+
+    @Override
+    public List<ChatMessage> findBySequences(Conversation conversation, Collection<Integer> sequences) {
+        if (sequences.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (conversationArchiveService.isArchived(conversation)) {
+            return findAll(conversation).stream()
+                    .filter(message -> sequences.contains(message.getSequence()))
+                    .collect(Collectors.toList());
+        }
+
+        List<ChatMessage> pending = findPending(conversation.getId());
+        List<ChatMessage> keys = sequences.stream().map(sequence -> {
+            ChatMessage key = new ChatMessage();
+            key.setConversationId(conversation.getId());
+            key.setSequence(sequence);
+            return key;
+        }).collect(Collectors.toList());
+        List<ChatMessage> messages = chatMessageMapper.findBySequences(keys);
+        messages.sort(Comparator.comparing(ChatMessage::getSequence));
+        return withPending(messages, pending, message -> sequences.contains(message.getSequence()));
+    }
+
+    @Override
+    public Map<Integer, Integer> findTree(Conversation conversation) {
+        List<ChatMessage> messages;
+        if (conversationArchiveService.isArchived(conversation)) {
+            messages = findAll(conversation);
+        } else {
+            List<ChatMessage> pending = findPending(conversation.getId());
+            messages = withPending(chatMessageMapper.findTree(conversation.getId()), pending, message -> true);
+        }
+
+        // Messages stored before branching have no parent and follow the previous message
+        Map<Integer, Integer> tree = new LinkedHashMap<>();
+        int previous = 0;
+        for (ChatMessage message : messages) {
+            tree.put(message.getSequence(),
+                    message.getParentSequence() != null ? message.getParentSequence() : previous);
+            previous = message.getSequence();
+        }
+        return tree;
+    }
+
+    @Override
+    public int findMaxSequence(Conversation conversation) {
+        // Archived messages cannot change without restoring the conversation first
+        if (conversationArchiveService.isArchived(conversation)) {
+            return 0;
+        }
+
+        Long conversationId = conversation.getId();
+        List<ChatMessage> pending = findPending(conversationId);
+        int max = chatMessageMapper.getMaxSequence(conversationId);
+        for (ChatMessage message : pending) {
+            max = Math.max(max, message.getSequence());
+        }
+        return max;
+    }
+
+    /**
+     * Messages still waiting for the group commit, to be looked up before the stored ones
+     */
+    private List<ChatMessage> findPending(Long conversationId) {
+        return messageWriteBehindService.isEnabled()
+                ? messageWriteBehindService.getPendingMessages(conversationId)
+                : Collections.emptyList();
+    }
+
+    /**
+     * Add the matching pending messages to stored ones in ascending sequence order
+     */
+    private List<ChatMessage> withPending(List<ChatMessage> stored, List<ChatMessage> pending,
+                                          Predicate<ChatMessage> filter) {
+        // A message committed meanwhile is in both lists; keep the stored copy
+        Set<Integer> sequences = stored.stream().map(ChatMessage::getSequence).collect(Collectors.toSet());
+        List<ChatMessage> added = pending.stream()
+                .filter(message -> !sequences.contains(message.getSequence()))
+                .filter(filter)
+                .collect(Collectors.toList());
+        List<ChatMessage> merged = new ArrayList<>(stored);
+        merged.addAll(added);
+        merged.sort(Comparator.comparing(ChatMessage::getSequence));
+        return merged;
+    }
+
+    @Override
+    public List<ChatMessage> findSimilarQuestions(String content, Long userId, int hours, int limit) {
+        return chatMessageMapper.findSimilarQuestions(content, userId, hours, limit);
+    }
+
+    @Override
+    public ChatMessage findAnswer(ChatMessage question) {
+        return chatMessageMapper.findAnswer(question.getConversationId(), question.getSequence());
+    }
+}
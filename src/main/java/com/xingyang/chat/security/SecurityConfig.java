@@ -86,6 +86,8 @@ public class SecurityConfig {
             .antMatchers("/auth/login", "/auth/register", "/auth/email/**").permitAll()
             .antMatchers("/captcha/**").permitAll()
             .antMatchers("/public/**").permitAll()
+            .antMatchers("/actuator/health").permitAll()
+            .antMatchers("/actuator/**").hasRole("ADMIN")
             // 所有其他请求需要认证
             .anyRequest().authenticated();
                 
@@ -2,6 +2,7 @@ package com.xingyang.chat.service;
 
 import com.xingyang.chat.model.dto.ChatMessageDto;
 import com.xingyang.chat.model.dto.ChatRequestDto;
+import com.xingyang.chat.model.dto.ResponseCacheLookup;
 
 import java.util.List;
 import java.util.function.Consumer;
@@ -17,17 +18,28 @@ public interface AiChatService {
      * Send chat request and get reply
      *
      * @param request chat request
+     * @param lookup cache lookup of the question, the answer is cached through it
      * @return AI response message
      */
-    ChatMessageDto chat(ChatRequestDto request);
+    ChatMessageDto chat(ChatRequestDto request, ResponseCacheLookup lookup);
     
     /**
      * Send chat request and get streaming reply
      *
      * @param request chat request
+     * @param lookup cache lookup of the question, the answer is cached through it
      * @param responseConsumer response consumer for handling streaming response
      */
-    void streamChat(ChatRequestDto request, Consumer<String> responseConsumer);
+    void streamChat(ChatRequestDto request, ResponseCacheLookup lookup, Consumer<String> responseConsumer);
+    
+    /**
+     * Answer a cached question again for the response cache: the question alone is sent upstream,
+     * without anybody's history, and the usage is charged to the configured refresh account
+     *
+     * @param question question content
+     * @return AI answer content
+     */
+    String refreshAnswer(String question);
     
     /**
      * Switch chat model
@@ -0,0 +1,20 @@
+package com.xingyang.chat.service;
+
+import com.xingyang.chat.model.vo.CacheWarmupVO;
+
+/**
+ * Q&A Cache Warm-up Service Interface
+ *
+ * @author XingYang
+ */
+public interface CacheWarmupService {
+
+    /**
+     * Preload the answers to the most frequent recent questions into the Q&A cache
+     *
+     * @param topN Number of questions to preload, null for the configured default
+     * @param days Number of days of history to look at, null for the configured default
+     * @return Warm-up result summary
+     */
+    CacheWarmupVO warmUp(Integer topN, Integer days);
+}
@@ -0,0 +1,50 @@
+package com.xingyang.chat.service;
+
+import com.xingyang.chat.model.dto.ConversationActivity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversation Activity Service Interface
+ * <p>
+ * Coalesces the list-view updates caused by new messages (update time, counters, preview) and
+ * writes them to the conversation table in periodic batched statements.
+ *
+ * @author XingYang
+ */
+public interface ConversationActivityService {
+
+    /**
+     * Record activity to be written with the next flush, once the caller's transaction commits
+     *
+     * @param userId Owner of the conversations
+     * @param activities Activity per conversation
+     * @param updateTime Time of the activity
+     */
+    void touch(Long userId, List<ConversationActivity> activities, LocalDateTime updateTime);
+
+    /**
+     * Get a user's activity not written yet
+     *
+     * @param userId User ID
+     * @return Pending activity by conversation ID
+     */
+    Map<Long, ConversationActivity> getPending(Long userId);
+
+    /**
+     * Whether a conversation has activity not written yet
+     *
+     * @param conversationId Conversation ID
+     * @return true if a flush is pending
+     */
+    boolean hasPending(Long conversationId);
+
+    /**
+     * Write all pending activity now
+     *
+     * @return Number of conversations updated
+     */
+    int flush();
+}
@@ -0,0 +1,30 @@
+package com.xingyang.chat.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Conversation Append Service Interface
+ * <p>
+ * Serializes the appends to one conversation across threads and nodes, so each append sees the
+ * messages of the previous one; appends to different conversations run in parallel. Anything that
+ * reads the conversation to decide where messages go, such as its active branch, must be read
+ * while holding it.
+ *
+ * @author XingYang
+ */
+public interface ConversationAppendService {
+
+    /**
+     * Run an append while holding its conversation
+     * <p>
+     * Inside a transaction the conversation is held until the transaction completes, so the next
+     * append reads the committed messages. The AI call must happen before, it is not an append.
+     *
+     * @param conversationId Conversation ID
+     * @param append Append to run
+     * @param <T> Result type
+     * @return Result of the append
+     * @throws com.xingyang.chat.exception.BusinessException if the conversation stays busy
+     */
+    <T> T runExclusive(Long conversationId, Supplier<T> append);
+}
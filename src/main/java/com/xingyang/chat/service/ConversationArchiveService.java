@@ -0,0 +1,55 @@
+package com.xingyang.chat.service;
+
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.entity.Conversation;
+
+import java.util.List;
+
+/**
+ * Conversation Archive Service Interface
+ * <p>
+ * Moves the messages of idle conversations from MySQL to compressed blobs in MinIO.
+ *
+ * @author XingYang
+ */
+public interface ConversationArchiveService {
+
+    /**
+     * Whether the messages of a conversation live in the archive
+     *
+     * @param conversation Conversation
+     * @return true if the conversation is archived
+     */
+    boolean isArchived(Conversation conversation);
+
+    /**
+     * Archive conversations that have been idle longer than the configured threshold
+     *
+     * @return Number of archived conversations
+     */
+    int archiveIdle();
+
+    /**
+     * Get the archived chat messages of a conversation, served from memory when recently used
+     *
+     * @param conversation Archived conversation
+     * @return Messages in sequence order
+     */
+    List<ChatMessage> getArchivedMessages(Conversation conversation);
+
+    /**
+     * Move the messages of an archived conversation back into MySQL before it is written to
+     * <p>
+     * Joins the caller's transaction.
+     *
+     * @param conversation Archived conversation
+     */
+    void restore(Conversation conversation);
+
+    /**
+     * Drop the archive of a conversation that is being purged
+     *
+     * @param conversationId Conversation ID
+     */
+    void discard(Long conversationId);
+}
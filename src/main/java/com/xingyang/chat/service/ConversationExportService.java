@@ -0,0 +1,25 @@
+package com.xingyang.chat.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Conversation Export Service Interface
+ *
+ * @author XingYang
+ */
+public interface ConversationExportService {
+
+    /**
+     * Write all conversations and messages of the current user as NDJSON, one record per line
+     * <p>
+     * Conversation records come first, each followed by its messages if it is archived; then the
+     * messages of all other conversations, by conversation and sequence. Every record has a type
+     * field, "conversation" or "message". Rows are streamed from the database, so memory use does
+     * not grow with the size of the account.
+     *
+     * @param out Stream to write to, not closed
+     * @throws IOException if writing fails, e.g. because the client went away
+     */
+    void export(OutputStream out) throws IOException;
+}
@@ -0,0 +1,30 @@
+package com.xingyang.chat.service;
+
+import com.xingyang.chat.model.vo.ConversationImportVO;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Conversation Import Service Interface
+ *
+ * @author XingYang
+ */
+public interface ConversationImportService {
+
+    /**
+     * Import conversations with their messages for the current user
+     * <p>
+     * The upload is either a JSON array or NDJSON (one object per line). A record is a conversation
+     * in the shape of {@link com.xingyang.chat.model.dto.ConversationDto}: title, modelId and messages
+     * with role, content and an optional timestamp in epoch milliseconds. It may also be a record of
+     * the export, typed {@code conversation} or {@code message}, so an export can be imported as is.
+     * Records of any other type are rejected. Records are committed in batches; a failure keeps the
+     * batches committed before it.
+     *
+     * @param in Uploaded content
+     * @return Result summary
+     * @throws IOException if the upload cannot be read
+     */
+    ConversationImportVO importConversations(InputStream in) throws IOException;
+}
@@ -0,0 +1,99 @@
+package com.xingyang.chat.service;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xingyang.chat.model.dto.ConversationActivity;
+import com.xingyang.chat.model.dto.ConversationDto;
+import com.xingyang.chat.model.vo.CursorPage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Recent Conversations Index Service Interface
+ * <p>
+ * Keeps each user's conversation list in Redis so the sidebar can be served without MySQL.
+ *
+ * @author XingYang
+ */
+public interface ConversationIndexService {
+
+    /**
+     * Get a page of conversations by page number from the index
+     *
+     * @param userId User ID
+     * @param page Page number, starting at 1
+     * @param size Page size
+     * @return Page if the index can serve it, empty if MySQL must be used
+     */
+    Optional<Page<ConversationDto>> findPage(Long userId, int page, int size);
+
+    /**
+     * Get a page of conversations after a keyset cursor from the index
+     *
+     * @param userId User ID
+     * @param afterTime Update time of the last conversation on the previous page, null for the first page
+     * @param afterId ID of the last conversation on the previous page
+     * @param limit Page size
+     * @return Conversations if the index can serve them, at most limit + 1; empty if MySQL must be used
+     */
+    Optional<List<ConversationDto>> findPageAfter(Long userId, LocalDateTime afterTime, Long afterId, int limit);
+
+    /**
+     * Get the version of a user's conversation list, which changes with every write reported to
+     * this service, for cache validation without querying MySQL
+     *
+     * @param userId User ID
+     * @return Version, empty if Redis is unavailable
+     */
+    Optional<String> getListVersion(Long userId);
+
+    /**
+     * Load a cold user's index from MySQL in the background
+     *
+     * @param userId User ID
+     */
+    void rebuildAsync(Long userId);
+
+    /**
+     * Add a new conversation to the index
+     *
+     * @param userId User ID
+     * @param conversation New conversation
+     */
+    void onCreated(Long userId, ConversationDto conversation);
+
+    /**
+     * Apply appended messages to the index
+     *
+     * @param userId User ID
+     * @param activities Activity per conversation
+     * @param updateTime Time of the activity
+     */
+    void onActivity(Long userId, List<ConversationActivity> activities, LocalDateTime updateTime);
+
+    /**
+     * Apply a title change to the index
+     *
+     * @param userId User ID
+     * @param conversationId Conversation ID
+     * @param title New title
+     * @param updateTime Time of the change
+     */
+    void onRenamed(Long userId, Long conversationId, String title, LocalDateTime updateTime);
+
+    /**
+     * Remove a conversation from the index
+     *
+     * @param userId User ID
+     * @param conversationId Conversation ID
+     */
+    void onDeleted(Long userId, Long conversationId);
+
+    /**
+     * Drop a user's index so it is rebuilt on the next read
+     *
+     * @param userId User ID
+     */
+    void invalidate(Long userId);
+}
@@ -0,0 +1,21 @@
+package com.xingyang.chat.service;
+
+import com.xingyang.chat.model.vo.PurgeResultVO;
+
+/**
+ * Conversation Purge Service Interface
+ * <p>
+ * Hard-deletes conversations that were logically deleted longer ago than the retention period,
+ * together with their messages and archive.
+ *
+ * @author XingYang
+ */
+public interface ConversationPurgeService {
+
+    /**
+     * Purge deleted conversations past the retention period, continuing from the last run's position
+     *
+     * @return Purge result summary
+     */
+    PurgeResultVO purgeDeleted();
+}
@@ -7,6 +7,7 @@ import com.xingyang.chat.model.dto.ChatRequestDto;
 import com.xingyang.chat.model.dto.ConversationDto;
 import com.xingyang.chat.model.entity.Conversation;
 import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.vo.CursorPage;
 
 import java.util.List;
 
@@ -27,7 +28,7 @@ public interface ConversationService extends IService<Conversation> {
     ConversationDto createConversation(String title, String modelId);
     
     /**
-     * Get conversation by ID
+     * Get conversation by ID, with its latest page of messages
      *
      * @param id Conversation ID
      * @return Conversation DTO
@@ -43,6 +44,15 @@ public interface ConversationService extends IService<Conversation> {
      */
     Page<ConversationDto> getConversationsByUserId(Integer page, Integer size);
     
+    /**
+     * Get a page of the current user's conversations, most recently updated first
+     *
+     * @param cursor Cursor returned with the previous page, null for the first page
+     * @param limit Page size, null for the default
+     * @return Page of conversation DTOs
+     */
+    CursorPage<ConversationDto> getConversationPage(String cursor, Integer limit);
+    
     /**
      * Update conversation title
      *
@@ -71,20 +81,111 @@ public interface ConversationService extends IService<Conversation> {
     ChatMessageDto addMessage(Long conversationId, String role, String content);
     
     /**
-     * Get messages by conversation ID
+     * Add a message as a new child of another one and make its branch the active one
+     *
+     * @param conversationId Conversation ID
+     * @param parentSequence Sequence of the parent message, 0 to start a new first message
+     * @param role Message role (user, assistant, system)
+     * @param content Message content
+     * @return Chat message DTO
+     */
+    ChatMessageDto forkMessage(Long conversationId, Integer parentSequence, String role, String content);
+    
+    /**
+     * Make the branch through a message the active one, down to its latest descendant
+     *
+     * @param conversationId Conversation ID
+     * @param sequence Sequence of any message on the branch
+     * @return Conversation DTO with the latest page of the new active branch
+     */
+    ConversationDto switchBranch(Long conversationId, Integer sequence);
+    
+    /**
+     * Get the alternatives of a message: the children of its parent, itself included
+     *
+     * @param conversationId Conversation ID
+     * @param sequence Sequence of the message
+     * @return Sibling messages in sequence order
+     */
+    List<ChatMessageDto> getBranches(Long conversationId, Integer sequence);
+    
+    /**
+     * Assemble the prompt of a chat request from the stored branch it continues
+     * <p>
+     * The prompt is the request's leading system messages, the branch ending at the request's parent
+     * sequence (the active branch if not set) and the request's last user question. The question is
+     * left out when the parent is itself a user message, the answer to it is being regenerated.
+     *
+     * @param request Chat request with a conversation ID
+     * @return Messages to send upstream
+     */
+    List<ChatMessageDto> getPromptMessages(ChatRequestDto request);
+    
+    /**
+     * Get the messages of the active branch
      *
      * @param conversationId Conversation ID
      * @return List of chat message DTOs
      */
     List<ChatMessageDto> getMessagesByConversationId(Long conversationId);
     
+    /**
+     * Get a page of messages using the message sequence as cursor
+     *
+     * @param conversationId Conversation ID
+     * @param before Return messages before this sequence, null for the latest
+     * @param after Return messages after this sequence instead, null to page backwards
+     * @param limit Page size, null for the default
+     * @return Page of messages in ascending sequence order
+     */
+    CursorPage<ChatMessageDto> getMessagePage(Long conversationId, Integer before, Integer after, Integer limit);
+    
+    /**
+     * Get an entity tag for the current user's conversation list, computed without loading it
+     *
+     * @param variant Request parameters that select the representation, e.g. the page
+     * @return Quoted entity tag that changes whenever the list may have changed
+     */
+    String getConversationListTag(String variant);
+    
+    /**
+     * Get an entity tag for the messages of a conversation, computed without loading them
+     *
+     * @param conversationId Conversation ID
+     * @param variant Request parameters that select the representation, e.g. the cursor
+     * @return Quoted entity tag that changes whenever a message is added or the active branch switches
+     */
+    String getMessagesTag(Long conversationId, String variant);
+    
     /**
      * Save chat request and response to conversation
      *
      * @param conversationId Conversation ID
      * @param request Chat request
      * @param response AI response content
-     * @return Conversation DTO
+     * @return Newly saved messages
+     */
+    List<ChatMessageDto> saveChat(Long conversationId, ChatRequestDto request, String response);
+    
+    /**
+     * Save a question and its answer to a conversation in one round trip
+     *
+     * @param conversationId Conversation ID
+     * @param question User question, may be null to save only the answer
+     * @param answer AI answer content
+     * @return Newly saved messages
+     */
+    List<ChatMessageDto> saveTurn(Long conversationId, String question, String answer);
+    
+    /**
+     * Save a question and its answer as children of a given message
+     *
+     * @param conversationId Conversation ID
+     * @param parentSequence Message the turn continues from, 0 for a new first question, null for the active branch;
+     *                       when it is a user message only the answer is saved, as an alternative answer to it
+     * @param question User question, may be null to save only the answer
+     * @param answer AI answer content
+     * @return Newly saved messages
      */
-    ConversationDto saveChat(Long conversationId, ChatRequestDto request, String response);
+    List<ChatMessageDto> saveTurn(Long conversationId, Integer parentSequence, String question, String answer);
 } 
\ No newline at end of file
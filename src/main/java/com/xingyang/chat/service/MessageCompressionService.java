@@ -0,0 +1,19 @@
+package com.xingyang.chat.service;
+
+import com.xingyang.chat.model.vo.CompressionBackfillVO;
+
+/**
+ * Message Content Compression Service Interface
+ *
+ * @author XingYang
+ */
+public interface MessageCompressionService {
+
+    /**
+     * Compress the long content of messages written before compression was enabled
+     *
+     * @param batchSize Rows per statement, null for the configured default
+     * @return Backfill result summary
+     */
+    CompressionBackfillVO compressExisting(Integer batchSize);
+}
@@ -0,0 +1,40 @@
+package com.xingyang.chat.service;
+
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.vo.SearchHitVO;
+
+import java.util.List;
+
+/**
+ * Message Search Service Interface
+ * <p>
+ * Full-text search over the current user's messages through a per-user inverted index.
+ *
+ * @author XingYang
+ */
+public interface MessageSearchService {
+
+    /**
+     * Search the current user's messages
+     *
+     * @param query Query text
+     * @param limit Maximum number of conversations, null for the default
+     * @return Best matching message per conversation, most relevant first
+     */
+    List<SearchHitVO> search(String query, Integer limit);
+
+    /**
+     * Add new messages to the user's index if it is in memory; otherwise they are picked up when it is loaded
+     *
+     * @param userId Owner of the conversation
+     * @param messages Appended messages
+     */
+    void onAppended(Long userId, List<ChatMessage> messages);
+
+    /**
+     * Drop a user's index, e.g. after messages were added with past creation times
+     *
+     * @param userId User ID
+     */
+    void invalidate(Long userId);
+}
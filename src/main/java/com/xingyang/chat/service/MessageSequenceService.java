@@ -0,0 +1,19 @@
+package com.xingyang.chat.service;
+
+/**
+ * Message Sequence Allocation Service Interface
+ *
+ * @author XingYang
+ */
+public interface MessageSequenceService {
+
+    /**
+     * Reserve a block of consecutive sequence numbers in a conversation
+     *
+     * @param conversationId Conversation ID
+     * @param count Number of sequence numbers to reserve
+     * @return First sequence number of the block
+     */
+    int allocate(Long conversationId, int count);
+
+}
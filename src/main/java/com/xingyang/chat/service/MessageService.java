@@ -1,37 +1,16 @@
 package com.xingyang.chat.service;
 
-import com.baomidou.mybatisplus.extension.service.IService;
-import com.xingyang.chat.model.dto.ChatMessageDto;
-import com.xingyang.chat.model.entity.Message;
-
-import java.util.List;
 import java.util.Optional;
 
 /**
  * Message Service Interface
+ * <p>
+ * Messages are written with the conversation; see {@link ConversationService#saveTurn}.
  *
  * @author XingYang
  */
-public interface MessageService extends IService<Message> {
+public interface MessageService {
 
-    /**
-     * Add message to conversation
-     *
-     * @param conversationId Conversation ID
-     * @param role Message role (user, assistant, system)
-     * @param content Message content
-     * @return Chat message DTO
-     */
-    ChatMessageDto addMessage(Long conversationId, String role, String content);
-    
-    /**
-     * Get messages by conversation ID
-     *
-     * @param conversationId Conversation ID
-     * @return List of chat message DTOs
-     */
-    List<ChatMessageDto> getMessagesByConversationId(Long conversationId);
-    
     /**
      * Find cached response for a similar question
      *
@@ -48,4 +27,15 @@ public interface MessageService extends IService<Message> {
      * @param expirationMinutes Cache expiration in minutes (default: 5)
      */
     void cacheQuestionResponse(String question, String response, int expirationMinutes);
+    
+    /**
+     * Find the answer to a similar question asked recently, using the full-text index
+     * <p>
+     * Only the current user's questions are searched unless {@code chat.cache.similar-cross-user}
+     * is set, in which case answers from any user's private conversations may be reused.
+     *
+     * @param question Question content
+     * @return Optional containing the answer if a close enough question was found, empty otherwise
+     */
+    Optional<String> findSimilarAnswer(String question);
 } 
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.xingyang.chat.service;
+
+import com.xingyang.chat.model.entity.ChatMessage;
+
+import java.util.List;
+
+/**
+ * Write-Behind Message Persistence Service Interface
+ *
+ * @author XingYang
+ */
+public interface MessageWriteBehindService {
+
+    /**
+     * Whether messages are written through the write-ahead log
+     *
+     * @return true if write-behind is enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Durably log messages and queue them for a group commit to the database
+     * <p>
+     * Returns once the messages are fsynced to the write-ahead log. Audit fields must be set.
+     *
+     * @param messages Messages of one conversation
+     */
+    void submit(List<ChatMessage> messages);
+
+    /**
+     * Get messages of a conversation that are logged but not yet committed to the database, by any node
+     * <p>
+     * Messages committed within the grace period may be included; callers keep the stored copy of those.
+     *
+     * @param conversationId Conversation ID
+     * @return Pending messages in sequence order
+     */
+    List<ChatMessage> getPendingMessages(Long conversationId);
+}
@@ -0,0 +1,125 @@
+package com.xingyang.chat.service;
+
+import com.xingyang.chat.model.dto.ResponseCacheEntry;
+import com.xingyang.chat.model.dto.ResponseCacheLookup;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Q&A Response Cache Service Interface
+ *
+ * @author XingYang
+ */
+public interface ResponseCacheService {
+
+    /**
+     * Look up a cached answer that has not expired, without locking or early refresh
+     *
+     * @param question Question content
+     * @return Optional containing the answer if found and fresh, empty otherwise
+     */
+    Optional<String> get(String question);
+
+    /**
+     * Look up a cached entry, refreshing it in the background when it is close to expiry
+     * <p>
+     * If the entry has expired, one caller gets a recompute lookup and must finish it with
+     * {@link #put(ResponseCacheLookup, String, long)} or {@link #release}; everybody else is
+     * served the stale entry meanwhile.
+     *
+     * @param question Question content
+     * @param refresher Upstream call answering the bare question, used to recompute the answer early;
+     *                  runs in the background without the requester, may be null
+     * @return Lookup result, never null
+     */
+    ResponseCacheLookup getEntry(String question, Function<String, String> refresher);
+
+    /**
+     * Split an answer into the token-sized chunks it is streamed in
+     *
+     * @param response Answer content
+     * @return Chunks in order
+     */
+    List<String> toChunks(String response);
+
+    /**
+     * Replay a cached answer as a token stream, paced as configured
+     *
+     * @param entry Cached entry
+     * @return Stream of chunks
+     */
+    Flux<String> replay(ResponseCacheEntry entry);
+
+    /**
+     * Look up an answer even if it has logically expired, for use while the upstream is failing
+     *
+     * @param question Question content
+     * @return Optional containing the stale answer if allowed and found, empty otherwise
+     */
+    Optional<String> getStale(String question);
+
+    /**
+     * Cache an answer with the default lifetime
+     *
+     * @param question Question content
+     * @param response Answer content
+     * @param computeMillis Time the upstream call took, in milliseconds
+     */
+    void put(String question, String response, long computeMillis);
+
+    /**
+     * Cache an answer
+     *
+     * @param question Question content
+     * @param response Answer content
+     * @param computeMillis Time the upstream call took, in milliseconds
+     * @param ttl Logical lifetime of the entry
+     */
+    void put(String question, String response, long computeMillis, Duration ttl);
+
+    /**
+     * Cache the answer of a lookup and release its recompute lock, if any
+     *
+     * @param lookup Lookup the answer was computed for
+     * @param response Answer content
+     * @param computeMillis Time the upstream call took, in milliseconds
+     */
+    void put(ResponseCacheLookup lookup, String response, long computeMillis);
+
+    /**
+     * Release the recompute lock of a lookup without caching anything; does nothing if it holds none
+     *
+     * @param lookup Lookup, may be null
+     */
+    void release(ResponseCacheLookup lookup);
+
+    /**
+     * Cache several answers in one pipelined round trip, keeping entries that already exist
+     *
+     * @param answers Answers keyed by question
+     * @param ttl Logical lifetime of the entries
+     * @return Number of entries written
+     */
+    int putAllIfAbsent(Map<String, String> answers, Duration ttl);
+
+    /**
+     * Normalize a question for caching purposes
+     *
+     * @param question Question content
+     * @return Normalized question
+     */
+    String normalizeQuestion(String question);
+
+    /**
+     * Build the cache key for a question, safe to log and report
+     *
+     * @param question Question content
+     * @return Cache key
+     */
+    String cacheKey(String question);
+}
@@ -0,0 +1,45 @@
+package com.xingyang.chat.service;
+
+/**
+ * Usage Metering Service Interface
+ * <p>
+ * Counts upstream token usage per user, model and hour in memory and writes it to the usage
+ * table in periodic batched upserts.
+ *
+ * @author XingYang
+ */
+public interface UsageMeteringService {
+
+    /**
+     * Count one upstream call
+     *
+     * @param userId User ID, null for calls without a user
+     * @param model Upstream model ID
+     * @param promptTokens Prompt tokens
+     * @param completionTokens Completion tokens
+     */
+    void record(Long userId, String model, long promptTokens, long completionTokens);
+
+    /**
+     * Check a user's daily token quota before calling the upstream
+     *
+     * @param userId User ID, null skips the check
+     * @throws com.xingyang.chat.exception.BusinessException if the quota is used up
+     */
+    void checkQuota(Long userId);
+
+    /**
+     * Get the tokens a user has spent today, including usage not flushed yet on this node
+     *
+     * @param userId User ID
+     * @return Token total
+     */
+    long getTodayTokens(Long userId);
+
+    /**
+     * Write all counted usage now
+     *
+     * @return Number of rows upserted
+     */
+    int flush();
+}
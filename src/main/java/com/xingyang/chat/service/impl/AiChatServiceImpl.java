@@ -1,12 +1,19 @@
 package com.xingyang.chat.service.impl;
 
 import com.xingyang.chat.config.AiModelConfig;
+import com.xingyang.chat.config.ResponseCacheConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.metrics.ResponseCacheMetrics;
 import com.xingyang.chat.model.dto.ChatMessageDto;
 import com.xingyang.chat.model.dto.ChatRequestDto;
 import com.xingyang.chat.model.dto.ConversationDto;
+import com.xingyang.chat.model.dto.ResponseCacheLookup;
 import com.xingyang.chat.service.AiChatService;
 import com.xingyang.chat.service.ConversationService;
-import com.xingyang.chat.service.MessageService;
+import com.xingyang.chat.service.ResponseCacheService;
+import com.xingyang.chat.service.UsageMeteringService;
+import com.xingyang.chat.util.SecurityUtil;
+import com.xingyang.chat.util.TokenChunker;
 
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessage;
@@ -51,7 +58,16 @@ public class AiChatServiceImpl implements AiChatService {
     private ConversationService conversationService;
     
     @Autowired
-    private MessageService messageService;
+    private ResponseCacheService responseCacheService;
+    
+    @Autowired
+    private ResponseCacheMetrics responseCacheMetrics;
+    
+    @Autowired
+    private UsageMeteringService usageMeteringService;
+    
+    @Autowired
+    private ResponseCacheConfig responseCacheConfig;
     
     private final RestTemplate restTemplate = new RestTemplate();
 
@@ -62,14 +78,27 @@ public class AiChatServiceImpl implements AiChatService {
      * @return AI response message
      */
     @Override
-    public ChatMessageDto chat(ChatRequestDto request) {
+    public ChatMessageDto chat(ChatRequestDto request, ResponseCacheLookup lookup) {
         try {
             // Convert messages to LangChain4j format
-            List<ChatMessage> messages = convertToChatMessages(request.getMessages());
+            List<ChatMessageDto> prompt = promptMessages(request);
+            List<ChatMessage> messages = convertToChatMessages(prompt);
             
             // Get AI response
+            Long userId = SecurityUtil.getCurrentUserId();
+            usageMeteringService.checkQuota(userId);
+            long start = System.currentTimeMillis();
             Response<AiMessage> response = chatModel.generate(messages);
+            long computeMillis = System.currentTimeMillis() - start;
+            responseCacheMetrics.recordUpstream(computeMillis);
             AiMessage aiMessage = response.content();
+            TokenUsage usage = response.tokenUsage();
+            recordUsage(userId, prompt, usage != null ? usage.inputTokenCount() : null,
+                    usage != null ? usage.outputTokenCount() : null, aiMessage.text());
+            
+            if (aiMessage.text() != null) {
+                responseCacheService.put(lookup, aiMessage.text(), computeMillis);
+            }
             
             // Build and return response message
             return ChatMessageDto.assistantMessage(aiMessage.text());
@@ -86,39 +115,11 @@ public class AiChatServiceImpl implements AiChatService {
      * @param responseConsumer response consumer for handling streaming response
      */
     @Override
-    public void streamChat(ChatRequestDto request, Consumer<String> responseConsumer) {
+    public void streamChat(ChatRequestDto request, ResponseCacheLookup lookup, Consumer<String> responseConsumer) {
         try {
-            // First check if we have this question in cache
-            if (request.getMessages() != null && !request.getMessages().isEmpty()) {
-                ChatMessageDto lastUserMessage = request.getMessages().stream()
-                        .filter(msg -> "user".equals(msg.getRole()))
-                        .reduce((first, second) -> second)
-                        .orElse(null);
-                
-                if (lastUserMessage != null) {
-                    // Try to find a cached response
-                    Optional<String> cachedResponse = messageService.findCachedResponse(lastUserMessage.getContent());
-                    if (cachedResponse.isPresent()) {
-                        log.info("Found cached response for question: {}", lastUserMessage.getContent());
-                        
-                        // Return the cached response immediately
-                        responseConsumer.accept(cachedResponse.get());
-                        
-                        // Save to conversation if needed
-                        if (request.getConversationId() != null) {
-                            saveConversation(request, cachedResponse.get());
-                        } else if (request.isSaveConversation()) {
-                            createAndSaveConversation(request, cachedResponse.get());
-                        }
-                        
-                        return;
-                    }
-                }
-            }
-            
-            // If no cached response, proceed with normal API call
+            // The caller has looked up the cache already
             // For all models, use direct API call approach rather than using LangChain4j
-            directApiStreamChat(request, responseConsumer);
+            directApiStreamChat(request, lookup, responseConsumer);
             
         } catch (Exception e) {
             log.error("Stream chat error", e);
@@ -126,129 +127,237 @@ public class AiChatServiceImpl implements AiChatService {
         }
     }
     
+    /**
+     * Answer a cached question again on behalf of the response cache
+     *
+     * @param question question content
+     * @return AI answer content
+     */
+    @Override
+    public String refreshAnswer(String question) {
+        // A fresh request: the cached answer is shared, so it must not depend on whoever triggered the refresh
+        ChatRequestDto request = new ChatRequestDto();
+        List<ChatMessageDto> messages = new ArrayList<>();
+        messages.add(ChatMessageDto.userMessage(question));
+        request.setMessages(messages);
+        
+        String content = requestCompletion(request, responseCacheConfig.getRefreshUserId());
+        if (content == null) {
+            throw new BusinessException("Could not extract response from API");
+        }
+        return content;
+    }
+    
     /**
      * Direct API call to the Alibaba Cloud model without using LangChain4j
      * This is a more reliable approach to avoid compatibility issues
      */
-    private void directApiStreamChat(ChatRequestDto request, Consumer<String> responseConsumer) {
+    private void directApiStreamChat(ChatRequestDto request, ResponseCacheLookup lookup,
+                                     Consumer<String> responseConsumer) {
+        String lastQuestion = findLastUserQuestion(request);
+        
+        // Checked outside the try, a user over quota gets the error rather than a stale answer
+        Long userId = SecurityUtil.getCurrentUserId();
+        usageMeteringService.checkQuota(userId);
+        
         try {
             log.info("Using direct API call for chat request");
             
-            // Create request payload
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("model", aiModelConfig.getModelId());
+            long start = System.currentTimeMillis();
+            String content = requestCompletion(request, userId);
+            long computeMillis = System.currentTimeMillis() - start;
+            responseCacheMetrics.recordUpstream(computeMillis);
             
-            // Convert DTO messages to OpenAI format
-            List<Map<String, String>> messages = new ArrayList<>();
-            for (ChatMessageDto dto : request.getMessages()) {
-                Map<String, String> message = new HashMap<>();
-                message.put("role", dto.getRole());
-                message.put("content", dto.getContent());
-                messages.add(message);
+            if (content == null) {
+                // If we can't extract the message, send an error
+                responseConsumer.accept("Sorry, could not extract response from API");
+                return;
             }
-            payload.put("messages", messages);
             
-            // Add other parameters
-            if (request.getTemperature() != null) {
-                payload.put("temperature", request.getTemperature());
-            } else {
-                payload.put("temperature", aiModelConfig.getTemperature());
+            // 发送完整内容给客户端
+            log.info("Sending complete response to client, length: {}", content.length());
+            responseCacheService.toChunks(content).forEach(responseConsumer);
+            
+            // Add a small delay to ensure client has time to process
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
             
-            if (request.getMax_tokens() != null) {
-                payload.put("max_tokens", request.getMax_tokens());
+            // Cache the question and response together with the cost of producing it
+            responseCacheService.put(lookup, content, computeMillis);
+            
+            // Save the conversation if conversationId is provided
+            if (request.getConversationId() != null) {
+                saveConversation(request, content);
             } else {
-                payload.put("max_tokens", aiModelConfig.getMaxTokens());
+                // Create a new conversation if requested
+                if (request.isSaveConversation()) {
+                    Long newConversationId = createAndSaveConversation(request, content);
+                    
+                    // 返回创建的会话ID给客户端
+                    if (newConversationId != null) {
+                        log.info("Created new conversation with ID: {}", newConversationId);
+                    }
+                }
             }
+        } catch (Exception e) {
+            log.error("Error in direct API call", e);
             
-            // Make direct API call to Alibaba Cloud
-            String apiUrl = aiModelConfig.getEndpoint() + "/chat/completions";
-            log.info("Sending direct API request to: {}", apiUrl);
+            // Fall back to an expired answer rather than an error while the upstream is failing
+            Optional<String> staleResponse = responseCacheService.getStale(lastQuestion);
+            if (staleResponse.isPresent()) {
+                log.warn("Upstream call failed, serving stale cached response");
+                responseCacheService.toChunks(staleResponse.get()).forEach(responseConsumer);
+                return;
+            }
             
-            try {
-                // Setup headers with proper authorization
-                org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-                headers.set("Authorization", "Bearer " + aiModelConfig.getApiKey());
-                headers.setContentType(org.springframework.http.MediaType.APPLICATION_JSON);
-                
-                // Create entity with headers and body
-                org.springframework.http.HttpEntity<Map<String, Object>> requestEntity = 
-                    new org.springframework.http.HttpEntity<>(payload, headers);
-                
-                // Call API with proper headers
-                org.springframework.http.ResponseEntity<Map> responseEntity = restTemplate.postForEntity(
-                    apiUrl,
-                    requestEntity,
-                    Map.class
-                );
-                
-                Map<String, Object> response = responseEntity.getBody();
-                
-                if (response != null && response.containsKey("choices")) {
+            responseConsumer.accept("\n\nError calling AI API: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Send the request to the OpenAI compatible endpoint and extract the answer
+     *
+     * @param request chat request
+     * @param userId user the call is quota-checked and metered under
+     * @return answer content, or null if the response could not be parsed
+     */
+    private String requestCompletion(ChatRequestDto request, Long userId) {
+        usageMeteringService.checkQuota(userId);
+        
+        // Create request payload
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("model", aiModelConfig.getModelId());
+        
+        // Convert DTO messages to OpenAI format
+        List<ChatMessageDto> prompt = promptMessages(request);
+        List<Map<String, String>> messages = new ArrayList<>();
+        for (ChatMessageDto dto : prompt) {
+            Map<String, String> message = new HashMap<>();
+            message.put("role", dto.getRole());
+            message.put("content", dto.getContent());
+            messages.add(message);
+        }
+        payload.put("messages", messages);
+        
+        // Add other parameters
+        if (request.getTemperature() != null) {
+            payload.put("temperature", request.getTemperature());
+        } else {
+            payload.put("temperature", aiModelConfig.getTemperature());
+        }
+        
+        if (request.getMax_tokens() != null) {
+            payload.put("max_tokens", request.getMax_tokens());
+        } else {
+            payload.put("max_tokens", aiModelConfig.getMaxTokens());
+        }
+        
+        // Make direct API call to Alibaba Cloud
+        String apiUrl = aiModelConfig.getEndpoint() + "/chat/completions";
+        log.info("Sending direct API request to: {}", apiUrl);
+        
+        // Setup headers with proper authorization
+        org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
+        headers.set("Authorization", "Bearer " + aiModelConfig.getApiKey());
+        headers.setContentType(org.springframework.http.MediaType.APPLICATION_JSON);
+        
+        // Create entity with headers and body
+        org.springframework.http.HttpEntity<Map<String, Object>> requestEntity = 
+            new org.springframework.http.HttpEntity<>(payload, headers);
+        
+        // Call API with proper headers
+        org.springframework.http.ResponseEntity<Map> responseEntity = restTemplate.postForEntity(
+            apiUrl,
+            requestEntity,
+            Map.class
+        );
+        
+        Map<String, Object> response = responseEntity.getBody();
+        
+        String content = null;
+        if (response != null && response.containsKey("choices")) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
+            if (!choices.isEmpty()) {
+                Map<String, Object> choice = choices.get(0);
+                if (choice.containsKey("message")) {
                     @SuppressWarnings("unchecked")
-                    List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
-                    if (!choices.isEmpty()) {
-                        Map<String, Object> choice = choices.get(0);
-                        if (choice.containsKey("message")) {
-                            @SuppressWarnings("unchecked")
-                            Map<String, String> message = (Map<String, String>) choice.get("message");
-                            String content = message.get("content");
-                            
-                            // 发送完整内容给客户端
-                            log.info("Sending complete response to client, length: {}", content.length());
-                            responseConsumer.accept(content);
-                            
-                            // Add a small delay to ensure client has time to process
-                            try {
-                                Thread.sleep(100);
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                            }
-                            
-                            // Cache the question and response
-                            if (request.getMessages() != null && !request.getMessages().isEmpty()) {
-                                ChatMessageDto lastUserMessage = request.getMessages().stream()
-                                        .filter(msg -> "user".equals(msg.getRole()))
-                                        .reduce((first, second) -> second)
-                                        .orElse(null);
-                                
-                                if (lastUserMessage != null) {
-                                    messageService.cacheQuestionResponse(lastUserMessage.getContent(), content, 5);
-                                }
-                            }
-                            
-                            // Save the conversation if conversationId is provided
-                            if (request.getConversationId() != null) {
-                                saveConversation(request, content);
-                            } else {
-                                // Create a new conversation if requested
-                                if (request.isSaveConversation()) {
-                                    Long newConversationId = createAndSaveConversation(request, content);
-                                    
-                                    // 返回创建的会话ID给客户端
-                                    if (newConversationId != null) {
-                                        log.info("Created new conversation with ID: {}", newConversationId);
-                                    }
-                                }
-                            }
-                            
-                            return;
-                        }
-                    }
+                    Map<String, String> message = (Map<String, String>) choice.get("message");
+                    content = message.get("content");
                 }
-                
-                // If we can't extract the message, send an error
-                responseConsumer.accept("Sorry, could not extract response from API");
-                
-            } catch (Exception e) {
-                log.error("Error in direct API call", e);
-                responseConsumer.accept("\n\nError calling AI API: " + e.getMessage());
             }
-            
-        } catch (Exception e) {
-            log.error("Error in direct API streaming", e);
-            responseConsumer.accept("\n\nSorry, an error occurred: " + e.getMessage());
         }
+        
+        recordUsage(userId, prompt, response, content);
+        return content;
+    }
+    
+    /**
+     * Messages to send upstream: the stored branch the turn continues when it belongs to a
+     * conversation, else the request's own history
+     */
+    private List<ChatMessageDto> promptMessages(ChatRequestDto request) {
+        if (request.getConversationId() == null) {
+            return request.getMessages();
+        }
+        return conversationService.getPromptMessages(request);
+    }
+    
+    /**
+     * Meter the tokens of an upstream call, estimating them when the response has no usage field
+     */
+    private void recordUsage(Long userId, List<ChatMessageDto> prompt, Map<String, Object> response, String content) {
+        Number promptCount = null;
+        Number completionCount = null;
+        Object usage = response != null ? response.get("usage") : null;
+        if (usage instanceof Map) {
+            Map<?, ?> counts = (Map<?, ?>) usage;
+            if (counts.get("prompt_tokens") instanceof Number) {
+                promptCount = (Number) counts.get("prompt_tokens");
+            }
+            if (counts.get("completion_tokens") instanceof Number) {
+                completionCount = (Number) counts.get("completion_tokens");
+            }
+        }
+        recordUsage(userId, prompt, promptCount, completionCount, content);
+    }
+    
+    /**
+     * Meter the tokens of an upstream call, estimating the counts the upstream did not report
+     */
+    private void recordUsage(Long userId, List<ChatMessageDto> prompt, Number promptCount, Number completionCount,
+                             String content) {
+        long promptTokens;
+        if (promptCount != null) {
+            promptTokens = promptCount.longValue();
+        } else {
+            promptTokens = 0;
+            for (ChatMessageDto dto : prompt) {
+                promptTokens += TokenChunker.countTokens(dto.getContent());
+            }
+        }
+        long completionTokens = completionCount != null
+                ? completionCount.longValue()
+                : TokenChunker.countTokens(content);
+        usageMeteringService.record(userId, aiModelConfig.getModelId(), promptTokens, completionTokens);
+    }
+    
+    /**
+     * Find the content of the last user message in a request
+     */
+    private String findLastUserQuestion(ChatRequestDto request) {
+        if (request.getMessages() == null || request.getMessages().isEmpty()) {
+            return null;
+        }
+        
+        return request.getMessages().stream()
+                .filter(msg -> "user".equals(msg.getRole()))
+                .reduce((first, second) -> second)
+                .map(ChatMessageDto::getContent)
+                .orElse(null);
     }
     
     /**
@@ -0,0 +1,179 @@
+package com.xingyang.chat.service.impl;
+
+import com.xingyang.chat.config.ResponseCacheConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.vo.CacheWarmupVO;
+import com.xingyang.chat.service.CacheWarmupService;
+import com.xingyang.chat.service.ResponseCacheService;
+import com.xingyang.chat.util.ContentCodec;
+import com.xingyang.chat.util.TopKSketch;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Q&A Cache Warm-up Service Implementation
+ * <p>
+ * Streams recent user questions from {@code chat_message}, counts them in a bounded
+ * heavy-hitters sketch and preloads the latest answers to the most frequent ones.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class CacheWarmupServiceImpl implements CacheWarmupService {
+
+    /**
+     * Questions longer than this are unlikely to repeat verbatim and are not counted
+     */
+    private static final int MAX_QUESTION_LENGTH = 1000;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ResponseCacheService responseCacheService;
+
+    @Autowired
+    private ResponseCacheConfig cacheConfig;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Warm the cache up once the application is ready, if enabled
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpOnStartup() {
+        if (!Boolean.TRUE.equals(cacheConfig.getWarmupOnStartup())) {
+            return;
+        }
+        try {
+            warmUp(null, null);
+        } catch (Exception e) {
+            log.error("Startup cache warm-up failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public CacheWarmupVO warmUp(Integer topN, Integer days) {
+        if (!running.compareAndSet(false, true)) {
+            throw new BusinessException("Cache warm-up is already running");
+        }
+
+        try {
+            int limit = topN != null && topN > 0 ? topN : cacheConfig.getWarmupTopN();
+            int window = days != null && days > 0 ? days : cacheConfig.getWarmupDays();
+            long start = System.currentTimeMillis();
+            log.info("Starting Q&A cache warm-up, topN: {}, days: {}", limit, window);
+
+            CacheWarmupVO result = new CacheWarmupVO();
+            TopKSketch sketch = new TopKSketch(Math.max(cacheConfig.getWarmupSketchCapacity(), limit * 2));
+            result.setScannedQuestions(countQuestions(sketch, LocalDateTime.now().minusDays(window)));
+
+            List<TopKSketch.Entry> hotQuestions = sketch.top(limit);
+            result.setSelectedQuestions(hotQuestions.size());
+            loadAnswers(hotQuestions, result);
+
+            result.setElapsedMillis(System.currentTimeMillis() - start);
+            log.info("Q&A cache warm-up finished: {}", result);
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Stream the questions of the window through the sketch, keeping the newest message ID per question
+     */
+    private long countQuestions(TopKSketch sketch, LocalDateTime since) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+
+        Long scanned = transactionTemplate.execute(status -> {
+            long count = 0;
+            try (Cursor<ChatMessage> cursor = chatMessageMapper.streamUserQuestionsSince(since)) {
+                for (ChatMessage message : cursor) {
+                    count++;
+                    String content = message.getContent();
+                    if (content == null || content.isEmpty() || content.length() > MAX_QUESTION_LENGTH) {
+                        continue;
+                    }
+                    sketch.add(responseCacheService.normalizeQuestion(content), 1L, message.getId());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return count;
+        });
+
+        return scanned != null ? scanned : 0L;
+    }
+
+    /**
+     * Look up the answers in batches and write them with pipelined, rate-limited cache writes
+     */
+    private void loadAnswers(List<TopKSketch.Entry> hotQuestions, CacheWarmupVO result) {
+        int batchSize = Math.max(1, cacheConfig.getWarmupBatchSize());
+        long minBatchMillis = cacheConfig.getWarmupWritesPerSecond() > 0
+                ? batchSize * 1000L / cacheConfig.getWarmupWritesPerSecond()
+                : 0L;
+        Duration ttl = Duration.ofMinutes(cacheConfig.getTtlMinutes());
+
+        for (int from = 0; from < hotQuestions.size(); from += batchSize) {
+            long batchStart = System.currentTimeMillis();
+            List<TopKSketch.Entry> batch = hotQuestions.subList(from, Math.min(from + batchSize, hotQuestions.size()));
+
+            Map<Long, String> questionsById = batch.stream()
+                    .collect(Collectors.toMap(TopKSketch.Entry::getTag, TopKSketch.Entry::getKey, (a, b) -> a));
+            Map<Long, String> answersById = new HashMap<>();
+            for (Map<String, Object> row : chatMessageMapper.findAnswersForQuestions(questionsById.keySet())) {
+                Long questionId = ((Number) row.get("question_id")).longValue();
+                answersById.putIfAbsent(questionId, ContentCodec.decode((byte[]) row.get("content")));
+            }
+
+            Map<String, String> answers = new LinkedHashMap<>();
+            questionsById.forEach((id, question) -> {
+                String answer = answersById.get(id);
+                if (answer != null) {
+                    answers.put(question, answer);
+                }
+            });
+            result.setAnsweredQuestions(result.getAnsweredQuestions() + answers.size());
+            result.setLoadedEntries(result.getLoadedEntries() + responseCacheService.putAllIfAbsent(answers, ttl));
+
+            long remaining = minBatchMillis - (System.currentTimeMillis() - batchStart);
+            if (remaining > 0) {
+                try {
+                    Thread.sleep(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Q&A cache warm-up interrupted");
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.xingyang.chat.service.impl;
+
+import com.xingyang.chat.config.ConversationConfig;
+import com.xingyang.chat.mapper.ConversationMapper;
+import com.xingyang.chat.model.dto.ConversationActivity;
+import com.xingyang.chat.service.ConversationActivityService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversation Activity Service Implementation
+ * <p>
+ * Activity is merged per conversation in memory: counters add up, the preview of the highest
+ * sequence wins and the update time only moves forward. A background flush takes the whole map
+ * and applies it with one multi-row UPDATE per batch, outside any request transaction and without
+ * bumping the optimistic-lock version, so a busy conversation costs one row write per flush instead
+ * of one per message. Activity that fails to flush is merged back and retried.
+ * <p>
+ * The flush adds the merged deltas. A failed flush may have committed anyway, so once its activity
+ * has been applied again the conversations are recounted from chat_message. Conversations are also
+ * added to a Redis sorted set, scored by time, before their transaction commits and removed once
+ * flushed. Any node periodically recounts those left in it for longer than
+ * {@code activity-repair-seconds}, whose activity died with a node; younger ones may still be pending
+ * on a live node, which would add its deltas to the recount. Recounting scans a conversation's
+ * messages and is kept to these cases.
+ * <p>
+ * Until the flush the database lags by up to the flush interval; the Redis sidebar index is
+ * updated immediately, and the database fallback overlays {@link #getPending} for the writer.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class ConversationActivityServiceImpl implements ConversationActivityService {
+
+    private static final String DIRTY_KEY = "chat:activity:dirty";
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private ConversationConfig conversationConfig;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    /**
+     * Activity not written yet by conversation ID
+     */
+    private final Map<Long, PendingActivity> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Conversations whose flush failed, recounted once their activity is applied again
+     */
+    private final Set<Long> recount = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-activity-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = conversationConfig.getActivityFlushMillis();
+        flusher.scheduleWithFixedDelay(this::runScheduled, interval, interval, TimeUnit.MILLISECONDS);
+        long repairInterval = conversationConfig.getActivityRepairSeconds();
+        flusher.scheduleWithFixedDelay(this::repair, 0, repairInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flush();
+    }
+
+    @Override
+    public void touch(Long userId, List<ConversationActivity> activities, LocalDateTime updateTime) {
+        if (activities.isEmpty()) {
+            return;
+        }
+
+        // Marked before the commit, a crash right after it must not lose the activity; recounting a
+        // conversation whose turn rolled back is harmless
+        markDirty(activities);
+        Runnable record = () -> {
+            for (ConversationActivity activity : activities) {
+                activity.setUpdateTime(updateTime);
+                merge(userId, activity);
+            }
+        };
+        // Activity of a rolled back turn must not be counted
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record.run();
+                }
+            });
+        } else {
+            record.run();
+        }
+    }
+
+    @Override
+    public Map<Long, ConversationActivity> getPending(Long userId) {
+        Map<Long, ConversationActivity> result = new HashMap<>();
+        pending.forEach((conversationId, entry) -> {
+            if (entry.userId.equals(userId)) {
+                result.put(conversationId, entry.activity);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public boolean hasPending(Long conversationId) {
+        return pending.containsKey(conversationId);
+    }
+
+    @Override
+    public synchronized int flush() {
+        if (pending.isEmpty()) {
+            recountFailed();
+            return 0;
+        }
+
+        // Entries are removed one by one, so activity arriving meanwhile starts a new entry
+        List<PendingActivity> taken = new ArrayList<>(pending.size());
+        for (Long conversationId : new ArrayList<>(pending.keySet())) {
+            PendingActivity entry = pending.remove(conversationId);
+            if (entry != null) {
+                taken.add(entry);
+            }
+        }
+
+        int batchSize = conversationConfig.getActivityFlushBatchSize();
+        int updated = 0;
+        for (int i = 0; i < taken.size(); i += batchSize) {
+            List<PendingActivity> batch = taken.subList(i, Math.min(i + batchSize, taken.size()));
+            List<ConversationActivity> activities = new ArrayList<>(batch.size());
+            batch.forEach(entry -> activities.add(entry.activity));
+            try {
+                updated += conversationMapper.applyActivity(activities);
+                clearDirty(ids(activities));
+            } catch (Exception e) {
+                log.warn("Failed to flush activity of {} conversations, will retry: {}", batch.size(), e.getMessage());
+                batch.forEach(entry -> {
+                    recount.add(entry.activity.getConversationId());
+                    merge(entry.userId, entry.activity);
+                });
+            }
+        }
+        recountFailed();
+        log.debug("Flushed activity of {} conversations", updated);
+        return updated;
+    }
+
+    /**
+     * Recount the conversations of failed flushes whose activity has been applied again since
+     */
+    private void recountFailed() {
+        List<Long> ids = new ArrayList<>();
+        recount.stream().filter(conversationId -> !pending.containsKey(conversationId)).forEach(ids::add);
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            conversationMapper.recountActivity(ids);
+            recount.removeAll(ids);
+            clearDirty(ids);
+        } catch (Exception e) {
+            log.warn("Failed to recount {} conversations after a failed flush, will retry: {}", ids.size(),
+                    e.getMessage());
+        }
+    }
+
+    private static List<Long> ids(List<ConversationActivity> activities) {
+        List<Long> ids = new ArrayList<>(activities.size());
+        activities.forEach(activity -> ids.add(activity.getConversationId()));
+        return ids;
+    }
+
+    private void merge(Long userId, ConversationActivity activity) {
+        pending.merge(activity.getConversationId(), new PendingActivity(userId, activity), (current, added) -> {
+            ConversationActivity merged = new ConversationActivity();
+            ConversationActivity a = current.activity;
+            ConversationActivity b = added.activity;
+            merged.setConversationId(a.getConversationId());
+            merged.setMessageCount(a.getMessageCount() + b.getMessageCount());
+            merged.setTotalTokens(a.getTotalTokens() + b.getTotalTokens());
+            ConversationActivity newest = b.getLastSequence() >= a.getLastSequence() ? b : a;
+            merged.setLastSequence(newest.getLastSequence());
+            merged.setLastMessagePreview(newest.getLastMessagePreview());
+            merged.setUpdateTime(b.getUpdateTime().isAfter(a.getUpdateTime()) ? b.getUpdateTime() : a.getUpdateTime());
+            return new PendingActivity(current.userId, merged);
+        });
+    }
+
+    /**
+     * Recount conversations whose activity was recorded but not flushed in time, e.g. by a node that crashed
+     */
+    private void repair() {
+        try {
+            long staleBefore = System.currentTimeMillis()
+                    - TimeUnit.SECONDS.toMillis(conversationConfig.getActivityRepairSeconds());
+            Set<String> members = redisTemplate.opsForZSet().rangeByScore(DIRTY_KEY, 0, staleBefore);
+            if (members == null || members.isEmpty()) {
+                return;
+            }
+            List<Long> ids = new ArrayList<>(members.size());
+            members.forEach(member -> ids.add(Long.valueOf(member)));
+
+            int batchSize = conversationConfig.getActivityFlushBatchSize();
+            int repaired = 0;
+            for (int i = 0; i < ids.size(); i += batchSize) {
+                List<Long> batch = ids.subList(i, Math.min(i + batchSize, ids.size()));
+                repaired += conversationMapper.recountActivity(batch);
+                Object[] recounted = batch.stream()
+                        .filter(id -> !pending.containsKey(id))
+                        .map(String::valueOf)
+                        .toArray();
+                if (recounted.length > 0) {
+                    redisTemplate.opsForZSet().remove(DIRTY_KEY, recounted);
+                }
+            }
+            log.info("Recounted {} conversations with unflushed activity", repaired);
+        } catch (Exception e) {
+            log.warn("Failed to recount conversations with unflushed activity: {}", e.getMessage());
+        }
+    }
+
+    private void markDirty(List<ConversationActivity> activities) {
+        double now = System.currentTimeMillis();
+        Set<ZSetOperations.TypedTuple<String>> marks = new HashSet<>();
+        activities.forEach(activity -> marks.add(new DefaultTypedTuple<>(
+                String.valueOf(activity.getConversationId()), now)));
+        try {
+            redisTemplate.opsForZSet().add(DIRTY_KEY, marks);
+        } catch (Exception e) {
+            log.warn("Failed to mark activity of {} conversations: {}", activities.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Unmark flushed conversations, except those with activity recorded since or still to be recounted
+     */
+    private void clearDirty(List<Long> conversationIds) {
+        Object[] flushed = conversationIds.stream()
+                .filter(conversationId -> !pending.containsKey(conversationId) && !recount.contains(conversationId))
+                .map(String::valueOf)
+                .toArray();
+        if (flushed.length == 0) {
+            return;
+        }
+        try {
+            redisTemplate.opsForZSet().remove(DIRTY_KEY, flushed);
+        } catch (Exception e) {
+            // Left marked, they are recounted once more by the next repair
+            log.warn("Failed to unmark activity of {} conversations: {}", flushed.length, e.getMessage());
+        }
+    }
+
+    private void runScheduled() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Conversation activity flush failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Activity of one conversation with the owner, for the per-user overlay
+     */
+    private static class PendingActivity {
+
+        private final Long userId;
+
+        private final ConversationActivity activity;
+
+        private PendingActivity(Long userId, ConversationActivity activity) {
+            this.userId = userId;
+            this.activity = activity;
+        }
+    }
+}
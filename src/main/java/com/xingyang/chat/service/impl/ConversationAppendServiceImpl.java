@@ -0,0 +1,221 @@
+package com.xingyang.chat.service.impl;
+
+import com.xingyang.chat.config.ConversationConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.service.ConversationAppendService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Conversation Append Service Implementation
+ * <p>
+ * Within a node, appends take one of a fixed set of locks picked by conversation ID, so no lock
+ * objects are created or cleaned up and unrelated conversations rarely share one. Across nodes the
+ * holder also takes a Redis lease (SET NX PX with a random token, released only by its owner), which
+ * expires on its own if a node dies mid-append. Only the short append is covered, never the
+ * upstream call, and no database row is locked. Without Redis appends fall back to the local lock.
+ * <p>
+ * With write-behind the messages reach MySQL after the append returns. The next holder still reads
+ * them, on any node, from the shared pending store, so the conversation is released as soon as the
+ * append's transaction completes and never waits for the group commit.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class ConversationAppendServiceImpl implements ConversationAppendService {
+
+    private static final String LEASE_PREFIX = "chat:append:lease:";
+
+    /**
+     * Delete the lease only if it is still ours
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+
+    /**
+     * Conversations held by the current thread with their lease token and hold count, for reentrant appends
+     */
+    private static final ThreadLocal<Map<Long, Hold>> HOLDS = ThreadLocal.withInitial(HashMap::new);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ConversationConfig conversationConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ReentrantLock[] stripes;
+
+    private Timer waitTime;
+
+    private Counter timeouts;
+
+    @PostConstruct
+    public void init() {
+        stripes = new ReentrantLock[conversationConfig.getAppendLockStripes()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        waitTime = Timer.builder("chat.append.wait")
+                .description("Time appends waited for their conversation")
+                .register(meterRegistry);
+        timeouts = Counter.builder("chat.append.timeouts")
+                .description("Appends given up because their conversation stayed busy")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public <T> T runExclusive(Long conversationId, Supplier<T> append) {
+        acquire(conversationId);
+        boolean deferred = false;
+        try {
+            T result = append.get();
+            // Released once the messages are committed, or the next append would not see them
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        release(conversationId);
+                    }
+                });
+                deferred = true;
+            }
+            return result;
+        } finally {
+            if (!deferred) {
+                release(conversationId);
+            }
+        }
+    }
+
+    private void acquire(Long conversationId) {
+        Hold hold = HOLDS.get().get(conversationId);
+        if (hold != null) {
+            hold.count++;
+            return;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(conversationConfig.getAppendWaitMillis());
+        ReentrantLock lock = stripe(conversationId);
+        try {
+            if (!lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw busy(conversationId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw busy(conversationId);
+        }
+
+        String token;
+        try {
+            token = acquireLease(conversationId, deadline);
+        } catch (RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+        waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        HOLDS.get().put(conversationId, new Hold(token));
+    }
+
+    /**
+     * Take the Redis lease, polling with a growing pause while another node holds it
+     *
+     * @return Lease token, null if Redis is unavailable
+     */
+    private String acquireLease(Long conversationId, long deadline) {
+        String key = LEASE_PREFIX + conversationId;
+        String token = UUID.randomUUID().toString();
+        long pauseMillis = 5;
+        while (true) {
+            Boolean acquired;
+            try {
+                acquired = redisTemplate.opsForValue().setIfAbsent(key, token,
+                        conversationConfig.getAppendLeaseMillis(), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.warn("Append lease unavailable for conversation {}, serializing on this node only: {}",
+                        conversationId, e.getMessage());
+                return null;
+            }
+            if (Boolean.TRUE.equals(acquired)) {
+                return token;
+            }
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMillis) > deadline) {
+                throw busy(conversationId);
+            }
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw busy(conversationId);
+            }
+            pauseMillis = Math.min(pauseMillis * 2, 100);
+        }
+    }
+
+    private void release(Long conversationId) {
+        Map<Long, Hold> holds = HOLDS.get();
+        Hold hold = holds.get(conversationId);
+        if (hold == null || --hold.count > 0) {
+            return;
+        }
+
+        holds.remove(conversationId);
+        try {
+            if (hold.token != null) {
+                redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(LEASE_PREFIX + conversationId),
+                        hold.token);
+            }
+        } catch (Exception e) {
+            // The lease expires on its own
+            log.warn("Failed to release append lease of conversation {}: {}", conversationId, e.getMessage());
+        } finally {
+            stripe(conversationId).unlock();
+        }
+    }
+
+    private ReentrantLock stripe(Long conversationId) {
+        return stripes[(Long.hashCode(conversationId) & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private BusinessException busy(Long conversationId) {
+        timeouts.increment();
+        log.warn("Gave up appending to conversation {}, another append is still running", conversationId);
+        return new BusinessException("Conversation is busy, please retry");
+    }
+
+    /**
+     * Conversation held by the current thread
+     */
+    private static class Hold {
+
+        private final String token;
+
+        private int count = 1;
+
+        private Hold(String token) {
+            this.token = token;
+        }
+    }
+}
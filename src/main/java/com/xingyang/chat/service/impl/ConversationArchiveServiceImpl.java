@@ -0,0 +1,385 @@
+package com.xingyang.chat.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.xingyang.chat.config.ArchiveConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.mapper.ConversationMapper;
+import com.xingyang.chat.model.dto.ConversationArchive;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.service.ConversationActivityService;
+import com.xingyang.chat.service.ConversationArchiveService;
+import com.xingyang.chat.service.ConversationIndexService;
+import com.xingyang.chat.service.MessageWriteBehindService;
+import io.minio.BucketExistsArgs;
+import io.minio.GetObjectArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Conversation Archive Service Implementation
+ * <p>
+ * A background run picks conversations idle longer than the threshold, writes all their message
+ * rows as one gzipped JSON blob to MinIO, flags the conversation archived (only if it did not change
+ * meanwhile) and then deletes the rows in batches. Rows written after the snapshot have higher IDs
+ * and are kept. Reads of an archived conversation are served from the blob through an LRU; the
+ * first write moves the rows back with their original IDs.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class ConversationArchiveServiceImpl implements ConversationArchiveService {
+
+    private static final int STATUS_ARCHIVED = 0;
+
+    private static final String LOCK_KEY = "chat:archive:lock";
+
+    /**
+     * Delete the lock only if it is still ours; a run outlasting it must not free another node's lock
+     */
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+
+    @Autowired
+    private MinioClient minioClient;
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private MessageWriteBehindService messageWriteBehindService;
+
+    @Autowired
+    private ConversationIndexService conversationIndexService;
+
+    @Autowired
+    private ConversationActivityService conversationActivityService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ArchiveConfig archiveConfig;
+
+    @Value("${minio.bucketName}")
+    private String bucketName;
+
+    /**
+     * Recently rehydrated archives, least recently used first
+     */
+    private Map<Long, ConversationArchive> cache;
+
+    private ScheduledExecutorService archiver;
+
+    @PostConstruct
+    public void init() {
+        int cacheSize = archiveConfig.getCacheSize();
+        cache = Collections.synchronizedMap(new LinkedHashMap<Long, ConversationArchive>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ConversationArchive> eldest) {
+                return size() > cacheSize;
+            }
+        });
+
+        if (!Boolean.TRUE.equals(archiveConfig.getEnabled())) {
+            return;
+        }
+        archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = archiveConfig.getIntervalMinutes();
+        archiver.scheduleWithFixedDelay(this::runScheduled, interval, interval, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (archiver != null) {
+            archiver.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isArchived(Conversation conversation) {
+        return conversation.getStatus() != null && conversation.getStatus() == STATUS_ARCHIVED;
+    }
+
+    @Override
+    public int archiveIdle() {
+        LocalDateTime before = LocalDateTime.now().minusDays(archiveConfig.getIdleDays());
+        List<Conversation> candidates = conversationMapper.findIdle(before, archiveConfig.getConversationsPerRun());
+
+        int archived = 0;
+        for (Conversation conversation : candidates) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            try {
+                if (archive(conversation)) {
+                    archived++;
+                }
+            } catch (Exception e) {
+                log.warn("Failed to archive conversation {}: {}", conversation.getId(), e.getMessage());
+            }
+        }
+        if (!candidates.isEmpty()) {
+            log.info("Archived {} of {} idle conversations", archived, candidates.size());
+        }
+        return archived;
+    }
+
+    @Override
+    public List<ChatMessage> getArchivedMessages(Conversation conversation) {
+        return new ArrayList<>(load(conversation).getChatMessages());
+    }
+
+    @Override
+    public void restore(Conversation conversation) {
+        ConversationArchive archive = load(conversation);
+
+        // The row lock taken here makes concurrent writers wait, and only one of them restores
+        if (conversationMapper.markActive(conversation.getId()) == 0) {
+            conversation.setStatus(1);
+            return;
+        }
+        int batchSize = archiveConfig.getBatchSize();
+        for (List<ChatMessage> batch : partition(archive.getChatMessages(), batchSize)) {
+            chatMessageMapper.restoreBatch(batch);
+        }
+        conversation.setStatus(1);
+        log.info("Restored {} messages of conversation {} from the archive",
+                archive.getChatMessages().size(), conversation.getId());
+
+        // The blob is only dropped once the rows are committed
+        Long conversationId = conversation.getId();
+        Long userId = conversation.getUserId();
+        Runnable cleanup = () -> {
+            cache.remove(conversationId);
+            conversationIndexService.invalidate(userId);
+            removeBlob(conversationId);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cleanup.run();
+                }
+            });
+        } else {
+            cleanup.run();
+        }
+    }
+
+    @Override
+    public void discard(Long conversationId) {
+        cache.remove(conversationId);
+        removeBlob(conversationId);
+    }
+
+    /**
+     * Archive run guarded by a Redis lock so only one node archives at a time
+     */
+    private void runScheduled() {
+        long lockSeconds = TimeUnit.MINUTES.toSeconds(archiveConfig.getIntervalMinutes());
+        try {
+            String token = UUID.randomUUID().toString();
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, lockSeconds, TimeUnit.SECONDS);
+            if (!Boolean.TRUE.equals(locked)) {
+                return;
+            }
+            try {
+                archiveIdle();
+            } finally {
+                redisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(LOCK_KEY), token);
+            }
+        } catch (Exception e) {
+            log.warn("Conversation archive run failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Archive one conversation
+     *
+     * @return false if it was skipped because it is being written to
+     */
+    private boolean archive(Conversation conversation) throws Exception {
+        Long conversationId = conversation.getId();
+        if (!messageWriteBehindService.getPendingMessages(conversationId).isEmpty()
+                || conversationActivityService.hasPending(conversationId)) {
+            return false;
+        }
+
+        ConversationArchive archive = new ConversationArchive();
+        archive.setConversationId(conversationId);
+        archive.setUpdateTime(conversation.getUpdateTime());
+        archive.setArchiveTime(LocalDateTime.now());
+        archive.setChatMessages(chatMessageMapper.findByConversationId(conversationId));
+
+        byte[] blob = compress(JSON.toJSONString(archive).getBytes(StandardCharsets.UTF_8));
+        ensureBucket();
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(bucketName)
+                .object(objectName(conversationId))
+                .stream(new ByteArrayInputStream(blob), blob.length, -1)
+                .contentType("application/gzip")
+                .build());
+
+        // A message added after the snapshot bumped the update time; try again next run
+        if (conversationMapper.markArchived(conversationId, conversation.getUpdateTime()) == 0) {
+            return false;
+        }
+        cache.remove(conversationId);
+        conversationIndexService.invalidate(conversation.getUserId());
+
+        int batchSize = archiveConfig.getBatchSize();
+        long maxChatMessageId = archive.getChatMessages().stream().mapToLong(ChatMessage::getId).max().orElse(0);
+        while (chatMessageMapper.deleteArchived(conversationId, maxChatMessageId, batchSize) == batchSize) {
+            // Keep each delete short so it does not hold locks for long
+        }
+
+        log.debug("Archived conversation {} with {} messages ({} bytes)", conversationId,
+                archive.getChatMessages().size(), blob.length);
+        return true;
+    }
+
+    /**
+     * Load an archive from the LRU or MinIO
+     */
+    private ConversationArchive load(Conversation conversation) {
+        Long conversationId = conversation.getId();
+        ConversationArchive cached = cache.get(conversationId);
+        // An archive taken before the conversation was restored and archived again is stale
+        if (cached != null && cached.getUpdateTime().equals(conversation.getUpdateTime())) {
+            return cached;
+        }
+
+        try (InputStream in = minioClient.getObject(GetObjectArgs.builder()
+                .bucket(bucketName)
+                .object(objectName(conversationId))
+                .build())) {
+            ConversationArchive archive = JSON.parseObject(decompress(in), ConversationArchive.class);
+            mergeLegacyMessages(archive);
+            cache.put(conversationId, archive);
+            return archive;
+        } catch (Exception e) {
+            log.error("Failed to load archive of conversation {}: {}", conversationId, e.getMessage(), e);
+            throw new BusinessException("Failed to load archived conversation");
+        }
+    }
+
+    /**
+     * Fold in rows of the former message table, found in archives written before it was merged
+     * into chat_message; like the migration, rows already present are skipped and the rest appended
+     */
+    private static void mergeLegacyMessages(ConversationArchive archive) {
+        if (archive.getMessages() == null || archive.getMessages().isEmpty()) {
+            return;
+        }
+
+        List<ChatMessage> merged = new ArrayList<>(archive.getChatMessages());
+        Set<String> present = merged.stream()
+                .map(message -> message.getRole() + '\0' + message.getContent())
+                .collect(Collectors.toSet());
+        int sequence = merged.stream().mapToInt(ChatMessage::getSequence).max().orElse(0);
+        for (ChatMessage message : archive.getMessages()) {
+            if (!present.contains(message.getRole() + '\0' + message.getContent())) {
+                // Restored with a new ID
+                message.setId(null);
+                message.setSequence(++sequence);
+                merged.add(message);
+            }
+        }
+        archive.setChatMessages(merged);
+        archive.setMessages(null);
+    }
+
+    private void removeBlob(Long conversationId) {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(objectName(conversationId))
+                    .build());
+        } catch (Exception e) {
+            // Harmless: the next archive of this conversation overwrites it
+            log.warn("Failed to remove archive of conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    private void ensureBucket() throws Exception {
+        if (!minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build())) {
+            minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+            log.info("Created bucket: {}", bucketName);
+        }
+    }
+
+    private String objectName(Long conversationId) {
+        return archiveConfig.getObjectPrefix() + conversationId + ".json.gz";
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static String decompress(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream gzip = new GZIPInputStream(in)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = gzip.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static <T> List<List<T>> partition(List<T> items, int size) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            batches.add(items.subList(i, Math.min(i + size, items.size())));
+        }
+        return batches;
+    }
+}
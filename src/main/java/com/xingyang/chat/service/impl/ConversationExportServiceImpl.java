@@ -0,0 +1,120 @@
+package com.xingyang.chat.service.impl;
+
+import com.alibaba.fastjson.JSONObject;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.mapper.ConversationMapper;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.service.ConversationArchiveService;
+import com.xingyang.chat.service.ConversationExportService;
+import com.xingyang.chat.util.SecurityUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Conversation Export Service Implementation
+ * <p>
+ * Reads through two streaming cursors one after the other (MySQL allows only one open streaming
+ * result per connection) and writes each row as soon as it is read. Archived conversations are
+ * read from their blob while the conversation cursor passes them. Messages still waiting for the
+ * group commit are not included.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class ConversationExportServiceImpl implements ConversationExportService {
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ConversationArchiveService conversationArchiveService;
+
+    @Override
+    @Transactional(readOnly = true)
+    public void export(OutputStream out) throws IOException {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
+        }
+
+        long start = System.currentTimeMillis();
+        long conversations = 0;
+        long messages = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+        try (Cursor<Conversation> cursor = conversationMapper.streamByUserId(userId)) {
+            for (Conversation conversation : cursor) {
+                writeLine(writer, toRecord(conversation));
+                conversations++;
+                if (conversationArchiveService.isArchived(conversation)) {
+                    for (ChatMessage message : conversationArchiveService.getArchivedMessages(conversation)) {
+                        writeLine(writer, toRecord(message));
+                        messages++;
+                    }
+                }
+            }
+        }
+
+        try (Cursor<ChatMessage> cursor = chatMessageMapper.streamByUserId(userId)) {
+            for (ChatMessage message : cursor) {
+                writeLine(writer, toRecord(message));
+                messages++;
+            }
+        }
+        writer.flush();
+
+        log.info("Exported {} conversations and {} messages for user {} in {} ms", conversations, messages, userId,
+                System.currentTimeMillis() - start);
+    }
+
+    private void writeLine(Writer writer, JSONObject record) throws IOException {
+        writer.write(record.toJSONString());
+        writer.write('\n');
+    }
+
+    private JSONObject toRecord(Conversation conversation) {
+        JSONObject record = new JSONObject(true);
+        record.put("type", "conversation");
+        record.put("id", conversation.getId());
+        record.put("title", conversation.getTitle());
+        record.put("modelId", conversation.getModelId());
+        record.put("archived", conversationArchiveService.isArchived(conversation));
+        record.put("messageCount", conversation.getMessageCount());
+        record.put("totalTokens", conversation.getTotalTokens());
+        record.put("createTime", String.valueOf(conversation.getCreateTime()));
+        record.put("updateTime", String.valueOf(conversation.getUpdateTime()));
+        return record;
+    }
+
+    private JSONObject toRecord(ChatMessage message) {
+        JSONObject record = new JSONObject(true);
+        record.put("type", "message");
+        record.put("conversationId", message.getConversationId());
+        record.put("sequence", message.getSequence());
+        // Messages stored before branching have none and follow the previous message
+        record.put("parentSequence", message.getParentSequence());
+        record.put("path", message.getPath());
+        record.put("role", message.getRole());
+        record.put("content", message.getContent());
+        record.put("tokenCount", message.getTokenCount());
+        record.put("modelId", message.getModelId());
+        record.put("createTime", String.valueOf(message.getCreateTime()));
+        return record;
+    }
+}
@@ -0,0 +1,536 @@
+package com.xingyang.chat.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+import com.xingyang.chat.config.ConversationConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.mapper.ConversationMapper;
+import com.xingyang.chat.model.dto.ChatMessageDto;
+import com.xingyang.chat.model.dto.ConversationActivity;
+import com.xingyang.chat.model.dto.ConversationDto;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.model.vo.ConversationImportVO;
+import com.xingyang.chat.service.ConversationImportService;
+import com.xingyang.chat.service.ConversationIndexService;
+import com.xingyang.chat.service.MessageSearchService;
+import com.xingyang.chat.util.MessagePath;
+import com.xingyang.chat.util.SecurityUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Conversation Import Service Implementation
+ * <p>
+ * Records are parsed one at a time and collected into batches bounded by conversation and message
+ * count. Each batch is one transaction: a multi-row conversation INSERT whose generated IDs are
+ * handed to the messages, then multi-row message INSERTs. Sequences of the new conversations are
+ * simply numbered from 1 in record order, so no counter or maximum lookup is needed. Messages that
+ * carry a sequence and parent sequence keep their branch, with the parent renumbered alongside;
+ * messages without a parent follow the previous message.
+ * <p>
+ * Two record formats are accepted, also mixed: conversations with nested messages, and the flat
+ * records written by the export, where each {@code "type": "message"} record names its conversation
+ * by the ID of an earlier {@code "type": "conversation"} record. Only conversation records, a few
+ * fields each, are held until their messages arrive; the messages of a conversation must be
+ * consecutive, as the export writes them, so only one conversation's messages are held at a time.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class ConversationImportServiceImpl implements ConversationImportService {
+
+    private static final Set<String> ROLES = new HashSet<>(Arrays.asList("user", "assistant", "system"));
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ConversationIndexService conversationIndexService;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private ConversationConfig conversationConfig;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Runs outside a transaction so each batch commits on its own; the annotation still pins
+     * the user's reads to the primary afterwards
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ConversationImportVO importConversations(InputStream in) throws IOException {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
+        }
+
+        long start = System.currentTimeMillis();
+        ConversationImportVO result = new ConversationImportVO();
+        Batch batch = new Batch();
+        Grouping grouping = new Grouping();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        if (peek(reader) == '[') {
+            JSONReader jsonReader = new JSONReader(reader);
+            try {
+                jsonReader.startArray();
+                while (jsonReader.hasNext()) {
+                    result.setRecords(result.getRecords() + 1);
+                    accept(batch, grouping, jsonReader.readObject(JSONObject.class), "Record " + result.getRecords(),
+                            userId, result);
+                }
+                jsonReader.endArray();
+            } catch (JSONException e) {
+                // The array cannot be resynchronized after a malformed element
+                reject(result, "Record " + result.getRecords() + ": malformed JSON, import stopped");
+                result.setComplete(false);
+            }
+        } else {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                result.setRecords(result.getRecords() + 1);
+                try {
+                    accept(batch, grouping, JSON.parseObject(line), "Line " + lineNumber, userId, result);
+                } catch (JSONException e) {
+                    reject(result, "Line " + lineNumber + ": malformed JSON");
+                }
+            }
+        }
+        finish(batch, grouping, userId, result);
+        flush(batch, userId, result);
+
+        if (result.getConversations() > 0) {
+            conversationIndexService.invalidate(userId);
+            messageSearchService.invalidate(userId);
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("Conversation import for user {} finished: {}", userId, result);
+        return result;
+    }
+
+    /**
+     * Route a record by its type: a conversation with nested messages, or an export record
+     */
+    private void accept(Batch batch, Grouping grouping, JSONObject record, String label, Long userId,
+                        ConversationImportVO result) {
+        if (record == null) {
+            reject(result, label + ": empty record");
+            return;
+        }
+        String type = record.getString("type");
+        try {
+            if (type == null) {
+                ConversationDto conversation = record.toJavaObject(ConversationDto.class);
+                List<ImportedMessage> messages = new ArrayList<>();
+                if (conversation.getMessages() != null) {
+                    for (ChatMessageDto message : conversation.getMessages()) {
+                        messages.add(message == null ? null : ImportedMessage.of(message));
+                    }
+                }
+                add(batch, conversation, messages, label, userId, result);
+            } else if ("conversation".equals(type)) {
+                acceptConversation(grouping, record, label, result);
+            } else if ("message".equals(type)) {
+                acceptMessage(batch, grouping, record, label, userId, result);
+            } else {
+                reject(result, label + ": unknown record type " + type);
+            }
+        } catch (JSONException | IllegalArgumentException | DateTimeParseException e) {
+            reject(result, label + ": invalid field, " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hold an exported conversation until its messages arrive
+     */
+    private void acceptConversation(Grouping grouping, JSONObject record, String label, ConversationImportVO result) {
+        Long id = record.getLong("id");
+        if (id == null) {
+            reject(result, label + ": conversation record without id");
+            return;
+        }
+        if (grouping.seen.contains(id)) {
+            reject(result, label + ": duplicate conversation " + id);
+            return;
+        }
+
+        ConversationDto conversation = new ConversationDto();
+        conversation.setTitle(record.getString("title"));
+        conversation.setModelId(record.getString("modelId"));
+        conversation.setModelConfig(record.getString("modelConfig"));
+        conversation.setCreateTime(parseTime(record.get("createTime")));
+        conversation.setUpdateTime(parseTime(record.get("updateTime")));
+        grouping.seen.add(id);
+        grouping.waiting.put(id, new Group(conversation, label));
+    }
+
+    /**
+     * Add an exported message to its conversation, which is added to the batch once its messages end
+     */
+    private void acceptMessage(Batch batch, Grouping grouping, JSONObject record, String label, Long userId,
+                               ConversationImportVO result) {
+        Long conversationId = record.getLong("conversationId");
+        if (grouping.current == null || !grouping.current.id.equals(conversationId)) {
+            Group group = conversationId != null ? grouping.waiting.remove(conversationId) : null;
+            if (group == null) {
+                reject(result, label + (conversationId != null && grouping.seen.contains(conversationId)
+                        ? ": messages of conversation " + conversationId + " must be consecutive"
+                        : ": message of unknown conversation " + conversationId
+                                + ", its conversation record must come first"));
+                return;
+            }
+            finishCurrent(batch, grouping, userId, result);
+            group.id = conversationId;
+            grouping.current = group;
+        }
+
+        ImportedMessage message = new ImportedMessage();
+        message.role = record.getString("role");
+        message.content = record.getString("content");
+        message.sequence = record.getInteger("sequence");
+        message.parentSequence = record.getInteger("parentSequence");
+        message.tokenCount = record.getInteger("tokenCount");
+        message.modelId = record.getString("modelId");
+        message.createTime = parseTime(record.get("createTime"));
+        grouping.current.messages.add(message);
+    }
+
+    /**
+     * Add the conversation whose messages were last read, then those that had none
+     */
+    private void finish(Batch batch, Grouping grouping, Long userId, ConversationImportVO result) {
+        finishCurrent(batch, grouping, userId, result);
+        Iterator<Group> waiting = grouping.waiting.values().iterator();
+        while (waiting.hasNext()) {
+            Group group = waiting.next();
+            waiting.remove();
+            add(batch, group.conversation, group.messages, group.label, userId, result);
+        }
+    }
+
+    private void finishCurrent(Batch batch, Grouping grouping, Long userId, ConversationImportVO result) {
+        Group group = grouping.current;
+        if (group != null) {
+            grouping.current = null;
+            add(batch, group.conversation, group.messages, group.label, userId, result);
+        }
+    }
+
+    /**
+     * Validate a conversation and add it to the batch, committing the batch when it is full
+     */
+    private void add(Batch batch, ConversationDto record, List<ImportedMessage> source, String label, Long userId,
+                     ConversationImportVO result) {
+        for (ImportedMessage message : source) {
+            if (message == null || !ROLES.contains(message.role) || message.content == null) {
+                reject(result, label + ": every message needs a role (user, assistant, system) and content");
+                return;
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime createTime = record.getCreateTime() != null ? record.getCreateTime() : now;
+        String modelId = record.getModelId();
+        Conversation conversation = new Conversation();
+        conversation.setTitle(record.getTitle() != null ? record.getTitle() : "New Conversation");
+        conversation.setUserId(userId);
+        try {
+            conversation.setModelId(modelId == null ? null : Long.valueOf(modelId));
+        } catch (NumberFormatException e) {
+            modelId = null;
+        }
+        conversation.setModelConfig(record.getModelConfig());
+        conversation.setStatus(1);
+
+        List<ChatMessage> messages = new ArrayList<>(source.size());
+        // New paths by the sequence the message had in the export
+        Map<Integer, MessagePath> sourcePaths = new HashMap<>();
+        MessagePath previous = MessagePath.root();
+        int sequence = 0;
+        LocalDateTime lastTime = createTime;
+        for (ImportedMessage imported : source) {
+            MessagePath parent;
+            if (imported.parentSequence == null) {
+                parent = previous;
+            } else if (imported.parentSequence == 0) {
+                parent = MessagePath.root();
+            } else {
+                parent = sourcePaths.get(imported.parentSequence);
+                if (parent == null) {
+                    reject(result, label + ": parent sequence " + imported.parentSequence
+                            + " must be a message listed before its children");
+                    return;
+                }
+            }
+            MessagePath path = parent.child(++sequence);
+            if (imported.sequence != null && sourcePaths.putIfAbsent(imported.sequence, path) != null) {
+                reject(result, label + ": duplicate sequence " + imported.sequence);
+                return;
+            }
+            previous = path;
+
+            LocalDateTime time = imported.createTime != null ? imported.createTime : lastTime;
+            ChatMessage message = new ChatMessage();
+            message.setRole(imported.role);
+            message.setContent(imported.content);
+            message.setSequence(sequence);
+            message.setParentSequence(parent.leaf());
+            message.setPath(path.toString());
+            message.setTokenCount(imported.tokenCount != null
+                    ? imported.tokenCount
+                    : estimateTokenCount(imported.content));
+            message.setModelId(imported.modelId != null ? imported.modelId : modelId);
+            message.setCreateTime(time);
+            message.setUpdateTime(time);
+            message.setCreateBy(userId);
+            message.setUpdateBy(userId);
+            messages.add(message);
+            lastTime = time;
+        }
+
+        List<ConversationActivity> activities = ConversationActivity.fromMessages(messages,
+                conversationConfig.getPreviewLength());
+        ConversationActivity activity = activities.isEmpty() ? new ConversationActivity() : activities.get(0);
+        conversation.setMessageCount(activity.getMessageCount());
+        conversation.setTotalTokens(activity.getTotalTokens());
+        conversation.setLastMessagePreview(activity.getLastMessagePreview());
+        conversation.setCreateTime(createTime);
+        conversation.setUpdateTime(record.getUpdateTime() != null ? record.getUpdateTime() : lastTime);
+        conversation.setCreateBy(userId);
+        conversation.setUpdateBy(userId);
+
+        batch.conversations.add(conversation);
+        batch.messages.add(messages);
+        batch.messageCount += messages.size();
+        if (batch.conversations.size() >= conversationConfig.getImportBatchConversations()
+                || batch.messageCount >= conversationConfig.getImportBatchMessages()) {
+            flush(batch, userId, result);
+        }
+    }
+
+    /**
+     * Write the batch in one transaction and start a new one; a failed batch is counted as rejected
+     */
+    private void flush(Batch batch, Long userId, ConversationImportVO result) {
+        if (batch.conversations.isEmpty()) {
+            return;
+        }
+
+        int statementSize = conversationConfig.getImportBatchMessages();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                conversationMapper.insertBatch(batch.conversations);
+                List<ChatMessage> pending = new ArrayList<>(Math.min(batch.messageCount, statementSize));
+                for (int i = 0; i < batch.conversations.size(); i++) {
+                    Long conversationId = batch.conversations.get(i).getId();
+                    for (ChatMessage message : batch.messages.get(i)) {
+                        message.setConversationId(conversationId);
+                        pending.add(message);
+                        if (pending.size() == statementSize) {
+                            chatMessageMapper.insertBatch(pending);
+                            pending.clear();
+                        }
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    chatMessageMapper.insertBatch(pending);
+                }
+            });
+            result.setConversations(result.getConversations() + batch.conversations.size());
+            result.setMessages(result.getMessages() + batch.messageCount);
+            result.setBatches(result.getBatches() + 1);
+            log.info("Imported {} conversations and {} messages so far for user {}", result.getConversations(),
+                    result.getMessages(), userId);
+        } catch (Exception e) {
+            log.error("Import batch of {} conversations failed for user {}", batch.conversations.size(), userId, e);
+            result.setRejected(result.getRejected() + batch.conversations.size());
+            addError(result, "Batch of " + batch.conversations.size() + " conversations failed: " + e.getMessage());
+        }
+        batch.conversations.clear();
+        batch.messages.clear();
+        batch.messageCount = 0;
+    }
+
+    private void reject(ConversationImportVO result, String reason) {
+        result.setRejected(result.getRejected() + 1);
+        addError(result, reason);
+    }
+
+    private void addError(ConversationImportVO result, String reason) {
+        if (result.getErrors().size() < conversationConfig.getImportMaxErrors()) {
+            result.getErrors().add(reason);
+        }
+    }
+
+    /**
+     * First character that is not whitespace or a byte order mark, left unread
+     */
+    private static int peek(BufferedReader reader) throws IOException {
+        int c;
+        do {
+            reader.mark(1);
+            c = reader.read();
+        } while (c != -1 && (Character.isWhitespace(c) || c == '\uFEFF'));
+        if (c != -1) {
+            reader.reset();
+        }
+        return c;
+    }
+
+    /**
+     * Read a time as the export writes it, a local date-time string, or as epoch milliseconds
+     */
+    private static LocalDateTime parseTime(Object value) {
+        if (value == null || "null".equals(value)) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(((Number) value).longValue()), ZoneId.systemDefault());
+        }
+        return LocalDateTime.parse(value.toString());
+    }
+
+    /**
+     * Simple token count estimator
+     * This is a rough estimate - for more accurate counting, a tokenizer should be used
+     */
+    private Integer estimateTokenCount(String content) {
+        if (content == null || content.isEmpty()) {
+            return 0;
+        }
+
+        // Very rough estimate: 1 token ~= 4 characters for English text
+        return (int) Math.ceil(content.length() / 4.0);
+    }
+
+    /**
+     * A message as read from either record format
+     */
+    private static class ImportedMessage {
+
+        private String role;
+
+        private String content;
+
+        private Integer sequence;
+
+        private Integer parentSequence;
+
+        private Integer tokenCount;
+
+        private String modelId;
+
+        private LocalDateTime createTime;
+
+        private static ImportedMessage of(ChatMessageDto dto) {
+            ImportedMessage message = new ImportedMessage();
+            message.role = dto.getRole();
+            message.content = dto.getContent();
+            message.sequence = dto.getSequence();
+            message.parentSequence = dto.getParentSequence();
+            message.createTime = parseTime(dto.getTimestamp());
+            return message;
+        }
+    }
+
+    /**
+     * An exported conversation with the messages read for it so far
+     */
+    private static class Group {
+
+        private final ConversationDto conversation;
+
+        private final String label;
+
+        private final List<ImportedMessage> messages = new ArrayList<>();
+
+        /**
+         * ID the conversation had in the export
+         */
+        private Long id;
+
+        private Group(ConversationDto conversation, String label) {
+            this.conversation = conversation;
+            this.label = label;
+        }
+    }
+
+    /**
+     * Exported conversations of one import by the ID they had in the export
+     */
+    private static class Grouping {
+
+        /**
+         * Conversations whose messages have not started yet, in record order
+         */
+        private final Map<Long, Group> waiting = new LinkedHashMap<>();
+
+        private final Set<Long> seen = new HashSet<>();
+
+        /**
+         * Conversation whose messages are being read
+         */
+        private Group current;
+    }
+
+    /**
+     * Conversations parsed but not yet written, with their messages at the same index
+     */
+    private static class Batch {
+
+        private final List<Conversation> conversations = new ArrayList<>();
+
+        private final List<List<ChatMessage>> messages = new ArrayList<>();
+
+        private int messageCount;
+    }
+}
@@ -0,0 +1,608 @@
+package com.xingyang.chat.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xingyang.chat.config.ConversationConfig;
+import com.xingyang.chat.mapper.ConversationMapper;
+import com.xingyang.chat.model.dto.ConversationActivity;
+import com.xingyang.chat.model.dto.ConversationDto;
+import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.service.ConversationIndexService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent Conversations Index Service Implementation
+ * <p>
+ * Per user, a sorted set holds conversation IDs scored by last activity, a hash per conversation
+ * holds the list-view fields, and a meta hash marks the index as loaded and records the total
+ * count. Writes are applied incrementally only while the index is loaded, so a cold index is
+ * never half built; reads that the index cannot answer fall back to MySQL and trigger a rebuild.
+ * <p>
+ * Only one rebuild per user runs at a time. The MySQL snapshot it loads lags behind write-behind
+ * and the activity flush, so activity on a cold index is kept in a short-lived buffer instead of
+ * being dropped, and the rebuild replays the entries its snapshot does not reflect yet. Activity
+ * only moves a conversation's update time forward, so replayed and live activity may interleave.
+ * Scores combine the update time in seconds with the low digits of the ID, matching the MySQL
+ * order of (update_time, id) for all practical purposes.
+ * <p>
+ * A per-user version counter is bumped by every reported write and by rebuilds, whether or not the
+ * index is loaded, so list ETags can be checked without MySQL. A missing counter is seeded from the
+ * Redis clock, so one that expired never repeats an earlier value.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class ConversationIndexServiceImpl implements ConversationIndexService {
+
+    private static final String RECENT_PREFIX = "chat:conv:recent:";
+
+    private static final String ITEM_PREFIX = "chat:conv:item:";
+
+    private static final String META_PREFIX = "chat:conv:meta:";
+
+    private static final String BUFFER_PREFIX = "chat:conv:buffer:";
+
+    private static final String REBUILD_PREFIX = "chat:conv:rebuild:";
+
+    private static final String VERSION_PREFIX = "chat:conv:version:";
+
+    private static final String FIELD_TOTAL = "total";
+
+    private static final String FIELD_COMPLETE = "complete";
+
+    private static final long ID_DIGITS = 1_000_000L;
+
+    /**
+     * Apply activity to one indexed conversation, or buffer it while the index is cold; returns 0 if
+     * the index is loaded but lacks the conversation
+     */
+    private static final DefaultRedisScript<Long> ACTIVITY_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[3]) == 0 then " +
+            "redis.call('RPUSH', KEYS[4], ARGV[8]) " +
+            "redis.call('LTRIM', KEYS[4], -tonumber(ARGV[10]), -1) " +
+            "redis.call('EXPIRE', KEYS[4], ARGV[9]) " +
+            "return 1 end " +
+            "local current = redis.call('ZSCORE', KEYS[1], ARGV[1]) " +
+            "if current == false or redis.call('EXISTS', KEYS[2]) == 0 then return 0 end " +
+            "if tonumber(ARGV[2]) >= tonumber(current) then " +
+            "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) " +
+            "redis.call('HSET', KEYS[2], 'updateTime', ARGV[3], 'lastMessagePreview', ARGV[6]) " +
+            "end " +
+            "redis.call('HINCRBY', KEYS[2], 'messageCount', ARGV[4]) " +
+            "redis.call('HINCRBY', KEYS[2], 'totalTokens', ARGV[5]) " +
+            "for i = 1, 3 do redis.call('EXPIRE', KEYS[i], ARGV[7]) end " +
+            "return 1",
+            Long.class);
+
+    /**
+     * Take and clear the activity buffered while the index was cold
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> DRAIN_SCRIPT = new DefaultRedisScript<>(
+            "local entries = redis.call('LRANGE', KEYS[1], 0, -1) redis.call('DEL', KEYS[1]) return entries",
+            List.class);
+
+    /**
+     * Read or bump a list version, seeding a missing one with the server time in microseconds
+     */
+    private static final DefaultRedisScript<String> VERSION_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then " +
+            "local now = redis.call('TIME') " +
+            "redis.call('SET', KEYS[1], now[1] .. string.format('%06d', tonumber(now[2]))) " +
+            "end " +
+            "if ARGV[1] == '1' then redis.call('INCR', KEYS[1]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "return redis.call('GET', KEYS[1])",
+            String.class);
+
+    /**
+     * Delete the rebuild lock only if it is still ours
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+
+    /**
+     * Apply a title change to one indexed conversation; returns 0 if the index is loaded but lacks it
+     */
+    private static final DefaultRedisScript<Long> RENAME_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[3]) == 0 then return 1 end " +
+            "if redis.call('ZSCORE', KEYS[1], ARGV[1]) == false or redis.call('EXISTS', KEYS[2]) == 0 then return 0 end " +
+            "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) " +
+            "redis.call('HSET', KEYS[2], 'title', ARGV[3], 'updateTime', ARGV[4]) " +
+            "for i = 1, 3 do redis.call('EXPIRE', KEYS[i], ARGV[5]) end " +
+            "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private ConversationConfig conversationConfig;
+
+    @Override
+    public Optional<Page<ConversationDto>> findPage(Long userId, int page, int size) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        try {
+            Map<Object, Object> meta = redisTemplate.opsForHash().entries(META_PREFIX + userId);
+            if (meta.isEmpty()) {
+                return Optional.empty();
+            }
+
+            long total = Long.parseLong((String) meta.get(FIELD_TOTAL));
+            long start = (long) (page - 1) * size;
+            long end = start + size - 1;
+            Long indexed = redisTemplate.opsForZSet().zCard(RECENT_PREFIX + userId);
+            if (end >= (indexed != null ? indexed : 0) && !"1".equals(meta.get(FIELD_COMPLETE))) {
+                // Beyond the trimmed index
+                return Optional.empty();
+            }
+
+            Set<String> ids = redisTemplate.opsForZSet().reverseRange(RECENT_PREFIX + userId, start, end);
+            Optional<List<ConversationDto>> records = loadItems(userId, ids);
+            if (!records.isPresent()) {
+                return Optional.empty();
+            }
+
+            Page<ConversationDto> result = new Page<>(page, size, total);
+            result.setRecords(records.get());
+            return Optional.of(result);
+        } catch (Exception e) {
+            log.warn("Conversation index unavailable for user {}: {}", userId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<List<ConversationDto>> findPageAfter(Long userId, LocalDateTime afterTime, Long afterId, int limit) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        try {
+            Map<Object, Object> meta = redisTemplate.opsForHash().entries(META_PREFIX + userId);
+            if (meta.isEmpty()) {
+                return Optional.empty();
+            }
+
+            Set<String> ids;
+            if (afterTime == null) {
+                ids = redisTemplate.opsForZSet().reverseRange(RECENT_PREFIX + userId, 0, limit);
+            } else {
+                // Exclusive upper bound: the next representable score below the cursor
+                double max = Math.nextDown(score(afterTime, afterId));
+                ids = redisTemplate.opsForZSet().reverseRangeByScore(RECENT_PREFIX + userId,
+                        Double.NEGATIVE_INFINITY, max, 0, limit + 1L);
+            }
+            if ((ids == null || ids.size() <= limit) && !"1".equals(meta.get(FIELD_COMPLETE))) {
+                // The page may continue past the trimmed index
+                return Optional.empty();
+            }
+            return loadItems(userId, ids);
+        } catch (Exception e) {
+            log.warn("Conversation index unavailable for user {}: {}", userId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<String> getListVersion(Long userId) {
+        try {
+            return Optional.ofNullable(redisTemplate.execute(VERSION_SCRIPT,
+                    Collections.singletonList(VERSION_PREFIX + userId), "0", String.valueOf(ttlSeconds())));
+        } catch (Exception e) {
+            log.warn("List version unavailable for user {}: {}", userId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Async
+    @Override
+    public void rebuildAsync(Long userId) {
+        if (!isEnabled()) {
+            return;
+        }
+        String lockKey = REBUILD_PREFIX + userId;
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(lockKey, token,
+                    conversationConfig.getRecentIndexRebuildLockSeconds(), TimeUnit.SECONDS);
+            if (!Boolean.TRUE.equals(acquired)) {
+                // Another request or node is rebuilding this index already
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to lock conversation index of user {}: {}", userId, e.getMessage());
+            return;
+        }
+
+        try {
+            long total = conversationMapper.selectCount(new LambdaQueryWrapper<Conversation>()
+                    .eq(Conversation::getUserId, userId));
+            int maxSize = conversationConfig.getRecentIndexMaxSize();
+            List<Conversation> conversations = conversationMapper.findPageByUserId(userId, null, null, maxSize);
+            boolean complete = conversations.size() < maxSize || total <= maxSize;
+            long ttlSeconds = ttlSeconds();
+
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                stringConnection.del(RECENT_PREFIX + userId, META_PREFIX + userId);
+                for (Conversation conversation : conversations) {
+                    writeItem(stringConnection, userId, conversation, ttlSeconds);
+                }
+                Map<String, String> meta = new HashMap<>();
+                meta.put(FIELD_TOTAL, String.valueOf(total));
+                meta.put(FIELD_COMPLETE, complete ? "1" : "0");
+                stringConnection.hMSet(META_PREFIX + userId, meta);
+                stringConnection.expire(META_PREFIX + userId, ttlSeconds);
+                if (!conversations.isEmpty()) {
+                    stringConnection.expire(RECENT_PREFIX + userId, ttlSeconds);
+                }
+                return null;
+            });
+            int replayed = replayBuffered(userId, conversations);
+            // Lists served from the index from now on may differ from the MySQL fallback
+            bumpVersion(userId);
+            log.debug("Rebuilt conversation index for user {}: {} of {} conversations, {} buffered activities replayed",
+                    userId, conversations.size(), total, replayed);
+        } catch (Exception e) {
+            log.warn("Failed to rebuild conversation index for user {}: {}", userId, e.getMessage());
+            invalidate(userId);
+        } finally {
+            try {
+                redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(lockKey), token);
+            } catch (Exception e) {
+                // The lock expires on its own
+                log.warn("Failed to unlock conversation index of user {}: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Apply the activity buffered while the index was cold, skipping what the snapshot already has
+     * <p>
+     * The index is loaded at this point, so nothing is buffered any more and later activity is
+     * applied directly. An entry counts as reflected once the snapshot's update time, at second
+     * precision, is not before the activity's: both the activity flush and the write-behind commit
+     * set the update time to the activity's time or later.
+     *
+     * @return Number of entries applied
+     */
+    private int replayBuffered(Long userId, List<Conversation> snapshot) {
+        @SuppressWarnings("unchecked")
+        List<String> entries = redisTemplate.execute(DRAIN_SCRIPT, Collections.singletonList(BUFFER_PREFIX + userId));
+        if (entries == null || entries.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, LocalDateTime> snapshotTimes = new HashMap<>();
+        for (Conversation conversation : snapshot) {
+            snapshotTimes.put(conversation.getId(), conversation.getUpdateTime());
+        }
+        int replayed = 0;
+        for (String entry : entries) {
+            ConversationActivity activity = JSON.parseObject(entry, ConversationActivity.class);
+            LocalDateTime stored = snapshotTimes.get(activity.getConversationId());
+            if (stored == null || activity.getUpdateTime() == null
+                    || !stored.isBefore(activity.getUpdateTime().truncatedTo(ChronoUnit.SECONDS))) {
+                // Already in the snapshot, or for a conversation outside the trimmed index
+                continue;
+            }
+            Long applied = applyActivity(userId, activity, activity.getUpdateTime());
+            if (applied != null && applied == 1) {
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    @Override
+    public void onCreated(Long userId, ConversationDto conversation) {
+        bumpVersion(userId);
+        if (!isReady(userId)) {
+            return;
+        }
+        try {
+            Conversation entity = new Conversation();
+            entity.setId(conversation.getId());
+            entity.setTitle(conversation.getTitle());
+            entity.setModelId(conversation.getModelId() != null ? Long.valueOf(conversation.getModelId()) : null);
+            entity.setStatus(conversation.getStatus());
+            entity.setMessageCount(0);
+            entity.setTotalTokens(0);
+            entity.setCreateTime(conversation.getCreateTime());
+            entity.setUpdateTime(conversation.getUpdateTime());
+            long ttlSeconds = ttlSeconds();
+
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                writeItem(stringConnection, userId, entity, ttlSeconds);
+                stringConnection.hIncrBy(META_PREFIX + userId, FIELD_TOTAL, 1);
+                stringConnection.expire(RECENT_PREFIX + userId, ttlSeconds);
+                return null;
+            });
+            trim(userId);
+        } catch (Exception e) {
+            log.warn("Failed to index new conversation {}: {}", conversation.getId(), e.getMessage());
+            invalidate(userId);
+        }
+    }
+
+    @Override
+    public void onActivity(Long userId, List<ConversationActivity> activities, LocalDateTime updateTime) {
+        bumpVersion(userId);
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            for (ConversationActivity activity : activities) {
+                Long applied = applyActivity(userId, activity, updateTime);
+                if (applied == null || applied == 0) {
+                    invalidate(userId);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to index activity for user {}: {}", userId, e.getMessage());
+            invalidate(userId);
+        }
+    }
+
+    /**
+     * Apply activity to the loaded index, or buffer it for the next rebuild while the index is cold
+     */
+    private Long applyActivity(Long userId, ConversationActivity activity, LocalDateTime updateTime) {
+        Long id = activity.getConversationId();
+        ConversationActivity buffered = new ConversationActivity();
+        buffered.setConversationId(id);
+        buffered.setMessageCount(activity.getMessageCount());
+        buffered.setTotalTokens(activity.getTotalTokens());
+        buffered.setLastMessagePreview(activity.getLastMessagePreview());
+        buffered.setLastSequence(activity.getLastSequence());
+        buffered.setUpdateTime(updateTime);
+        return redisTemplate.execute(ACTIVITY_SCRIPT,
+                Arrays.asList(RECENT_PREFIX + userId, ITEM_PREFIX + id, META_PREFIX + userId, BUFFER_PREFIX + userId),
+                String.valueOf(id),
+                String.valueOf(score(updateTime, id)),
+                updateTime.toString(),
+                String.valueOf(activity.getMessageCount()),
+                String.valueOf(activity.getTotalTokens()),
+                activity.getLastMessagePreview() != null ? activity.getLastMessagePreview() : "",
+                String.valueOf(ttlSeconds()),
+                JSON.toJSONString(buffered),
+                String.valueOf(conversationConfig.getRecentIndexBufferSeconds()),
+                String.valueOf(conversationConfig.getRecentIndexBufferSize()));
+    }
+
+    @Override
+    public void onRenamed(Long userId, Long conversationId, String title, LocalDateTime updateTime) {
+        bumpVersion(userId);
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Long applied = redisTemplate.execute(RENAME_SCRIPT, keys(userId, conversationId),
+                    String.valueOf(conversationId),
+                    String.valueOf(score(updateTime, conversationId)),
+                    title,
+                    updateTime.toString(),
+                    String.valueOf(ttlSeconds()));
+            if (applied == null || applied == 0) {
+                invalidate(userId);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to index title change of conversation {}: {}", conversationId, e.getMessage());
+            invalidate(userId);
+        }
+    }
+
+    @Override
+    public void onDeleted(Long userId, Long conversationId) {
+        bumpVersion(userId);
+        if (!isReady(userId)) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                stringConnection.zRem(RECENT_PREFIX + userId, String.valueOf(conversationId));
+                stringConnection.del(ITEM_PREFIX + conversationId);
+                stringConnection.hIncrBy(META_PREFIX + userId, FIELD_TOTAL, -1);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to remove conversation {} from index: {}", conversationId, e.getMessage());
+            invalidate(userId);
+        }
+    }
+
+    @Override
+    public void invalidate(Long userId) {
+        bumpVersion(userId);
+        try {
+            // Without the meta key the index counts as cold; leftover items are overwritten on rebuild
+            redisTemplate.delete(Arrays.asList(META_PREFIX + userId, RECENT_PREFIX + userId));
+        } catch (Exception e) {
+            log.warn("Failed to invalidate conversation index for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Change the user's list version now and, inside a transaction, again once it has completed, so a
+     * list read from MySQL before the commit is not validated by the new version
+     */
+    private void bumpVersion(Long userId) {
+        Runnable bump = () -> {
+            try {
+                redisTemplate.execute(VERSION_SCRIPT, Collections.singletonList(VERSION_PREFIX + userId), "1",
+                        String.valueOf(ttlSeconds()));
+            } catch (Exception e) {
+                log.warn("Failed to bump list version of user {}: {}", userId, e.getMessage());
+            }
+        };
+        bump.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    bump.run();
+                }
+            });
+        }
+    }
+
+    private boolean isEnabled() {
+        return Boolean.TRUE.equals(conversationConfig.getRecentIndexEnabled());
+    }
+
+    private boolean isReady(Long userId) {
+        if (!isEnabled()) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(META_PREFIX + userId));
+        } catch (Exception e) {
+            log.warn("Conversation index unavailable for user {}: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Read the list-view hashes of the given conversations in one pipelined round trip
+     */
+    private Optional<List<ConversationDto>> loadItems(Long userId, Set<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Optional.of(new ArrayList<>());
+        }
+
+        List<String> orderedIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Object> hashes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String id : orderedIds) {
+                stringConnection.hGetAll(ITEM_PREFIX + id);
+            }
+            return null;
+        });
+
+        List<ConversationDto> records = new ArrayList<>(orderedIds.size());
+        for (int i = 0; i < orderedIds.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> fields = (Map<String, String>) hashes.get(i);
+            if (fields == null || fields.isEmpty()) {
+                // Item expired or was never written; the index cannot be trusted
+                invalidate(userId);
+                return Optional.empty();
+            }
+            records.add(toDto(orderedIds.get(i), fields));
+        }
+        return Optional.of(records);
+    }
+
+    /**
+     * Drop the oldest entries once the index grows beyond its maximum size
+     */
+    private void trim(Long userId) {
+        int maxSize = conversationConfig.getRecentIndexMaxSize();
+        Long size = redisTemplate.opsForZSet().zCard(RECENT_PREFIX + userId);
+        if (size == null || size <= maxSize) {
+            return;
+        }
+
+        Set<String> oldest = redisTemplate.opsForZSet().range(RECENT_PREFIX + userId, 0, size - maxSize - 1);
+        if (oldest == null || oldest.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.zRem(RECENT_PREFIX + userId, oldest.toArray(new String[0]));
+            for (String id : oldest) {
+                stringConnection.del(ITEM_PREFIX + id);
+            }
+            stringConnection.hSet(META_PREFIX + userId, FIELD_COMPLETE, "0");
+            return null;
+        });
+    }
+
+    private void writeItem(StringRedisConnection connection, Long userId, Conversation conversation, long ttlSeconds) {
+        Map<String, String> fields = new HashMap<>();
+        putIfNotNull(fields, "title", conversation.getTitle());
+        putIfNotNull(fields, "modelId", conversation.getModelId());
+        putIfNotNull(fields, "status", conversation.getStatus());
+        putIfNotNull(fields, "lastMessagePreview", conversation.getLastMessagePreview());
+        putIfNotNull(fields, "messageCount", conversation.getMessageCount() != null ? conversation.getMessageCount() : 0);
+        putIfNotNull(fields, "totalTokens", conversation.getTotalTokens() != null ? conversation.getTotalTokens() : 0);
+        putIfNotNull(fields, "createTime", conversation.getCreateTime());
+        putIfNotNull(fields, "updateTime", conversation.getUpdateTime());
+
+        String id = String.valueOf(conversation.getId());
+        LocalDateTime updateTime = conversation.getUpdateTime() != null ? conversation.getUpdateTime() : LocalDateTime.now();
+        connection.zAdd(RECENT_PREFIX + userId, score(updateTime, conversation.getId()), id);
+        connection.del(ITEM_PREFIX + id);
+        connection.hMSet(ITEM_PREFIX + id, fields);
+        connection.expire(ITEM_PREFIX + id, ttlSeconds);
+    }
+
+    private static void putIfNotNull(Map<String, String> fields, String name, Object value) {
+        if (value != null) {
+            fields.put(name, value.toString());
+        }
+    }
+
+    private static ConversationDto toDto(String id, Map<String, String> fields) {
+        ConversationDto dto = new ConversationDto();
+        dto.setId(Long.valueOf(id));
+        dto.setTitle(fields.get("title"));
+        dto.setModelId(fields.get("modelId"));
+        dto.setStatus(fields.containsKey("status") ? Integer.valueOf(fields.get("status")) : null);
+        String preview = fields.get("lastMessagePreview");
+        dto.setLastMessagePreview(preview == null || preview.isEmpty() ? null : preview);
+        dto.setMessageCount(Integer.valueOf(fields.getOrDefault("messageCount", "0")));
+        dto.setTotalTokens(Integer.valueOf(fields.getOrDefault("totalTokens", "0")));
+        dto.setCreateTime(fields.containsKey("createTime") ? LocalDateTime.parse(fields.get("createTime")) : null);
+        dto.setUpdateTime(fields.containsKey("updateTime") ? LocalDateTime.parse(fields.get("updateTime")) : null);
+        dto.setMessages(new ArrayList<>());
+        return dto;
+    }
+
+    private static double score(LocalDateTime updateTime, Long id) {
+        return (double) (updateTime.toEpochSecond(ZoneOffset.UTC) * ID_DIGITS + id % ID_DIGITS);
+    }
+
+    private static List<String> keys(Long userId, Long conversationId) {
+        return Arrays.asList(RECENT_PREFIX + userId, ITEM_PREFIX + conversationId, META_PREFIX + userId);
+    }
+
+    private long ttlSeconds() {
+        return TimeUnit.HOURS.toSeconds(conversationConfig.getRecentIndexTtlHours());
+    }
+}
@@ -0,0 +1,271 @@
+package com.xingyang.chat.service.impl;
+
+import com.xingyang.chat.config.PurgeConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.mapper.ConversationMapper;
+import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.model.vo.PurgeResultVO;
+import com.xingyang.chat.service.ConversationArchiveService;
+import com.xingyang.chat.service.ConversationPurgeService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Conversation Purge Service Implementation
+ * <p>
+ * Walks the conversation table in fixed-width primary key ranges, so each scan reads a bounded
+ * number of rows, and picks the conversations deleted before the retention cutoff. Their messages
+ * are looked up and deleted by ID in small batches, then the conversations themselves. Every
+ * statement commits on its own and is followed by a pause at least as long as it took, which keeps
+ * row locks short and gives replicas time to apply the deletes. The scan position is kept in Redis,
+ * so a run stopped by its time budget is resumed by the next one.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class ConversationPurgeServiceImpl implements ConversationPurgeService {
+
+    private static final String LOCK_KEY = "chat:purge:lock";
+
+    /**
+     * Delete the lock only if it is still ours; a run outlasting it must not free another node's lock
+     */
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+
+    private static final String POSITION_KEY = "chat:purge:position";
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ConversationArchiveService conversationArchiveService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PurgeConfig purgeConfig;
+
+    private Counter purgedConversations;
+
+    private Counter purgedMessages;
+
+    private Timer statementLatency;
+
+    private final AtomicLong position = new AtomicLong();
+
+    private final AtomicLong maxId = new AtomicLong();
+
+    private ScheduledExecutorService purger;
+
+    @PostConstruct
+    public void init() {
+        purgedConversations = Counter.builder("chat.purge.conversations")
+                .description("Deleted conversations hard-deleted by the purge")
+                .register(meterRegistry);
+        purgedMessages = Counter.builder("chat.purge.messages")
+                .description("Messages hard-deleted by the purge")
+                .register(meterRegistry);
+        statementLatency = Timer.builder("chat.purge.statement.latency")
+                .description("Duration of purge delete statements")
+                .register(meterRegistry);
+        Gauge.builder("chat.purge.position", position, AtomicLong::get)
+                .description("Conversation ID the purge scan has reached")
+                .register(meterRegistry);
+        Gauge.builder("chat.purge.max.id", maxId, AtomicLong::get)
+                .description("Highest conversation ID when the current purge pass started")
+                .register(meterRegistry);
+
+        if (!Boolean.TRUE.equals(purgeConfig.getEnabled())) {
+            return;
+        }
+        purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-purger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = purgeConfig.getIntervalMinutes();
+        purger.scheduleWithFixedDelay(this::runScheduled, interval, interval, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (purger != null) {
+            purger.shutdownNow();
+        }
+    }
+
+    @Override
+    public PurgeResultVO purgeDeleted() {
+        long lockSeconds = TimeUnit.MINUTES.toSeconds(purgeConfig.getMaxRunMinutes() + 1);
+        String token = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, lockSeconds, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            throw new BusinessException("Conversation purge is already running");
+        }
+
+        try {
+            return purge();
+        } finally {
+            redisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(LOCK_KEY), token);
+        }
+    }
+
+    private PurgeResultVO purge() {
+        long start = System.currentTimeMillis();
+        long deadline = start + TimeUnit.MINUTES.toMillis(purgeConfig.getMaxRunMinutes());
+        LocalDateTime before = LocalDateTime.now().minusDays(purgeConfig.getRetentionDays());
+        int rangeSize = purgeConfig.getRangeSize();
+        int batchSize = purgeConfig.getBatchSize();
+
+        PurgeResultVO result = new PurgeResultVO();
+        Long highest = conversationMapper.selectMaxId();
+        long last = highest != null ? highest : 0;
+        long from = readPosition();
+        if (from > last) {
+            from = 0;
+        }
+        maxId.set(last);
+        result.setMaxId(last);
+        log.info("Starting conversation purge from ID {} up to {}, deleted before {}", from, last, before);
+
+        while (from <= last && System.currentTimeMillis() < deadline && !Thread.currentThread().isInterrupted()) {
+            long to = from + rangeSize;
+            List<Conversation> deleted = conversationMapper.findDeletedInRange(from, to, before);
+            for (int i = 0; i < deleted.size() && !Thread.currentThread().isInterrupted(); i += batchSize) {
+                purgeBatch(deleted.subList(i, Math.min(i + batchSize, deleted.size())), batchSize, result);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            from = to;
+            position.set(from);
+            writePosition(from);
+            log.debug("Conversation purge reached ID {} of {}: {}", from, last, result);
+        }
+
+        result.setComplete(from > last);
+        if (result.isComplete()) {
+            // The next run starts a new pass from the beginning
+            writePosition(0);
+        }
+        result.setScannedUpToId(from);
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("Conversation purge finished: {}", result);
+        return result;
+    }
+
+    /**
+     * Delete the messages of some conversations batch by batch, then the conversations and their archives
+     */
+    private void purgeBatch(List<Conversation> conversations, int batchSize, PurgeResultVO result) {
+        List<Long> conversationIds = conversations.stream()
+                .map(Conversation::getId)
+                .collect(Collectors.toList());
+
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Long> messageIds = chatMessageMapper.findIdsByConversationIds(conversationIds, batchSize);
+            if (messageIds.isEmpty()) {
+                break;
+            }
+            int rows = execute(() -> chatMessageMapper.deletePurged(messageIds), result);
+            result.setMessages(result.getMessages() + rows);
+            purgedMessages.increment(rows);
+            if (messageIds.size() < batchSize) {
+                break;
+            }
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+
+        int rows = execute(() -> conversationMapper.deletePurged(conversationIds), result);
+        result.setConversations(result.getConversations() + rows);
+        purgedConversations.increment(rows);
+
+        for (Conversation conversation : conversations) {
+            if (conversationArchiveService.isArchived(conversation)) {
+                conversationArchiveService.discard(conversation.getId());
+                result.setArchives(result.getArchives() + 1);
+            }
+        }
+    }
+
+    /**
+     * Run one delete statement, then pause at least as long as it took
+     */
+    private int execute(IntSupplier statement, PurgeResultVO result) {
+        long start = System.nanoTime();
+        int rows = statement.getAsInt();
+        long elapsed = System.nanoTime() - start;
+        statementLatency.record(elapsed, TimeUnit.NANOSECONDS);
+        result.setStatements(result.getStatements() + 1);
+
+        try {
+            Thread.sleep(purgeConfig.getPauseMillis() + TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return rows;
+    }
+
+    private long readPosition() {
+        try {
+            String value = redisTemplate.opsForValue().get(POSITION_KEY);
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (Exception e) {
+            log.warn("Failed to read purge position, starting over: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private void writePosition(long id) {
+        try {
+            redisTemplate.opsForValue().set(POSITION_KEY, String.valueOf(id));
+        } catch (Exception e) {
+            // Harmless: the ranges already purged are scanned again
+            log.warn("Failed to save purge position {}: {}", id, e.getMessage());
+        }
+    }
+
+    private void runScheduled() {
+        try {
+            purgeDeleted();
+        } catch (BusinessException e) {
+            log.debug("Skipping conversation purge: {}", e.getMessage());
+        } catch (Exception e) {
+            log.warn("Conversation purge run failed: {}", e.getMessage());
+        }
+    }
+}
@@ -3,25 +3,50 @@ package com.xingyang.chat.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.xingyang.chat.config.ConversationConfig;
+import com.xingyang.chat.convert.ChatMessageConverter;
+import com.xingyang.chat.convert.ConversationConverter;
 import com.xingyang.chat.exception.BusinessException;
-import com.xingyang.chat.mapper.ChatMessageMapper;
 import com.xingyang.chat.mapper.ConversationMapper;
 import com.xingyang.chat.model.dto.ChatMessageDto;
 import com.xingyang.chat.model.dto.ChatRequestDto;
+import com.xingyang.chat.model.dto.ConversationActivity;
 import com.xingyang.chat.model.dto.ConversationDto;
+import com.xingyang.chat.model.dto.ConversationListStamp;
 import com.xingyang.chat.model.entity.ChatMessage;
 import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.model.vo.CursorPage;
+import com.xingyang.chat.repository.MessageRepository;
+import com.xingyang.chat.service.ConversationActivityService;
+import com.xingyang.chat.service.ConversationAppendService;
+import com.xingyang.chat.service.ConversationArchiveService;
+import com.xingyang.chat.service.ConversationIndexService;
 import com.xingyang.chat.service.ConversationService;
+import com.xingyang.chat.service.MessageSequenceService;
+import com.xingyang.chat.util.MessagePath;
 import com.xingyang.chat.util.SecurityUtil;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.DigestUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -34,7 +59,31 @@ import java.util.stream.Collectors;
 public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Conversation> implements ConversationService {
 
     @Autowired
-    private ChatMessageMapper chatMessageMapper;
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageSequenceService messageSequenceService;
+
+    @Autowired
+    private ConversationConfig conversationConfig;
+
+    @Autowired
+    private ConversationIndexService conversationIndexService;
+
+    @Autowired
+    private ConversationArchiveService conversationArchiveService;
+
+    @Autowired
+    private ConversationActivityService conversationActivityService;
+
+    @Autowired
+    private ConversationAppendService conversationAppendService;
+
+    @Autowired
+    private ConversationConverter conversationConverter;
+
+    @Autowired
+    private ChatMessageConverter chatMessageConverter;
 
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -60,6 +109,8 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
         }
         
         conversation.setStatus(1); // Active
+        conversation.setMessageCount(0);
+        conversation.setTotalTokens(0);
         
         // Save the conversation
         log.info("Saving conversation entity: {}", conversation);
@@ -72,10 +123,11 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
         log.info("Conversation saved successfully with ID: {}", conversation.getId());
         
         // Convert to DTO
-        ConversationDto dto = new ConversationDto();
-        BeanUtils.copyProperties(conversation, dto);
-        dto.setModelId(conversation.getModelId() != null ? conversation.getModelId().toString() : modelId);
-        dto.setMessages(new ArrayList<>());
+        ConversationDto dto = conversationConverter.toDto(conversation);
+        if (dto.getModelId() == null) {
+            dto.setModelId(modelId);
+        }
+        conversationIndexService.onCreated(userId, dto);
         
         log.info("Returning conversation DTO: {}", dto);
         
@@ -83,6 +135,7 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
     }
 
     @Override
+    @Transactional(readOnly = true)
     public ConversationDto getConversationById(Long id) {
         Long userId = SecurityUtil.getCurrentUserId();
         if (userId == null) {
@@ -96,22 +149,18 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
         }
         
         // Convert to DTO
-        ConversationDto dto = new ConversationDto();
-        BeanUtils.copyProperties(conversation, dto);
-        if (conversation.getModelId() != null) {
-            dto.setModelId(conversation.getModelId().toString());
-        }
+        ConversationDto dto = conversationConverter.toDto(conversation);
         
-        // Get messages
-        List<ChatMessage> messages = chatMessageMapper.findByConversationId(id);
-        dto.setMessages(messages.stream()
-                .map(this::convertToChatMessageDto)
-                .collect(Collectors.toList()));
+        // Only the latest page; older messages are fetched with getMessagePage
+        CursorPage<ChatMessageDto> page = loadMessagePage(conversation, null, null, null);
+        dto.setMessages(page.getRecords());
+        dto.setHasMoreMessages(page.isHasMore());
         
         return dto;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<ConversationDto> getConversationsByUserId(Integer page, Integer size) {
         Long userId = SecurityUtil.getCurrentUserId();
         if (userId == null) {
@@ -120,6 +169,13 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
         
         log.info("Fetching conversations for user ID: {}, page: {}, size: {}", userId, page, size);
         
+        // Served from the Redis index in steady state
+        Optional<Page<ConversationDto>> indexed = conversationIndexService.findPage(userId, page, size);
+        if (indexed.isPresent()) {
+            return indexed.get();
+        }
+        conversationIndexService.rebuildAsync(userId);
+        
         // Set up pagination
         Page<Conversation> pageParam = new Page<>(page, size);
         
@@ -132,15 +188,8 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
                 userId);
         
         // Convert to DTOs
-        Page<ConversationDto> dtoPage = new Page<>();
-        BeanUtils.copyProperties(conversationPage, dtoPage, "records");
-        
-        // Convert records
-        List<ConversationDto> dtoList = conversationPage.getRecords().stream()
-                .map(this::convertToConversationDto)
-                .collect(Collectors.toList());
-        
-        dtoPage.setRecords(dtoList);
+        Page<ConversationDto> dtoPage = conversationConverter.toDtoPage(conversationPage);
+        dtoPage.setRecords(withPendingActivity(userId, dtoPage.getRecords(), page == 1, null, null));
         
         log.debug("Returning page of conversations: current={}, size={}, total={}, records={}",
                 dtoPage.getCurrent(), dtoPage.getSize(), dtoPage.getTotal(), dtoPage.getRecords().size());
@@ -157,6 +206,59 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
         return dtoPage;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<ConversationDto> getConversationPage(String cursor, Integer limit) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
+        }
+        
+        int pageSize = limit == null || limit <= 0
+                ? conversationConfig.getConversationPageSize()
+                : Math.min(limit, conversationConfig.getMaxConversationPageSize());
+        
+        LocalDateTime afterTime = null;
+        Long afterId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+                afterTime = LocalDateTime.parse(parts[0]);
+                afterId = Long.valueOf(parts[1]);
+            } catch (RuntimeException e) {
+                throw new BusinessException("Invalid cursor");
+            }
+        }
+        
+        // One extra row tells whether there is a next page, no COUNT needed
+        Optional<List<ConversationDto>> indexed = conversationIndexService.findPageAfter(userId, afterTime, afterId,
+                pageSize);
+        List<ConversationDto> records;
+        if (indexed.isPresent()) {
+            records = indexed.get();
+        } else {
+            conversationIndexService.rebuildAsync(userId);
+            records = withPendingActivity(userId,
+                    baseMapper.findPageByUserId(userId, afterTime, afterId, pageSize + 1).stream()
+                            .map(conversationConverter::toDto)
+                            .collect(Collectors.toList()),
+                    afterTime == null, afterTime, afterId);
+        }
+        
+        boolean hasMore = records.size() > pageSize;
+        if (hasMore) {
+            records = new ArrayList<>(records.subList(0, pageSize));
+        }
+        
+        String nextCursor = null;
+        if (hasMore) {
+            ConversationDto last = records.get(records.size() - 1);
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    (last.getUpdateTime() + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+        }
+        return new CursorPage<>(records, nextCursor, hasMore);
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public ConversationDto updateConversationTitle(Long id, String title) {
@@ -177,6 +279,7 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
         if (!updated) {
             throw new BusinessException("Failed to update conversation title");
         }
+        conversationIndexService.onRenamed(userId, id, title, conversation.getUpdateTime());
         
         // Return updated conversation
         return getConversationById(id);
@@ -196,8 +299,12 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
             throw new BusinessException("Conversation not found or access denied");
         }
         
-        // Delete conversation (logical delete)
-        return this.removeById(id);
+        // Logical delete; the purge job removes the rows once the retention period has passed
+        boolean removed = baseMapper.markDeleted(id, LocalDateTime.now()) > 0;
+        if (removed) {
+            conversationIndexService.onDeleted(userId, id);
+        }
+        return removed;
     }
 
     @Override
@@ -208,41 +315,122 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
             throw new BusinessException("User not authenticated");
         }
         
-        // Validate conversation
-        Conversation conversation = this.getById(conversationId);
-        if (conversation == null || !conversation.getUserId().equals(userId)) {
-            throw new BusinessException("Conversation not found or access denied");
+        return withConversation(conversationId, userId,
+                conversation -> appendMessage(conversation, null, role, content, userId));
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public ChatMessageDto forkMessage(Long conversationId, Integer parentSequence, String role, String content) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
         }
         
-        // Get next sequence number
-        Integer sequence = chatMessageMapper.getMaxSequence(conversationId) + 1;
+        return withConversation(conversationId, userId, conversation ->
+                appendMessage(conversation, parentSequence != null ? parentSequence : 0, role, content, userId));
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public ConversationDto switchBranch(Long conversationId, Integer sequence) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
+        }
         
-        // Create message
-        ChatMessage message = new ChatMessage();
-        message.setConversationId(conversationId);
-        message.setRole(role);
-        message.setContent(content);
-        message.setSequence(sequence);
-        message.setTokenCount(estimateTokenCount(content));
+        // Held like an append, so a concurrent append neither misses the switch nor is hidden by it
+        withConversation(conversationId, userId, conversation -> {
+            Map<Integer, Integer> tree = messageRepository.findTree(conversation);
+            if (!tree.containsKey(sequence)) {
+                throw new BusinessException("Message not found");
+            }
+            
+            // Descendants have higher sequences, so one pass in sequence order collects the subtree
+            Set<Integer> subtree = new HashSet<>();
+            subtree.add(sequence);
+            int leaf = sequence;
+            int latest = 0;
+            for (Map.Entry<Integer, Integer> entry : tree.entrySet()) {
+                latest = entry.getKey();
+                if (entry.getKey() > sequence && subtree.contains(entry.getValue())) {
+                    subtree.add(entry.getKey());
+                    leaf = entry.getKey();
+                }
+            }
+            
+            Integer activeSequence = leaf == latest ? null : leaf;
+            if (!Objects.equals(activeSequence, conversation.getActiveSequence())) {
+                baseMapper.updateActiveSequence(conversationId, activeSequence);
+            }
+            log.debug("Switched conversation {} to the branch ending at message {}", conversationId, leaf);
+            return null;
+        });
         
-        if (conversation.getModelId() != null) {
-            message.setModelId(conversation.getModelId().toString());
+        return getConversationById(conversationId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ChatMessageDto> getBranches(Long conversationId, Integer sequence) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
         }
         
-        // Save message
-        boolean saved = chatMessageMapper.insert(message) > 0;
-        if (!saved) {
-            throw new BusinessException("Failed to add message");
+        Conversation conversation = this.getById(conversationId);
+        if (conversation == null || !conversation.getUserId().equals(userId)) {
+            throw new BusinessException("Conversation not found or access denied");
+        }
+        
+        Map<Integer, Integer> tree = messageRepository.findTree(conversation);
+        Integer parent = tree.get(sequence);
+        if (parent == null) {
+            throw new BusinessException("Message not found");
+        }
+        List<Integer> siblings = tree.entrySet().stream()
+                .filter(entry -> parent.equals(entry.getValue()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        return chatMessageConverter.toDtoList(messageRepository.findBySequences(conversation, siblings));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ChatMessageDto> getPromptMessages(ChatRequestDto request) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
         }
         
-        // Update conversation last update time
-        this.updateById(conversation);
+        Conversation conversation = this.getById(request.getConversationId());
+        if (conversation == null || !conversation.getUserId().equals(userId)) {
+            throw new BusinessException("Conversation not found or access denied");
+        }
         
-        // Convert to DTO and return
-        return convertToChatMessageDto(message);
+        List<ChatMessageDto> requestMessages = request.getMessages() != null ? request.getMessages() : new ArrayList<>();
+        List<ChatMessageDto> prompt = requestMessages.stream()
+                .takeWhile(message -> "system".equals(message.getRole()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        
+        Integer parentSequence = request.getParentSequence();
+        ChatMessage parent = findParent(conversation, parentSequence);
+        MessagePath path = parentSequence == null
+                ? messageRepository.findActivePath(conversation)
+                : parent != null ? MessagePath.of(parent) : MessagePath.root();
+        prompt.addAll(chatMessageConverter.toDtoList(messageRepository.findBranch(conversation, path)));
+        
+        if (parent == null || !"user".equals(parent.getRole())) {
+            requestMessages.stream()
+                    .filter(message -> "user".equals(message.getRole()))
+                    .reduce((first, second) -> second)
+                    .ifPresent(prompt::add);
+        }
+        return prompt;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<ChatMessageDto> getMessagesByConversationId(Long conversationId) {
         Long userId = SecurityUtil.getCurrentUserId();
         if (userId == null) {
@@ -264,14 +452,15 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
             throw new BusinessException("Access denied");
         }
         
-        // Get messages
-        List<ChatMessage> messages = chatMessageMapper.findByConversationId(conversationId);
+        // Get the messages of the active branch
+        List<ChatMessage> messages = messageRepository.findBranch(conversation,
+                messageRepository.findActivePath(conversation));
         
         log.info("Found {} messages for conversation ID: {}", messages.size(), conversationId);
         
         // Convert to DTOs
         List<ChatMessageDto> messageDtos = messages.stream()
-                .map(this::convertToChatMessageDto)
+                .map(chatMessageConverter::toDto)
                 .collect(Collectors.toList());
         
         if (messageDtos.isEmpty()) {
@@ -287,55 +476,312 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
         return messageDtos;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<ChatMessageDto> getMessagePage(Long conversationId, Integer before, Integer after, Integer limit) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
+        }
+        
+        // Validate conversation
+        Conversation conversation = this.getById(conversationId);
+        if (conversation == null || !conversation.getUserId().equals(userId)) {
+            throw new BusinessException("Conversation not found or access denied");
+        }
+        
+        return loadMessagePage(conversation, before, after, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String getConversationListTag(String variant) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
+        }
+        
+        Optional<String> version = conversationIndexService.getListVersion(userId);
+        if (version.isPresent()) {
+            return entityTag("list", userId, version.get(), variant);
+        }
+        
+        // Activity not flushed yet is already visible in the list
+        ConversationListStamp stamp = baseMapper.selectListStamp(userId);
+        LocalDateTime updateTime = stamp.getUpdateTime();
+        for (ConversationActivity activity : conversationActivityService.getPending(userId).values()) {
+            if (updateTime == null || activity.getUpdateTime().isAfter(updateTime)) {
+                updateTime = activity.getUpdateTime();
+            }
+        }
+        return entityTag("list", userId, stamp.getConversationCount(), updateTime, stamp.getVersionSum(), variant);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String getMessagesTag(Long conversationId, String variant) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
+        }
+        
+        Conversation conversation = this.getById(conversationId);
+        if (conversation == null || !conversation.getUserId().equals(userId)) {
+            throw new BusinessException("Conversation not found or access denied");
+        }
+        
+        return entityTag("messages", conversationId, conversation.getStatus(), conversation.getActiveSequence(),
+                messageRepository.findMaxSequence(conversation), variant);
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
-    public ConversationDto saveChat(Long conversationId, ChatRequestDto request, String response) {
-        // Add user message
+    public List<ChatMessageDto> saveChat(Long conversationId, ChatRequestDto request, String response) {
+        // Find the last user message
+        String question = null;
         if (request.getMessages() != null && !request.getMessages().isEmpty()) {
-            // Find the last user message
-            ChatMessageDto lastUserMessage = request.getMessages().stream()
+            question = request.getMessages().stream()
                     .filter(msg -> "user".equals(msg.getRole()))
                     .reduce((first, second) -> second)
+                    .map(ChatMessageDto::getContent)
                     .orElse(null);
+        }
+        
+        return saveTurn(conversationId, request.getParentSequence(), question, response);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<ChatMessageDto> saveTurn(Long conversationId, String question, String answer) {
+        return saveTurn(conversationId, null, question, answer);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<ChatMessageDto> saveTurn(Long conversationId, Integer parentSequence, String question, String answer) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
+        }
+        
+        // Validate conversation once for the whole turn
+        return withConversation(conversationId, userId, conversation -> {
+            restoreIfArchived(conversation);
             
-            if (lastUserMessage != null) {
-                addMessage(conversationId, "user", lastUserMessage.getContent());
+            // A turn continuing from a question is a regenerated answer to it
+            ChatMessage parent = findParent(conversation, parentSequence);
+            String modelId = conversation.getModelId() != null ? conversation.getModelId().toString() : null;
+            LocalDateTime now = LocalDateTime.now();
+            
+            List<ChatMessage> messages = new ArrayList<>(2);
+            if (question != null && (parent == null || !"user".equals(parent.getRole()))) {
+                messages.add(buildMessage(conversationId, "user", question, modelId, userId, now));
             }
+            messages.add(buildMessage(conversationId, "assistant", answer, modelId, userId, now));
+            
+            appendToBranch(conversation, parentSequence, parent, messages, userId, now);
+            
+            return messages.stream()
+                    .map(chatMessageConverter::toDto)
+                    .collect(Collectors.toList());
+        });
+    }
+    
+    /**
+     * Run an append or branch switch holding the conversation
+     * <p>
+     * The conversation is read only once it is held. That read is the first of the transaction, so
+     * its snapshot includes everything the previous holder committed, the active branch included.
+     */
+    private <T> T withConversation(Long conversationId, Long userId, Function<Conversation, T> action) {
+        return conversationAppendService.runExclusive(conversationId, () -> {
+            Conversation conversation = this.getById(conversationId);
+            if (conversation == null || !conversation.getUserId().equals(userId)) {
+                throw new BusinessException("Conversation not found or access denied");
+            }
+            return action.apply(conversation);
+        });
+    }
+    
+    /**
+     * Add one message as a child of the given parent, or of the active branch's last message
+     */
+    private ChatMessageDto appendMessage(Conversation conversation, Integer parentSequence, String role,
+                                         String content, Long userId) {
+        restoreIfArchived(conversation);
+        
+        ChatMessage parent = findParent(conversation, parentSequence);
+        String modelId = conversation.getModelId() != null ? conversation.getModelId().toString() : null;
+        LocalDateTime now = LocalDateTime.now();
+        ChatMessage message = buildMessage(conversation.getId(), role, content, modelId, userId, now);
+        
+        appendToBranch(conversation, parentSequence, parent, Collections.singletonList(message), userId, now);
+        
+        return chatMessageConverter.toDto(message);
+    }
+    
+    /**
+     * Find the message a new message is added under
+     *
+     * @param parentSequence Sequence of the parent, null for the active branch and 0 for the root
+     * @return Parent message, null for the active branch or the root
+     */
+    private ChatMessage findParent(Conversation conversation, Integer parentSequence) {
+        if (parentSequence == null || parentSequence == 0) {
+            return null;
         }
         
-        // Add assistant response
-        addMessage(conversationId, "assistant", response);
+        List<ChatMessage> found = messageRepository.findBySequences(conversation,
+                Collections.singletonList(parentSequence));
+        if (found.isEmpty()) {
+            throw new BusinessException("Message not found");
+        }
+        return found.get(0);
+    }
+    
+    /**
+     * Number new messages, chain them below their parent and append them
+     * <p>
+     * Callers hold the conversation through {@link #withConversation}: the active branch read here
+     * must include the previous append, and sequences must grow along every path. New messages take the highest sequences, so
+     * they are the latest message, which is what an unset active sequence stands for; the active
+     * sequence only has to be cleared if it was set.
+     */
+    private void appendToBranch(Conversation conversation, Integer parentSequence, ChatMessage parent,
+                                List<ChatMessage> messages, Long userId, LocalDateTime now) {
+        // Allocate the sequence numbers of all messages at once
+        int sequence = messageSequenceService.allocate(conversation.getId(), messages.size());
+        MessagePath path = parentSequence == null
+                ? messageRepository.findActivePath(conversation)
+                : parent != null ? MessagePath.of(parent) : MessagePath.root();
+        for (ChatMessage message : messages) {
+            message.setSequence(sequence++);
+            message.setParentSequence(path.leaf());
+            path = path.child(message.getSequence());
+            message.setPath(path.toString());
+        }
         
-        // Return updated conversation
-        return getConversationById(conversationId);
+        messageRepository.append(userId, messages, now);
+        
+        if (conversation.getActiveSequence() != null) {
+            baseMapper.updateActiveSequence(conversation.getId(), null);
+            conversation.setActiveSequence(null);
+        }
     }
     
     /**
-     * Convert entity to DTO
+     * Move an archived conversation back into MySQL before new messages are added
      */
-    private ConversationDto convertToConversationDto(Conversation conversation) {
-        ConversationDto dto = new ConversationDto();
-        BeanUtils.copyProperties(conversation, dto);
+    private void restoreIfArchived(Conversation conversation) {
+        if (conversationArchiveService.isArchived(conversation)) {
+            conversationArchiveService.restore(conversation);
+        }
+    }
+    
+    /**
+     * Load one page of messages by keyset on the sequence, fetching one extra row to detect more
+     */
+    private CursorPage<ChatMessageDto> loadMessagePage(Conversation conversation, Integer before, Integer after,
+                                                       Integer limit) {
+        int pageSize = limit == null || limit <= 0
+                ? conversationConfig.getMessagePageSize()
+                : Math.min(limit, conversationConfig.getMaxMessagePageSize());
+        
+        boolean forward = after != null;
+        MessagePath path = messageRepository.findActivePath(conversation);
+        List<ChatMessage> messages = messageRepository.findPage(conversation, path, before, after, pageSize + 1);
+        
+        boolean hasMore = messages.size() > pageSize;
+        List<ChatMessage> page = new ArrayList<>(messages.subList(0, Math.min(pageSize, messages.size())));
+        if (!forward) {
+            Collections.reverse(page);
+        }
         
-        if (conversation.getModelId() != null) {
-            dto.setModelId(conversation.getModelId().toString());
+        // Paging backwards continues from the oldest message, forwards from the newest
+        String nextCursor = null;
+        if (hasMore) {
+            nextCursor = String.valueOf(forward
+                    ? page.get(page.size() - 1).getSequence()
+                    : page.get(0).getSequence());
         }
         
-        // Don't load messages for list view
-        dto.setMessages(new ArrayList<>());
+        List<ChatMessageDto> records = page.stream()
+                .map(chatMessageConverter::toDto)
+                .collect(Collectors.toList());
+        return new CursorPage<>(records, nextCursor, hasMore);
+    }
+    
+    /**
+     * Build a message entity with the audit fields set, for batch insertion; the sequence is set on append
+     */
+    private ChatMessage buildMessage(Long conversationId, String role, String content, String modelId, Long userId,
+                                     LocalDateTime now) {
+        ChatMessage message = new ChatMessage();
+        message.setConversationId(conversationId);
+        message.setRole(role);
+        message.setContent(content);
+        message.setTokenCount(estimateTokenCount(content));
+        message.setModelId(modelId);
+        message.setCreateTime(now);
+        message.setUpdateTime(now);
+        message.setCreateBy(userId);
+        message.setUpdateBy(userId);
+        return message;
+    }
+    
+    /**
+     * Apply the user's activity not yet flushed to a page read from the database, so the writer sees
+     * their conversations in the right order. Only the update time and preview are applied, since
+     * they are the same whether or not a flush happened in between; the counters catch up on the flush.
+     *
+     * @param records Page in update time order, at most one extra row
+     * @param firstPage Whether conversations that moved up may be pulled onto this page
+     * @param afterTime Cursor time of this page, conversations that moved above it are dropped
+     * @param afterId Cursor ID of this page
+     */
+    private List<ConversationDto> withPendingActivity(Long userId, List<ConversationDto> records, boolean firstPage,
+                                                      LocalDateTime afterTime, Long afterId) {
+        Map<Long, ConversationActivity> pending = conversationActivityService.getPending(userId);
+        if (pending.isEmpty()) {
+            return records;
+        }
         
-        return dto;
+        Map<Long, ConversationDto> byId = new LinkedHashMap<>();
+        records.forEach(dto -> byId.put(dto.getId(), dto));
+        List<Long> missing = pending.keySet().stream()
+                .filter(id -> !byId.containsKey(id))
+                .collect(Collectors.toList());
+        if (firstPage && !missing.isEmpty()) {
+            baseMapper.selectBatchIds(missing).stream()
+                    .filter(conversation -> userId.equals(conversation.getUserId()))
+                    .forEach(conversation -> byId.put(conversation.getId(), conversationConverter.toDto(conversation)));
+        }
+        
+        List<ConversationDto> merged = new ArrayList<>(byId.size());
+        for (ConversationDto dto : byId.values()) {
+            ConversationActivity activity = pending.get(dto.getId());
+            if (activity != null && activity.getUpdateTime().isAfter(dto.getUpdateTime())) {
+                dto.setUpdateTime(activity.getUpdateTime());
+                dto.setLastMessagePreview(activity.getLastMessagePreview());
+                if (afterTime != null && (dto.getUpdateTime().isAfter(afterTime)
+                        || dto.getUpdateTime().isEqual(afterTime) && dto.getId() > afterId)) {
+                    continue;
+                }
+            }
+            merged.add(dto);
+        }
+        merged.sort(Comparator.comparing(ConversationDto::getUpdateTime)
+                .thenComparing(ConversationDto::getId)
+                .reversed());
+        return merged.size() > records.size() ? new ArrayList<>(merged.subList(0, records.size())) : merged;
     }
     
     /**
-     * Convert message entity to DTO
+     * Strong entity tag hashed from version stamps
      */
-    private ChatMessageDto convertToChatMessageDto(ChatMessage message) {
-        ChatMessageDto dto = new ChatMessageDto();
-        dto.setRole(message.getRole());
-        dto.setContent(message.getContent());
-        dto.setTimestamp(message.getCreateTime().toEpochSecond(java.time.ZoneOffset.UTC) * 1000);
-        return dto;
+    private static String entityTag(Object... parts) {
+        String joined = Arrays.stream(parts).map(String::valueOf).collect(Collectors.joining("|"));
+        return "\"" + DigestUtils.md5DigestAsHex(joined.getBytes(StandardCharsets.UTF_8)) + "\"";
     }
     
     /**
@@ -0,0 +1,553 @@
+package com.xingyang.chat.service.impl;
+
+import com.xingyang.chat.config.SearchConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.mapper.ConversationMapper;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.model.vo.SearchHitVO;
+import com.xingyang.chat.service.ConversationArchiveService;
+import com.xingyang.chat.service.MessageSearchService;
+import com.xingyang.chat.util.InvertedIndex;
+import com.xingyang.chat.util.SearchTokenizer;
+import com.xingyang.chat.util.SecurityUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Message Search Service Implementation
+ * <p>
+ * Each user has an {@link InvertedIndex} over their messages. Indexes are kept in an LRU, updated
+ * in place when messages are appended on this node. In the background, messages added since the last
+ * write are appended to Redis as a segment of term frequencies; the whole index is written only after
+ * a build or once enough segments have piled up. A missing index is read from Redis as the last full
+ * write plus its segments, or built by streaming the user's messages. An index older than the refresh
+ * interval catches up on messages created since it was last brought up to date, with some overlap,
+ * which also covers messages appended through other nodes.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class MessageSearchServiceImpl implements MessageSearchService {
+
+    private static final String INDEX_PREFIX = "chat:search:idx:";
+
+    private static final String SEGMENT_PREFIX = "chat:search:seg:";
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private ConversationArchiveService conversationArchiveService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private SearchConfig searchConfig;
+
+    /**
+     * Indexes in memory, least recently used first
+     */
+    private Map<Long, UserIndex> indexes;
+
+    /**
+     * Users whose index changed since it was last written to Redis
+     */
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Serialize loading and catching up per user without one global lock
+     */
+    private final Object[] locks = new Object[64];
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        int maxUsers = searchConfig.getMaxUsers();
+        indexes = Collections.synchronizedMap(new LinkedHashMap<Long, UserIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, UserIndex> eldest) {
+                return size() > maxUsers;
+            }
+        });
+
+        if (!isEnabled()) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-index-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = searchConfig.getFlushIntervalSeconds();
+        flusher.scheduleWithFixedDelay(this::flushDirty, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flushDirty();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SearchHitVO> search(String query, Integer limit) {
+        Long userId = SecurityUtil.getCurrentUserId();
+        if (userId == null) {
+            throw new BusinessException("User not authenticated");
+        }
+        if (!isEnabled()) {
+            throw new BusinessException("Search is disabled");
+        }
+        if (query == null || query.trim().isEmpty()) {
+            throw new BusinessException("Query is required");
+        }
+
+        String text = query.trim();
+        if (text.length() > searchConfig.getMaxQueryLength()) {
+            text = text.substring(0, searchConfig.getMaxQueryLength());
+        }
+        int size = limit == null || limit <= 0
+                ? searchConfig.getDefaultLimit()
+                : Math.min(limit, searchConfig.getMaxLimit());
+
+        // Deleted conversations stay in the index; fetch some extra hits to fill the page anyway
+        List<InvertedIndex.Hit> hits = acquire(userId).index.search(text, size * 2);
+        if (hits.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Conversation> conversations = conversationMapper.selectBatchIds(hits.stream()
+                        .map(InvertedIndex.Hit::getConversationId)
+                        .collect(Collectors.toSet())).stream()
+                .filter(conversation -> userId.equals(conversation.getUserId()))
+                .collect(Collectors.toMap(Conversation::getId, Function.identity()));
+        List<ChatMessage> keys = hits.stream()
+                .filter(hit -> conversations.containsKey(hit.getConversationId()))
+                .map(hit -> messageKey(hit.getConversationId(), hit.getSequence()))
+                .collect(Collectors.toList());
+        Map<String, ChatMessage> messages = new HashMap<>();
+        if (!keys.isEmpty()) {
+            chatMessageMapper.findBySequences(keys)
+                    .forEach(message -> messages.put(message.getConversationId() + ":" + message.getSequence(), message));
+        }
+
+        List<SearchHitVO> results = new ArrayList<>();
+        for (InvertedIndex.Hit hit : hits) {
+            Conversation conversation = conversations.get(hit.getConversationId());
+            if (conversation == null) {
+                continue;
+            }
+            ChatMessage message = messages.get(hit.getConversationId() + ":" + hit.getSequence());
+            if (message == null && conversationArchiveService.isArchived(conversation)) {
+                message = conversationArchiveService.getArchivedMessages(conversation).stream()
+                        .filter(archived -> archived.getSequence() == hit.getSequence())
+                        .findFirst()
+                        .orElse(null);
+            }
+            if (message == null || message.getContent() == null) {
+                continue;
+            }
+
+            SearchHitVO result = new SearchHitVO();
+            result.setConversationId(conversation.getId());
+            result.setTitle(conversation.getTitle());
+            result.setUpdateTime(conversation.getUpdateTime());
+            result.setSequence(hit.getSequence());
+            result.setRole(message.getRole());
+            result.setSnippet(snippet(message.getContent(), text));
+            result.setScore(hit.getScore());
+            results.add(result);
+            if (results.size() == size) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void onAppended(Long userId, List<ChatMessage> messages) {
+        if (!isEnabled() || userId == null || messages.isEmpty()) {
+            return;
+        }
+
+        Runnable update = () -> {
+            UserIndex entry = indexes.get(userId);
+            if (entry == null) {
+                return;
+            }
+            for (ChatMessage message : messages) {
+                entry.add(message);
+            }
+            dirty.add(userId);
+        };
+        // Messages of a rolled back turn must not become searchable
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    update.run();
+                }
+            });
+        } else {
+            update.run();
+        }
+    }
+
+    @Override
+    public void invalidate(Long userId) {
+        indexes.remove(userId);
+        dirty.remove(userId);
+        try {
+            redisTemplate.delete(Arrays.asList(INDEX_PREFIX + userId, SEGMENT_PREFIX + userId));
+        } catch (Exception e) {
+            log.warn("Failed to drop search index of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private boolean isEnabled() {
+        return Boolean.TRUE.equals(searchConfig.getEnabled());
+    }
+
+    /**
+     * Get the user's index, loading or building it if needed and catching up when it is due
+     */
+    private UserIndex acquire(Long userId) {
+        long now = System.currentTimeMillis();
+        long refreshMillis = TimeUnit.SECONDS.toMillis(searchConfig.getRefreshSeconds());
+        UserIndex entry = indexes.get(userId);
+        if (entry != null && now - entry.checkedAt < refreshMillis) {
+            return entry;
+        }
+
+        synchronized (locks[(int) (userId % locks.length)]) {
+            entry = indexes.get(userId);
+            if (entry == null) {
+                entry = load(userId);
+                if (entry == null) {
+                    entry = build(userId);
+                }
+                indexes.put(userId, entry);
+            }
+            if (now - entry.checkedAt >= refreshMillis) {
+                catchUp(userId, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Build a user's index from all stored and archived messages
+     */
+    private UserIndex build(Long userId) {
+        long start = System.currentTimeMillis();
+        UserIndex entry = new UserIndex(new InvertedIndex(), LocalDateTime.now());
+        entry.snapshotNeeded = true;
+
+        try (Cursor<Conversation> cursor = conversationMapper.streamByUserId(userId)) {
+            for (Conversation conversation : cursor) {
+                if (conversationArchiveService.isArchived(conversation)) {
+                    for (ChatMessage message : conversationArchiveService.getArchivedMessages(conversation)) {
+                        entry.add(message);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        addStored(userId, null, entry);
+
+        entry.checkedAt = System.currentTimeMillis();
+        dirty.add(userId);
+        log.info("Built search index of user {} with {} messages in {} ms", userId, entry.index.size(),
+                System.currentTimeMillis() - start);
+        return entry;
+    }
+
+    /**
+     * Add messages created since the index was last brought up to date
+     */
+    private void catchUp(Long userId, UserIndex entry) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime since = entry.indexedUntil.minusMinutes(searchConfig.getCatchUpMarginMinutes());
+        int added = addStored(userId, since, entry);
+        entry.indexedUntil = startedAt;
+        entry.checkedAt = System.currentTimeMillis();
+        if (added > 0) {
+            dirty.add(userId);
+            log.debug("Search index of user {} caught up on {} messages", userId, added);
+        }
+    }
+
+    private int addStored(Long userId, LocalDateTime since, UserIndex entry) {
+        int added = 0;
+        try (Cursor<ChatMessage> cursor = chatMessageMapper.streamForSearch(userId, since)) {
+            for (ChatMessage message : cursor) {
+                if (entry.add(message)) {
+                    added++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return added;
+    }
+
+    /**
+     * Read a persisted index and its segments from Redis, null if there is none or it cannot be read
+     */
+    private UserIndex load(Long userId) {
+        try {
+            byte[] key = (INDEX_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+            byte[] segmentKey = (SEGMENT_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+            byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.stringCommands().get(key));
+            if (value == null) {
+                // Segments left without their index are dropped by the next full write
+                return null;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+            long indexedUntil = in.readLong();
+            InvertedIndex index = InvertedIndex.readFrom(in);
+
+            List<byte[]> segments = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                    connection.listCommands().lRange(segmentKey, 0, -1));
+            for (byte[] segment : segments != null ? segments : Collections.<byte[]>emptyList()) {
+                DataInputStream segmentIn = new DataInputStream(new ByteArrayInputStream(segment));
+                // Each writer had its whole index persisted, so the union is up to date as far as the latest writer
+                indexedUntil = Math.max(indexedUntil, segmentIn.readLong());
+                int documents = segmentIn.readInt();
+                for (int i = 0; i < documents; i++) {
+                    index.readDocument(segmentIn);
+                }
+            }
+            // Never checked on this node, so the first search catches up
+            return new UserIndex(index, LocalDateTime.ofInstant(Instant.ofEpochMilli(indexedUntil),
+                    ZoneId.systemDefault()));
+        } catch (Exception e) {
+            log.warn("Failed to load search index of user {}, rebuilding: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write changed indexes to Redis, as a segment of the messages added since the last write where possible
+     */
+    private void flushDirty() {
+        long ttlSeconds = TimeUnit.HOURS.toSeconds(searchConfig.getTtlHours());
+        for (Long userId : new ArrayList<>(dirty)) {
+            dirty.remove(userId);
+            UserIndex entry = indexes.get(userId);
+            if (entry == null) {
+                continue;
+            }
+            try {
+                if (entry.snapshotNeeded || !appendSegment(userId, entry, ttlSeconds)) {
+                    writeSnapshot(userId, entry, ttlSeconds);
+                }
+            } catch (Exception e) {
+                // Harmless: the index is rebuilt or caught up from MySQL. A lost segment must not be
+                // skipped over by later ones, so the next write is a full one.
+                entry.snapshotNeeded = true;
+                log.warn("Failed to persist search index of user {}: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Append the messages added since the last write as a segment
+     *
+     * @return false if the index has to be written in full instead
+     */
+    private boolean appendSegment(Long userId, UserIndex entry, long ttlSeconds) {
+        List<ChatMessage> added = entry.drainUnsaved();
+        if (added.isEmpty()) {
+            return true;
+        }
+
+        byte[] key = (INDEX_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+        byte[] segmentKey = (SEGMENT_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+        byte[] segment = serializeSegment(entry, added);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.listCommands().rPush(segmentKey, segment);
+            connection.keyCommands().expire(segmentKey, ttlSeconds);
+            connection.keyCommands().expire(key, ttlSeconds);
+            return null;
+        });
+        // The index expired or was dropped, so the segments no longer have anything to apply to
+        if (!Boolean.TRUE.equals(results.get(2))) {
+            return false;
+        }
+        Long segments = (Long) results.get(0);
+        return segments == null || segments <= searchConfig.getCompactSegments();
+    }
+
+    /**
+     * Write the whole index and drop the segments it replaces
+     * <p>
+     * Segments appended by other nodes meanwhile are dropped as well; their messages are found again
+     * by catching up from MySQL like any other node's appends.
+     */
+    private void writeSnapshot(Long userId, UserIndex entry, long ttlSeconds) {
+        entry.snapshotNeeded = false;
+        entry.drainUnsaved();
+        byte[] key = (INDEX_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+        byte[] segmentKey = (SEGMENT_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+        byte[] value = serialize(entry);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().setEx(key, ttlSeconds, value);
+            connection.keyCommands().del(segmentKey);
+            return null;
+        });
+    }
+
+    private static byte[] serialize(UserIndex entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(entry.indexedUntil.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            entry.index.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] serializeSegment(UserIndex entry, List<ChatMessage> added) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(entry.indexedUntil.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            out.writeInt(added.size());
+            for (ChatMessage message : added) {
+                InvertedIndex.writeDocument(out, message.getConversationId(), message.getSequence(),
+                        message.getContent());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Excerpt of the content starting a little before the first query token found in it
+     */
+    private String snippet(String content, String query) {
+        String lower = content.toLowerCase();
+        int at = -1;
+        for (String token : SearchTokenizer.tokenize(query)) {
+            int index = lower.indexOf(token);
+            if (index >= 0 && (at < 0 || index < at)) {
+                at = index;
+            }
+        }
+
+        int length = searchConfig.getSnippetLength();
+        int start = at < 0 ? 0 : Math.min(Math.max(0, at - length / 4), content.length());
+        int end = Math.min(content.length(), start + length);
+        String excerpt = content.substring(start, end).replaceAll("\\s+", " ").trim();
+        return (start > 0 ? "..." : "") + excerpt + (end < content.length() ? "..." : "");
+    }
+
+    private static ChatMessage messageKey(long conversationId, int sequence) {
+        ChatMessage key = new ChatMessage();
+        key.setConversationId(conversationId);
+        key.setSequence(sequence);
+        return key;
+    }
+
+    /**
+     * A user's index and how far it is up to date
+     */
+    private static class UserIndex {
+
+        private final InvertedIndex index;
+
+        /**
+         * Messages created before this time are indexed
+         */
+        private volatile LocalDateTime indexedUntil;
+
+        /**
+         * When the index was last brought up to date on this node, in epoch milliseconds
+         */
+        private volatile long checkedAt;
+
+        /**
+         * Whether Redis lacks part of the index, so the next write has to be a full one
+         */
+        private volatile boolean snapshotNeeded;
+
+        /**
+         * Messages added since the index was last written to Redis
+         */
+        private List<ChatMessage> unsaved = new ArrayList<>();
+
+        private UserIndex(InvertedIndex index, LocalDateTime indexedUntil) {
+            this.index = index;
+            this.indexedUntil = indexedUntil;
+        }
+
+        private boolean add(ChatMessage message) {
+            if (!index.add(message.getConversationId(), message.getSequence(), message.getContent())) {
+                return false;
+            }
+            synchronized (this) {
+                unsaved.add(message);
+            }
+            return true;
+        }
+
+        private synchronized List<ChatMessage> drainUnsaved() {
+            List<ChatMessage> drained = unsaved;
+            unsaved = new ArrayList<>();
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.xingyang.chat.service.impl;
+
+import com.xingyang.chat.config.PersistenceConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.service.MessageSequenceService;
+import com.xingyang.chat.service.MessageWriteBehindService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message Sequence Allocation Service Implementation
+ * <p>
+ * Each conversation has a Redis counter; a block is reserved with a single INCRBY, so concurrent
+ * turns never share a sequence number and no database read is needed. A missing counter (new
+ * conversation, expired or lost key) is seeded once from the stored maximum with SET NX, which
+ * makes concurrent seeding safe. Counters expire after a period of inactivity.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class MessageSequenceServiceImpl implements MessageSequenceService {
+
+    private static final String SEQUENCE_PREFIX = "chat:seq:";
+
+    /**
+     * INCRBY only if the counter exists, otherwise return -1 so the caller can seed it
+     */
+    private static final DefaultRedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "local value = redis.call('INCRBY', KEYS[1], ARGV[1]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "return value",
+            Long.class);
+
+    /**
+     * Seed the counter unless another caller already did, then INCRBY
+     */
+    private static final DefaultRedisScript<Long> SEED_AND_INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('SET', KEYS[1], ARGV[1], 'NX') " +
+            "local value = redis.call('INCRBY', KEYS[1], ARGV[2]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3]) " +
+            "return value",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private MessageWriteBehindService messageWriteBehindService;
+
+    @Autowired
+    private PersistenceConfig persistenceConfig;
+
+    @Override
+    public int allocate(Long conversationId, int count) {
+        List<String> keys = Collections.singletonList(SEQUENCE_PREFIX + conversationId);
+        String ttlSeconds = String.valueOf(counterTtlSeconds());
+        try {
+            Long last = redisTemplate.execute(INCREMENT_SCRIPT, keys, String.valueOf(count), ttlSeconds);
+            if (last == null || last < 0) {
+                last = redisTemplate.execute(SEED_AND_INCREMENT_SCRIPT, keys,
+                        String.valueOf(storedMaxSequence(conversationId)), String.valueOf(count), ttlSeconds);
+            }
+            if (last == null) {
+                throw new BusinessException("Failed to allocate message sequence");
+            }
+            return (int) (last - count + 1);
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            // Without Redis the stored maximum is the best we have; concurrent turns may collide
+            log.warn("Sequence counter unavailable for conversation {}, falling back to database: {}",
+                    conversationId, e.getMessage());
+            return storedMaxSequence(conversationId) + 1;
+        }
+    }
+
+    /**
+     * Highest sequence number in use, including deleted messages (still under the unique key)
+     * and messages not yet committed
+     */
+    private int storedMaxSequence(Long conversationId) {
+        int max = chatMessageMapper.getMaxAllocatedSequence(conversationId);
+        for (ChatMessage message : messageWriteBehindService.getPendingMessages(conversationId)) {
+            max = Math.max(max, message.getSequence());
+        }
+        return max;
+    }
+
+    private long counterTtlSeconds() {
+        return TimeUnit.HOURS.toSeconds(persistenceConfig.getSequenceCounterTtlHours());
+    }
+}
@@ -0,0 +1,526 @@
+package com.xingyang.chat.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.xingyang.chat.config.ConversationConfig;
+import com.xingyang.chat.config.PersistenceConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.model.dto.ConversationActivity;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.service.ConversationActivityService;
+import com.xingyang.chat.service.MessageWriteBehindService;
+import com.xingyang.chat.util.WriteAheadLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Write-Behind Message Persistence Service Implementation
+ * <p>
+ * Messages are appended to a local write-ahead log and the caller returns after the next group
+ * fsync. A single committer thread drains logged batches in log order, writes them with one
+ * multi-row INSERT per round, hands their activity to the coalesced conversation updates, then
+ * checkpoints the log. Batches
+ * replayed after a restart may already be in the database, so rows whose sequence exists are
+ * skipped for them.
+ * <p>
+ * Until a message is committed it is served from memory on this node and from a Redis hash per
+ * conversation on every node, so any node reads it without waiting for the commit. Committed
+ * messages stay in the hash for {@code pending-grace-millis}: a reader that looked at the hash after
+ * they left it but whose snapshot predates the commit would otherwise miss them. Readers keep the
+ * stored copy of a message found in both. Without Redis the messages are only served by this node.
+ * <p>
+ * A failed group is retried one logged batch at a time so a bad row only holds up its own batch,
+ * which is retried with a growing pause and written to the dead-letter directory after
+ * {@code commit-max-attempts} failures. The queue is bounded: appends wait for the committer
+ * once {@code max-pending-messages} are queued and are refused if it does not catch up in time.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class MessageWriteBehindServiceImpl implements MessageWriteBehindService {
+
+    /**
+     * Messages not yet committed, or committed within the grace period, by sequence
+     */
+    private static final String PENDING_PREFIX = "chat:wb:pending:";
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ConversationActivityService conversationActivityService;
+
+    @Autowired
+    private PersistenceConfig persistenceConfig;
+
+    @Autowired
+    private ConversationConfig conversationConfig;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    /**
+     * Logged batches waiting for commit, in log order
+     */
+    private final Deque<PendingBatch> queue = new ArrayDeque<>();
+
+    private final Map<Long, List<ChatMessage>> pendingByConversation = new ConcurrentHashMap<>();
+
+    /**
+     * Committed messages still in the shared hashes, oldest first; used by the committer thread only
+     */
+    private final Deque<CommittedBatch> unshared = new ArrayDeque<>();
+
+    /**
+     * Messages in the queue, guarded by the queue
+     */
+    private int queuedMessages;
+
+    private WriteAheadLog wal;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ScheduledExecutorService committer;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        wal = new WriteAheadLog(Paths.get(persistenceConfig.getWalDir()), persistenceConfig.getWalSegmentBytes(),
+                persistenceConfig.getFsyncIntervalMillis(), persistenceConfig.getFsyncBytes());
+
+        List<WriteAheadLog.Record> records = wal.recover();
+        for (WriteAheadLog.Record record : records) {
+            List<ChatMessage> messages = JSON.parseArray(new String(record.getPayload(), StandardCharsets.UTF_8),
+                    ChatMessage.class);
+            enqueue(new PendingBatch(record.getLsn(), messages, true));
+            share(messages);
+        }
+        if (!records.isEmpty()) {
+            log.info("Replaying {} logged message batches from {}", records.size(), persistenceConfig.getWalDir());
+        }
+
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-committer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commitPending, 0, persistenceConfig.getCommitIntervalMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException, InterruptedException {
+        if (committer == null) {
+            return;
+        }
+
+        committer.shutdown();
+        committer.awaitTermination(5, TimeUnit.SECONDS);
+        // Last attempt; anything left is replayed from the log on the next start
+        commitPending();
+        unshare(Long.MAX_VALUE);
+        wal.close();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(persistenceConfig.getWriteBehindEnabled());
+    }
+
+    @Override
+    public void submit(List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        byte[] payload = JSON.toJSONString(messages).getBytes(StandardCharsets.UTF_8);
+        long lsn;
+        try {
+            // Log order and queue order must match for checkpoints to be correct
+            synchronized (queue) {
+                awaitCapacity(messages.size());
+                lsn = wal.append(payload);
+                enqueue(new PendingBatch(lsn, messages, false));
+            }
+            wal.awaitDurable(lsn);
+        } catch (IOException e) {
+            log.error("Failed to log messages for conversation: {}", messages.get(0).getConversationId(), e);
+            throw new BusinessException("Failed to save messages");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("Interrupted while saving messages");
+        }
+        share(messages);
+    }
+
+    @Override
+    public List<ChatMessage> getPendingMessages(Long conversationId) {
+        Map<Integer, ChatMessage> bySequence = new TreeMap<>();
+        try {
+            Map<Object, Object> shared = redisTemplate.opsForHash().entries(PENDING_PREFIX + conversationId);
+            for (Object json : shared.values()) {
+                ChatMessage message = JSON.parseObject((String) json, ChatMessage.class);
+                bySequence.put(message.getSequence(), message);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read shared pending messages of conversation {}: {}", conversationId, e.getMessage());
+        }
+
+        List<ChatMessage> pending = pendingByConversation.get(conversationId);
+        if (pending != null) {
+            synchronized (pending) {
+                pending.forEach(message -> bySequence.put(message.getSequence(), message));
+            }
+        }
+        return new ArrayList<>(bySequence.values());
+    }
+
+    /**
+     * Publish logged messages to the other nodes
+     */
+    private void share(List<ChatMessage> messages) {
+        Map<Long, List<ChatMessage>> byConversation = messages.stream()
+                .collect(Collectors.groupingBy(ChatMessage::getConversationId, LinkedHashMap::new, Collectors.toList()));
+        for (Map.Entry<Long, List<ChatMessage>> entry : byConversation.entrySet()) {
+            String key = PENDING_PREFIX + entry.getKey();
+            Map<String, String> fields = new LinkedHashMap<>();
+            entry.getValue().forEach(message -> fields.put(String.valueOf(message.getSequence()),
+                    JSON.toJSONString(message)));
+            try {
+                redisTemplate.opsForHash().putAll(key, fields);
+                redisTemplate.expire(key, persistenceConfig.getPendingTtlHours(), TimeUnit.HOURS);
+            } catch (Exception e) {
+                // Still served by this node, other nodes see the messages once they are committed
+                log.warn("Failed to share pending messages of conversation {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Remove messages committed before the given time from the shared hashes
+     */
+    private void unshare(long committedBefore) {
+        Map<Long, Set<String>> byConversation = new LinkedHashMap<>();
+        while (!unshared.isEmpty() && unshared.peekFirst().committedAt < committedBefore) {
+            for (ChatMessage message : unshared.pollFirst().messages) {
+                byConversation.computeIfAbsent(message.getConversationId(), id -> new HashSet<>())
+                        .add(String.valueOf(message.getSequence()));
+            }
+        }
+        byConversation.forEach((conversationId, sequences) -> {
+            try {
+                redisTemplate.opsForHash().delete(PENDING_PREFIX + conversationId, sequences.toArray());
+            } catch (Exception e) {
+                // Harmless: readers prefer the stored copy, and the hash expires on its own
+                log.warn("Failed to unshare committed messages of conversation {}: {}", conversationId,
+                        e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Wait until the queue has room for more messages; must hold the queue monitor
+     */
+    private void awaitCapacity(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + persistenceConfig.getSubmitWaitMillis();
+        // A batch larger than the whole bound still goes through once the queue is empty
+        while (queuedMessages > 0 && queuedMessages + count > persistenceConfig.getMaxPendingMessages()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                log.warn("Commit queue full with {} messages, refusing append", queuedMessages);
+                throw new BusinessException("Too many messages waiting to be saved, please retry");
+            }
+            queue.wait(remaining);
+        }
+    }
+
+    private void enqueue(PendingBatch batch) {
+        synchronized (queue) {
+            queue.addLast(batch);
+            queuedMessages += batch.messages.size();
+        }
+        for (ChatMessage message : batch.messages) {
+            List<ChatMessage> pending = pendingByConversation.computeIfAbsent(message.getConversationId(),
+                    id -> new ArrayList<>());
+            synchronized (pending) {
+                pending.add(message);
+            }
+        }
+    }
+
+    /**
+     * Group commit: drain logged batches into the database until the queue is empty or a batch fails
+     */
+    private void commitPending() {
+        unshare(System.currentTimeMillis() - persistenceConfig.getPendingGraceMillis());
+        while (true) {
+            List<PendingBatch> batches = new ArrayList<>();
+            int messageCount = 0;
+            synchronized (queue) {
+                for (PendingBatch batch : queue) {
+                    if (!batches.isEmpty() && messageCount + batch.messages.size() > persistenceConfig.getCommitBatchSize()) {
+                        break;
+                    }
+                    batches.add(batch);
+                    messageCount += batch.messages.size();
+                }
+            }
+            if (batches.isEmpty() || System.currentTimeMillis() < batches.get(0).retryAt) {
+                return;
+            }
+
+            Exception error = commit(batches);
+            if (error == null) {
+                completed(batches);
+                continue;
+            }
+            if (batches.size() == 1) {
+                failed(batches.get(0), error);
+                return;
+            }
+
+            // Isolate the failure: commit the group one logged batch at a time, in log order
+            log.warn("Group commit of {} messages failed, retrying batch by batch: {}", messageCount,
+                    error.getMessage());
+            for (PendingBatch batch : batches) {
+                error = commit(Collections.singletonList(batch));
+                if (error != null) {
+                    failed(batch, error);
+                    return;
+                }
+                completed(Collections.singletonList(batch));
+            }
+        }
+    }
+
+    /**
+     * Insert the messages of some logged batches in one transaction and record their activity once it commits
+     *
+     * @return Failure, null on success
+     */
+    private Exception commit(List<PendingBatch> batches) {
+        try {
+            List<ChatMessage> messages = collectUncommitted(batches);
+            if (!messages.isEmpty()) {
+                LocalDateTime now = LocalDateTime.now();
+                Map<Long, List<ChatMessage>> byUser = messages.stream()
+                        .collect(Collectors.groupingBy(ChatMessage::getCreateBy, LinkedHashMap::new,
+                                Collectors.toList()));
+                transactionTemplate.executeWithoutResult(status -> {
+                    chatMessageMapper.insertBatch(messages);
+                    byUser.forEach((userId, owned) -> conversationActivityService.touch(userId,
+                            ConversationActivity.fromMessages(owned, conversationConfig.getPreviewLength()), now));
+                });
+            }
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    /**
+     * Schedule the retry of a batch that failed on its own, or dead-letter it after too many attempts
+     */
+    private void failed(PendingBatch batch, Exception error) {
+        batch.failures++;
+        if (!isDatabaseUnavailable(error)) {
+            batch.attempts++;
+        }
+        if (batch.attempts >= persistenceConfig.getCommitMaxAttempts() && deadLetter(batch, error)) {
+            completed(Collections.singletonList(batch));
+            return;
+        }
+
+        long backoff = Math.min(persistenceConfig.getCommitIntervalMillis() << Math.min(batch.failures, 20),
+                persistenceConfig.getCommitMaxBackoffMillis());
+        batch.retryAt = System.currentTimeMillis() + backoff;
+        log.warn("Commit of logged batch {} failed (attempt {}), retrying in {} ms: {}", batch.lsn,
+                batch.failures, backoff, error.getMessage());
+    }
+
+    /**
+     * Failures that say nothing about the batch itself, only that the database cannot be reached
+     */
+    private boolean isDatabaseUnavailable(Exception error) {
+        return error instanceof CannotCreateTransactionException
+                || error instanceof TransientDataAccessException
+                || error instanceof DataAccessResourceFailureException;
+    }
+
+    /**
+     * Write a batch that keeps failing to the dead-letter directory so the queue can move on
+     *
+     * @return true if the batch was written
+     */
+    private boolean deadLetter(PendingBatch batch, Exception error) {
+        try {
+            Path dir = Paths.get(persistenceConfig.getDeadLetterDir());
+            Files.createDirectories(dir);
+            Files.write(dir.resolve(batch.lsn + ".json"),
+                    JSON.toJSONString(batch.messages).getBytes(StandardCharsets.UTF_8));
+            log.error("Gave up committing logged batch {} with {} messages after {} attempts, moved to {}: {}",
+                    batch.lsn, batch.messages.size(), batch.attempts, dir, error.getMessage());
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to dead-letter logged batch {}, keeping it queued", batch.lsn, e);
+            return false;
+        }
+    }
+
+    /**
+     * Remove committed or dead-lettered batches from the head of the queue and checkpoint the log
+     */
+    private void completed(List<PendingBatch> batches) {
+        int messageCount = 0;
+        synchronized (queue) {
+            for (PendingBatch batch : batches) {
+                queue.pollFirst();
+                messageCount += batch.messages.size();
+            }
+            queuedMessages -= messageCount;
+            queue.notifyAll();
+        }
+        release(batches);
+
+        try {
+            wal.checkpoint(batches.get(batches.size() - 1).lsn);
+        } catch (IOException e) {
+            // Harmless: committed batches are recognised and skipped on replay
+            log.warn("Failed to checkpoint write-ahead log", e);
+        }
+        log.debug("Committed {} messages from {} logged batches", messageCount, batches.size());
+    }
+
+    /**
+     * Collect the messages to insert, skipping replayed rows that made it to the database before a crash
+     */
+    private List<ChatMessage> collectUncommitted(List<PendingBatch> batches) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (PendingBatch batch : batches) {
+            if (!batch.replayed) {
+                messages.addAll(batch.messages);
+                continue;
+            }
+
+            Map<Long, List<ChatMessage>> byConversation = batch.messages.stream()
+                    .collect(Collectors.groupingBy(ChatMessage::getConversationId, LinkedHashMap::new,
+                            Collectors.toList()));
+            for (Map.Entry<Long, List<ChatMessage>> entry : byConversation.entrySet()) {
+                Set<Integer> existing = new HashSet<>(chatMessageMapper.findExistingSequences(entry.getKey(),
+                        entry.getValue().stream().map(ChatMessage::getSequence).collect(Collectors.toList())));
+                entry.getValue().stream()
+                        .filter(message -> !existing.contains(message.getSequence()))
+                        .forEach(messages::add);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Stop serving committed messages from memory, and from the shared hashes once the grace period is over
+     */
+    private void release(List<PendingBatch> batches) {
+        long now = System.currentTimeMillis();
+        for (PendingBatch batch : batches) {
+            unshared.addLast(new CommittedBatch(now, batch.messages));
+            for (ChatMessage message : batch.messages) {
+                pendingByConversation.computeIfPresent(message.getConversationId(), (id, pending) -> {
+                    synchronized (pending) {
+                        pending.remove(message);
+                        return pending.isEmpty() ? null : pending;
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Messages committed together, waiting to leave the shared hashes
+     */
+    private static class CommittedBatch {
+
+        private final long committedAt;
+
+        private final List<ChatMessage> messages;
+
+        private CommittedBatch(long committedAt, List<ChatMessage> messages) {
+            this.committedAt = committedAt;
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * Messages logged together under one LSN
+     */
+    private static class PendingBatch {
+
+        private final long lsn;
+
+        private final List<ChatMessage> messages;
+
+        /**
+         * Read back from the log at startup, possibly already committed
+         */
+        private final boolean replayed;
+
+        /**
+         * Failed commits of this batch on its own, including those while the database was unreachable
+         */
+        private int failures;
+
+        /**
+         * Failed commits that count towards dead-lettering
+         */
+        private int attempts;
+
+        /**
+         * Earliest time of the next commit attempt, in epoch milliseconds
+         */
+        private long retryAt;
+
+        private PendingBatch(long lsn, List<ChatMessage> messages, boolean replayed) {
+            this.lsn = lsn;
+            this.messages = messages;
+            this.replayed = replayed;
+        }
+    }
+}
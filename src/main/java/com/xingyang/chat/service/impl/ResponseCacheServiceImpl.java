@@ -0,0 +1,343 @@
+package com.xingyang.chat.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.xingyang.chat.config.ResponseCacheConfig;
+import com.xingyang.chat.model.dto.ResponseCacheEntry;
+import com.xingyang.chat.model.dto.ResponseCacheLookup;
+import com.xingyang.chat.service.ResponseCacheService;
+import com.xingyang.chat.util.TokenChunker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Q&A Response Cache Service Implementation
+ * <p>
+ * Entries carry the cost of the upstream call and their logical expiry so readers can
+ * refresh them early (XFetch). A short Redis lock makes sure only one request recomputes an
+ * entry while everybody else keeps serving the current value; the lock is only taken by
+ * {@link #getEntry}, whose caller owns it until it puts the new answer or releases it.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class ResponseCacheServiceImpl implements ResponseCacheService {
+
+    private static final String CHAT_CACHE_PREFIX = "chat:qa:";
+
+    /**
+     * Kept out of the entry namespace, so scans of {@code chat:qa:*} only see answers
+     */
+    private static final String LOCK_PREFIX = "chat:qalock:";
+
+    /**
+     * Delete the lock only if it is still held by the caller
+     */
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ResponseCacheConfig cacheConfig;
+
+    private ExecutorService refreshExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        refreshExecutor = Executors.newFixedThreadPool(cacheConfig.getRefreshThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "qa-cache-refresh-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @Override
+    public Optional<String> get(String question) {
+        if (question == null || question.trim().isEmpty()) {
+            return Optional.empty();
+        }
+
+        ResponseCacheEntry entry = readEntry(buildKey(normalizeQuestion(question)));
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.getValue());
+    }
+
+    @Override
+    public ResponseCacheLookup getEntry(String question, Function<String, String> refresher) {
+        if (question == null || question.trim().isEmpty()) {
+            return ResponseCacheLookup.miss(question);
+        }
+
+        String normalizedQuestion = normalizeQuestion(question);
+        String cacheKey = buildKey(normalizedQuestion);
+        ResponseCacheEntry entry = readEntry(cacheKey);
+        if (entry == null) {
+            log.debug("Cache miss for question hash: {}", normalizedQuestion.hashCode());
+            return ResponseCacheLookup.miss(question);
+        }
+
+        long now = System.currentTimeMillis();
+        if (isExpired(entry, now)) {
+            // Expired: the lock holder recomputes, everybody else keeps the stale value meanwhile
+            String token = tryLock(normalizedQuestion);
+            if (token != null) {
+                log.debug("Cache entry expired, recomputing question hash: {}", normalizedQuestion.hashCode());
+                return ResponseCacheLookup.recompute(question, token);
+            }
+            log.debug("Cache entry expired, serving stale value while another request recomputes");
+            entry.setStale(true);
+            return ResponseCacheLookup.hit(question, entry);
+        }
+
+        if (refresher != null && shouldRefreshEarly(entry, now)) {
+            String token = tryLock(normalizedQuestion);
+            if (token != null) {
+                scheduleRefresh(question, token, refresher);
+            }
+        }
+
+        return ResponseCacheLookup.hit(question, entry);
+    }
+
+    @Override
+    public List<String> toChunks(String response) {
+        return TokenChunker.split(response, cacheConfig.getReplayTokensPerChunk());
+    }
+
+    @Override
+    public Flux<String> replay(ResponseCacheEntry entry) {
+        // Only the chunking parameter is stored, the chunks are cut again on every replay
+        int tokensPerChunk = entry.getTokensPerChunk() != null
+                ? entry.getTokensPerChunk()
+                : cacheConfig.getReplayTokensPerChunk();
+
+        Flux<String> stream = Flux.fromIterable(TokenChunker.split(entry.getValue(), tokensPerChunk));
+        Integer tokensPerSecond = cacheConfig.getReplayTokensPerSecond();
+        if (tokensPerSecond != null && tokensPerSecond > 0) {
+            long nanosPerChunk = 1_000_000_000L * Math.max(1, tokensPerChunk) / tokensPerSecond;
+            stream = stream.delayElements(Duration.ofNanos(nanosPerChunk));
+        }
+        return stream;
+    }
+
+    @Override
+    public Optional<String> getStale(String question) {
+        if (!Boolean.TRUE.equals(cacheConfig.getServeStaleOnError())
+                || question == null || question.trim().isEmpty()) {
+            return Optional.empty();
+        }
+
+        ResponseCacheEntry entry = readEntry(buildKey(normalizeQuestion(question)));
+        return entry == null ? Optional.empty() : Optional.of(entry.getValue());
+    }
+
+    @Override
+    public void put(String question, String response, long computeMillis) {
+        put(question, response, computeMillis, Duration.ofMinutes(cacheConfig.getTtlMinutes()));
+    }
+
+    @Override
+    public void put(String question, String response, long computeMillis, Duration ttl) {
+        if (question == null || question.trim().isEmpty() || response == null) {
+            return;
+        }
+
+        String normalizedQuestion = normalizeQuestion(question);
+        ResponseCacheEntry entry = new ResponseCacheEntry(response, computeMillis,
+                System.currentTimeMillis() + ttl.toMillis(), cacheConfig.getReplayTokensPerChunk());
+
+        redisTemplate.opsForValue().set(buildKey(normalizedQuestion), JSON.toJSONString(entry),
+                physicalTtl(ttl).toMillis(), TimeUnit.MILLISECONDS);
+
+        log.debug("Cached response for question hash: {}, ttl: {}, compute: {} ms",
+                normalizedQuestion.hashCode(), ttl, computeMillis);
+    }
+
+    @Override
+    public void put(ResponseCacheLookup lookup, String response, long computeMillis) {
+        try {
+            put(lookup.getQuestion(), response, computeMillis);
+        } finally {
+            release(lookup);
+        }
+    }
+
+    @Override
+    public void release(ResponseCacheLookup lookup) {
+        if (lookup == null || lookup.getRecomputeToken() == null) {
+            return;
+        }
+        releaseLock(normalizeQuestion(lookup.getQuestion()), lookup.getRecomputeToken());
+        lookup.setRecomputeToken(null);
+    }
+
+    @Override
+    public int putAllIfAbsent(Map<String, String> answers, Duration ttl) {
+        if (answers == null || answers.isEmpty()) {
+            return 0;
+        }
+
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        long expireAt = System.currentTimeMillis() + ttl.toMillis();
+        Expiration expiration = Expiration.milliseconds(physicalTtl(ttl).toMillis());
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            answers.forEach((question, response) -> {
+                if (question == null || question.trim().isEmpty() || response == null) {
+                    return;
+                }
+                ResponseCacheEntry entry = new ResponseCacheEntry(response, 0L, expireAt,
+                        cacheConfig.getReplayTokensPerChunk());
+                connection.stringCommands().set(serializer.serialize(buildKey(normalizeQuestion(question))),
+                        serializer.serialize(JSON.toJSONString(entry)), expiration,
+                        RedisStringCommands.SetOption.SET_IF_ABSENT);
+            });
+            return null;
+        });
+
+        return (int) results.stream().filter(Boolean.TRUE::equals).count();
+    }
+
+    @Override
+    public String normalizeQuestion(String question) {
+        if (question == null) {
+            return "";
+        }
+
+        // Simple normalization: lowercase and trim whitespace
+        return question.toLowerCase().trim().replaceAll("\\s+", " ");
+    }
+
+    @Override
+    public String cacheKey(String question) {
+        return buildKey(normalizeQuestion(question));
+    }
+
+    /**
+     * XFetch: refresh when now - delta * beta * ln(rand) reaches the expiry
+     */
+    private boolean shouldRefreshEarly(ResponseCacheEntry entry, long now) {
+        if (entry.getExpireAt() == null || entry.getComputeMillis() == null || entry.getComputeMillis() <= 0) {
+            return false;
+        }
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        double gap = entry.getComputeMillis() * cacheConfig.getBeta() * Math.log(random);
+        return now - gap >= entry.getExpireAt();
+    }
+
+    private void scheduleRefresh(String question, String token, Function<String, String> refresher) {
+        String normalizedQuestion = normalizeQuestion(question);
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    long start = System.currentTimeMillis();
+                    String response = refresher.apply(question);
+                    if (response != null) {
+                        put(question, response, System.currentTimeMillis() - start);
+                        log.debug("Refreshed cache entry early for question hash: {}", normalizedQuestion.hashCode());
+                    }
+                } catch (Exception e) {
+                    log.warn("Early cache refresh failed: {}", e.getMessage());
+                } finally {
+                    releaseLock(normalizedQuestion, token);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            releaseLock(normalizedQuestion, token);
+        }
+    }
+
+    private ResponseCacheEntry readEntry(String cacheKey) {
+        String raw = redisTemplate.opsForValue().get(cacheKey);
+        if (raw == null) {
+            return null;
+        }
+
+        if (raw.startsWith("{") && raw.contains("\"expireAt\"")) {
+            try {
+                ResponseCacheEntry entry = JSON.parseObject(raw, ResponseCacheEntry.class);
+                if (entry != null && entry.getValue() != null) {
+                    return entry;
+                }
+            } catch (Exception e) {
+                log.debug("Cache value is not an entry, treating it as a plain answer");
+            }
+        }
+
+        // Plain answers written before entries carried metadata never refresh early
+        return new ResponseCacheEntry(raw, 0L, null, null);
+    }
+
+    private boolean isExpired(ResponseCacheEntry entry, long now) {
+        return entry.getExpireAt() != null && now >= entry.getExpireAt();
+    }
+
+    /**
+     * Take the recompute lock of a question
+     *
+     * @return Token to release the lock with, null if somebody else holds it
+     */
+    private String tryLock(String normalizedQuestion) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LOCK_PREFIX + normalizedQuestion.hashCode(),
+                token, cacheConfig.getLockSeconds(), TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    private void releaseLock(String normalizedQuestion, String token) {
+        try {
+            redisTemplate.execute(RELEASE_LOCK_SCRIPT,
+                    Collections.singletonList(LOCK_PREFIX + normalizedQuestion.hashCode()), token);
+        } catch (Exception e) {
+            log.warn("Failed to release cache lock: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Keep the physical key around past its logical expiry so it can be served stale
+     */
+    private Duration physicalTtl(Duration ttl) {
+        return Boolean.TRUE.equals(cacheConfig.getServeStaleOnError())
+                ? ttl.plusMinutes(cacheConfig.getStaleGraceMinutes())
+                : ttl;
+    }
+
+    private String buildKey(String normalizedQuestion) {
+        return CHAT_CACHE_PREFIX + normalizedQuestion.hashCode();
+    }
+}
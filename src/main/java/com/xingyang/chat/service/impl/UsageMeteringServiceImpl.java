@@ -0,0 +1,305 @@
+package com.xingyang.chat.service.impl;
+
+import com.xingyang.chat.config.UsageConfig;
+import com.xingyang.chat.exception.BusinessException;
+import com.xingyang.chat.mapper.UsageHourlyMapper;
+import com.xingyang.chat.model.entity.UsageHourly;
+import com.xingyang.chat.service.UsageMeteringService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Usage Metering Service Implementation
+ * <p>
+ * Each user, model and hour has its own set of {@link LongAdder} counters, so concurrent calls add
+ * without contending on a lock. The flush drains every counter with sumThenReset and adds the
+ * deltas to the usage table with multi-row upserts; deltas of a failed statement are added back and
+ * retried with the next flush. Counters of past hours are dropped once drained, as are unflushed
+ * token counts that reached zero and daily totals of past days, so idle users leave nothing behind.
+ * <p>
+ * The quota check never waits on the database: it adds the user's unflushed tokens to a daily total
+ * read from the usage table and reused for a short while. Usage counted on other nodes is only seen
+ * once they flush it, so a user can overrun the quota by at most one flush interval of traffic.
+ *
+ * @author XingYang
+ */
+@Slf4j
+@Service
+public class UsageMeteringServiceImpl implements UsageMeteringService {
+
+    /**
+     * User ID the usage of calls without a user is counted under
+     */
+    private static final long NO_USER = 0L;
+
+    @Autowired
+    private UsageHourlyMapper usageHourlyMapper;
+
+    @Autowired
+    private UsageConfig usageConfig;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Counters by user, model and hour
+     */
+    private final Map<String, UsageCounter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Tokens counted but not flushed yet by user ID
+     */
+    private final Map<Long, LongAdder> unflushed = new ConcurrentHashMap<>();
+
+    /**
+     * Flushed daily totals by user ID, as last read from the usage table
+     */
+    private final Map<Long, DailyTotal> dailyTotals = new ConcurrentHashMap<>();
+
+    private Counter promptTokens;
+
+    private Counter completionTokens;
+
+    private Counter quotaRejections;
+
+    private Timer flushLatency;
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        promptTokens = Counter.builder("chat.usage.tokens")
+                .tag("type", "prompt")
+                .description("Prompt tokens sent to the upstream")
+                .register(meterRegistry);
+        completionTokens = Counter.builder("chat.usage.tokens")
+                .tag("type", "completion")
+                .description("Completion tokens received from the upstream")
+                .register(meterRegistry);
+        quotaRejections = Counter.builder("chat.usage.quota.rejections")
+                .description("Calls refused because the daily token quota was used up")
+                .register(meterRegistry);
+        flushLatency = Timer.builder("chat.usage.flush.latency")
+                .description("Duration of usage flushes")
+                .register(meterRegistry);
+
+        if (!Boolean.TRUE.equals(usageConfig.getEnabled())) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "usage-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = usageConfig.getFlushIntervalSeconds();
+        flusher.scheduleWithFixedDelay(this::runScheduled, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        flush();
+    }
+
+    @Override
+    public void record(Long userId, String model, long prompt, long completion) {
+        long user = userId != null ? userId : NO_USER;
+        String modelId = model != null ? model : "";
+        LocalDateTime hour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        add(user, modelId, hour, Math.max(0, prompt), Math.max(0, completion), 1);
+        // Added inside compute, so it cannot land in a counter markFlushed is dropping
+        long tokens = Math.max(0, prompt) + Math.max(0, completion);
+        unflushed.compute(user, (id, pending) -> {
+            LongAdder counter = pending != null ? pending : new LongAdder();
+            counter.add(tokens);
+            return counter;
+        });
+        promptTokens.increment(Math.max(0, prompt));
+        completionTokens.increment(Math.max(0, completion));
+    }
+
+    @Override
+    public void checkQuota(Long userId) {
+        long quota = usageConfig.getDailyTokenQuota() != null ? usageConfig.getDailyTokenQuota() : 0;
+        if (quota <= 0 || userId == null) {
+            return;
+        }
+
+        if (getTodayTokens(userId) >= quota) {
+            quotaRejections.increment();
+            throw new BusinessException("Daily token quota exceeded");
+        }
+    }
+
+    @Override
+    public long getTodayTokens(Long userId) {
+        LocalDate today = LocalDate.now();
+        long now = System.currentTimeMillis();
+        long refreshMillis = TimeUnit.SECONDS.toMillis(usageConfig.getQuotaRefreshSeconds());
+        DailyTotal total = dailyTotals.compute(userId, (id, current) -> {
+            if (current != null && current.day.equals(today) && now - current.loadedAt < refreshMillis) {
+                return current;
+            }
+            DailyTotal loaded = new DailyTotal(today, now);
+            loaded.tokens.add(usageHourlyMapper.sumTokens(id, today.atStartOfDay()));
+            return loaded;
+        });
+
+        LongAdder pending = unflushed.get(userId);
+        return total.tokens.sum() + (pending != null ? pending.sum() : 0);
+    }
+
+    @Override
+    public synchronized int flush() {
+        long start = System.nanoTime();
+        LocalDateTime previousHour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1);
+
+        List<UsageHourly> rows = new ArrayList<>();
+        for (Map.Entry<String, UsageCounter> entry : counters.entrySet()) {
+            UsageCounter counter = entry.getValue();
+            long prompt = counter.prompt.sumThenReset();
+            long completion = counter.completion.sumThenReset();
+            long requests = counter.requests.sumThenReset();
+            if (counter.hour.isBefore(previousHour)) {
+                // Calls are counted under the hour they start in, nothing is added to these any more
+                counters.remove(entry.getKey(), counter);
+            }
+            if (requests == 0 && prompt == 0 && completion == 0) {
+                continue;
+            }
+
+            UsageHourly row = new UsageHourly();
+            row.setUserId(counter.userId);
+            row.setHour(counter.hour);
+            row.setModel(counter.model);
+            row.setPromptTokens(prompt);
+            row.setCompletionTokens(completion);
+            row.setRequests((int) requests);
+            rows.add(row);
+        }
+
+        int written = 0;
+        int batchSize = usageConfig.getFlushBatchSize();
+        for (int i = 0; i < rows.size(); i += batchSize) {
+            List<UsageHourly> batch = rows.subList(i, Math.min(i + batchSize, rows.size()));
+            try {
+                usageHourlyMapper.upsertBatch(batch, LocalDateTime.now());
+                written += batch.size();
+                for (UsageHourly row : batch) {
+                    markFlushed(row);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to flush {} usage rows, retrying with the next flush: {}", batch.size(),
+                        e.getMessage());
+                for (UsageHourly row : batch) {
+                    add(row.getUserId(), row.getModel(), row.getHour(), row.getPromptTokens(),
+                            row.getCompletionTokens(), row.getRequests());
+                }
+            }
+        }
+
+        // A total of an earlier day is never served again; today's is reloaded on the next quota check
+        LocalDate today = LocalDate.now();
+        dailyTotals.entrySet().removeIf(entry -> entry.getValue().day.isBefore(today));
+
+        flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (written > 0) {
+            log.debug("Flushed {} usage rows", written);
+        }
+        return written;
+    }
+
+    private void add(long userId, String model, LocalDateTime hour, long prompt, long completion, long requests) {
+        String key = userId + ":" + model + ":" + hour;
+        UsageCounter counter = counters.computeIfAbsent(key, k -> new UsageCounter(userId, model, hour));
+        counter.prompt.add(prompt);
+        counter.completion.add(completion);
+        counter.requests.add(requests);
+    }
+
+    /**
+     * Move flushed tokens from the user's unflushed count to the cached daily total
+     */
+    private void markFlushed(UsageHourly row) {
+        long tokens = row.getPromptTokens() + row.getCompletionTokens();
+        // Dropped once drained
+        unflushed.computeIfPresent(row.getUserId(), (userId, pending) -> {
+            pending.add(-tokens);
+            return pending.sum() > 0 ? pending : null;
+        });
+        DailyTotal total = dailyTotals.get(row.getUserId());
+        if (total != null && total.day.equals(row.getHour().toLocalDate())) {
+            total.tokens.add(tokens);
+        }
+    }
+
+    private void runScheduled() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Usage flush failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Usage of one user and model in one hour
+     */
+    private static class UsageCounter {
+
+        private final long userId;
+
+        private final String model;
+
+        private final LocalDateTime hour;
+
+        private final LongAdder prompt = new LongAdder();
+
+        private final LongAdder completion = new LongAdder();
+
+        private final LongAdder requests = new LongAdder();
+
+        private UsageCounter(long userId, String model, LocalDateTime hour) {
+            this.userId = userId;
+            this.model = model;
+            this.hour = hour;
+        }
+    }
+
+    /**
+     * Flushed tokens of one user on one day
+     */
+    private static class DailyTotal {
+
+        private final LocalDate day;
+
+        private final long loadedAt;
+
+        private final LongAdder tokens = new LongAdder();
+
+        private DailyTotal(LocalDate day, long loadedAt) {
+            this.day = day;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
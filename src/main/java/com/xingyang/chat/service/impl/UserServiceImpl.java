@@ -2,6 +2,9 @@ package com.xingyang.chat.service.impl;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.xingyang.chat.convert.UserConverter;
+import com.xingyang.chat.datasource.DataSourceRouting;
+import com.xingyang.chat.datasource.ReadReplica;
 import com.xingyang.chat.exception.BusinessException;
 import com.xingyang.chat.mapper.UserMapper;
 import com.xingyang.chat.model.dto.LoginDTO;
@@ -13,7 +16,6 @@ import com.xingyang.chat.model.vo.UserVO;
 import com.xingyang.chat.service.UserService;
 import com.xingyang.chat.util.JwtTokenUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -42,16 +44,28 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     private final JwtTokenUtil jwtTokenUtil;
     private final PasswordEncoder passwordEncoder;
     private final JdbcTemplate jdbcTemplate;
+    private final UserConverter userConverter;
 
-    public UserServiceImpl(@Lazy AuthenticationManager authenticationManager, JwtTokenUtil jwtTokenUtil, PasswordEncoder passwordEncoder, JdbcTemplate jdbcTemplate) {
+    public UserServiceImpl(@Lazy AuthenticationManager authenticationManager, JwtTokenUtil jwtTokenUtil, PasswordEncoder passwordEncoder, JdbcTemplate jdbcTemplate, UserConverter userConverter) {
         this.authenticationManager = authenticationManager;
         this.jwtTokenUtil = jwtTokenUtil;
         this.passwordEncoder = passwordEncoder;
         this.jdbcTemplate = jdbcTemplate;
+        this.userConverter = userConverter;
     }
 
     @Override
+    @ReadReplica
     public User getUserByUsername(String username) {
+        User user = loadUser(username);
+        // A user who just registered may not have reached the replica yet
+        if (user == null && DataSourceRouting.isReplica()) {
+            user = DataSourceRouting.onPrimary(() -> loadUser(username));
+        }
+        return user;
+    }
+    
+    private User loadUser(String username) {
         User user = lambdaQuery()
                 .eq(User::getUsername, username)
                 .eq(User::getDeleted, 0)
@@ -85,8 +99,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         updateById(user);
         
         // Convert to UserVO
-        UserVO userVO = new UserVO();
-        BeanUtils.copyProperties(user, userVO);
+        UserVO userVO = userConverter.toVo(user);
         
         // Prepare response
         Map<String, Object> result = new HashMap<>(2);
@@ -120,12 +133,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         }
         
         // Create new user
-        User user = new User();
-        user.setUsername(registerDTO.getUsername());
+        User user = userConverter.fromRegister(registerDTO);
         user.setPassword(passwordEncoder.encode(registerDTO.getPassword()));
-        user.setNickname(registerDTO.getNickname() != null ? registerDTO.getNickname() : registerDTO.getUsername());
-        user.setEmail(registerDTO.getEmail());
-        user.setPhone(registerDTO.getPhone());
+        if (user.getNickname() == null) {
+            user.setNickname(registerDTO.getUsername());
+        }
         user.setStatus(1); // Enabled by default
         
         // Save user
@@ -145,13 +157,13 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         user.setRoles(new String[]{"USER"});
         
         // Convert to UserVO
-        UserVO userVO = new UserVO();
-        BeanUtils.copyProperties(user, userVO);
+        UserVO userVO = userConverter.toVo(user);
         
         return userVO;
     }
 
     @Override
+    @ReadReplica
     public UserVO getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null || !authentication.isAuthenticated()) {
@@ -165,8 +177,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             throw new BusinessException(Result.ResultCode.NOT_FOUND.getCode(), "User not found");
         }
         
-        UserVO userVO = new UserVO();
-        BeanUtils.copyProperties(user, userVO);
+        UserVO userVO = userConverter.toVo(user);
         
         return userVO;
     }
@@ -191,26 +202,14 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             }
         }
         
-        // Update user info
-        if (userUpdateDTO.getNickname() != null) {
-            user.setNickname(userUpdateDTO.getNickname());
-        }
-        if (userUpdateDTO.getAvatar() != null) {
-            user.setAvatar(userUpdateDTO.getAvatar());
-        }
-        if (userUpdateDTO.getEmail() != null) {
-            user.setEmail(userUpdateDTO.getEmail());
-        }
-        if (userUpdateDTO.getPhone() != null) {
-            user.setPhone(userUpdateDTO.getPhone());
-        }
+        // Update user info, fields left out of the form are kept
+        userConverter.updateFromDto(userUpdateDTO, user);
         
         // Save updated user
         updateById(user);
         
         // Convert to UserVO
-        UserVO userVO = new UserVO();
-        BeanUtils.copyProperties(user, userVO);
+        UserVO userVO = userConverter.toVo(user);
         
         return userVO;
     }
@@ -233,6 +232,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<UserVO> pageQuery(Page<User> page, User user) {
         Page<User> userPage = lambdaQuery()
                 .eq(user.getStatus() != null, User::getStatus, user.getStatus())
@@ -244,13 +244,6 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
                 .page(page);
         
         // Convert to UserVO page
-        Page<UserVO> userVOPage = new Page<>(userPage.getCurrent(), userPage.getSize(), userPage.getTotal());
-        userVOPage.setRecords(userPage.getRecords().stream().map(u -> {
-            UserVO userVO = new UserVO();
-            BeanUtils.copyProperties(u, userVO);
-            return userVO;
-        }).toList());
-        
-        return userVOPage;
+        return userConverter.toVoPage(userPage);
     }
 } 
\ No newline at end of file
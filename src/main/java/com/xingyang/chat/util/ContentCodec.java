@@ -0,0 +1,127 @@
+package com.xingyang.chat.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Message content codec for the content_blob column
+ * <p>
+ * The first byte names the codec: 0 is plain UTF-8, 1 is the layout of MySQL's COMPRESS() (4-byte
+ * little-endian length followed by a zlib stream), so stored values can also be inspected with
+ * {@code UNCOMPRESS(SUBSTRING(content_blob, 2))}. Content shorter than the threshold stays in the
+ * plain content column.
+ *
+ * @author XingYang
+ */
+public final class ContentCodec {
+
+    public static final byte CODEC_PLAIN = 0;
+
+    public static final byte CODEC_ZLIB = 1;
+
+    private static volatile int threshold = 1024;
+
+    private ContentCodec() {
+    }
+
+    /**
+     * Set the content length from which content is stored compressed
+     *
+     * @param chars Threshold in characters
+     */
+    public static void setThreshold(int chars) {
+        threshold = chars;
+    }
+
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Whether content goes to the content_blob column instead of the plain content column
+     *
+     * @param content Message content
+     * @return true if the content is long enough to be compressed
+     */
+    public static boolean isCompressible(String content) {
+        return content != null && content.length() >= threshold;
+    }
+
+    /**
+     * Encode content with a codec byte, falling back to plain bytes if compression does not pay off
+     *
+     * @param content Message content
+     * @return Encoded content
+     */
+    public static byte[] encode(String content) {
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 3 + 16);
+            out.write(CODEC_ZLIB);
+            out.write(raw.length);
+            out.write(raw.length >>> 8);
+            out.write(raw.length >>> 16);
+            out.write(raw.length >>> 24);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            if (out.size() < raw.length + 1) {
+                return out.toByteArray();
+            }
+        } finally {
+            deflater.end();
+        }
+
+        byte[] plain = new byte[raw.length + 1];
+        plain[0] = CODEC_PLAIN;
+        System.arraycopy(raw, 0, plain, 1, raw.length);
+        return plain;
+    }
+
+    /**
+     * Decode content written by {@link #encode(String)}
+     *
+     * @param data Encoded content, may be null
+     * @return Message content, or null
+     */
+    public static String decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        if (data[0] == CODEC_PLAIN) {
+            return new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+        }
+        if (data[0] != CODEC_ZLIB) {
+            throw new IllegalArgumentException("Unknown content codec: " + data[0]);
+        }
+
+        int length = (data[1] & 0xff) | (data[2] & 0xff) << 8 | (data[3] & 0xff) << 16 | (data[4] & 0xff) << 24;
+        byte[] raw = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 5, data.length - 5);
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int n = inflater.inflate(raw, read, length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            return new String(read == length ? raw : Arrays.copyOf(raw, read), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.xingyang.chat.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Append-only inverted index over messages, ranked with BM25
+ * <p>
+ * Documents are numbered in insertion order, so each posting list is a strictly increasing
+ * sequence of document numbers. It is kept as varint-encoded (document delta, term frequency)
+ * pairs in one growing byte array per term, typically two bytes per posting. Per-document data
+ * lives in parallel primitive arrays.
+ *
+ * @author XingYang
+ */
+public class InvertedIndex {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    private long[] docConversation = new long[16];
+
+    private int[] docSequence = new int[16];
+
+    private int[] docLength = new int[16];
+
+    private int docCount;
+
+    private long totalLength;
+
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    /**
+     * Indexed messages as conversation ID and sequence packed into one long, to skip duplicates
+     */
+    private final Set<Long> indexed = new HashSet<>();
+
+    /**
+     * Index a message unless it is already indexed
+     *
+     * @param conversationId Conversation ID
+     * @param sequence Sequence of the message in the conversation
+     * @param content Message content
+     * @return false if the message was already indexed
+     */
+    public synchronized boolean add(long conversationId, int sequence, String content) {
+        if (!indexed.add(key(conversationId, sequence))) {
+            return false;
+        }
+
+        List<String> tokens = SearchTokenizer.tokenize(content);
+        addTerms(conversationId, sequence, frequencies(tokens), tokens.size());
+        return true;
+    }
+
+    /**
+     * Write a message as its term frequencies, to be added to another index by {@link #readDocument}
+     *
+     * @param out Output
+     * @param conversationId Conversation ID
+     * @param sequence Sequence of the message in the conversation
+     * @param content Message content
+     * @throws IOException if writing fails
+     */
+    public static void writeDocument(DataOutputStream out, long conversationId, int sequence, String content)
+            throws IOException {
+        List<String> tokens = SearchTokenizer.tokenize(content);
+        Map<String, Integer> frequencies = frequencies(tokens);
+        out.writeLong(conversationId);
+        out.writeInt(sequence);
+        out.writeInt(tokens.size());
+        out.writeInt(frequencies.size());
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    /**
+     * Add a message written by {@link #writeDocument} unless it is already indexed
+     *
+     * @param in Input
+     * @return false if the message was already indexed
+     * @throws IOException if reading fails
+     */
+    public synchronized boolean readDocument(DataInputStream in) throws IOException {
+        long conversationId = in.readLong();
+        int sequence = in.readInt();
+        int length = in.readInt();
+        int terms = in.readInt();
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (int i = 0; i < terms; i++) {
+            frequencies.put(in.readUTF(), in.readInt());
+        }
+        if (!indexed.add(key(conversationId, sequence))) {
+            return false;
+        }
+        addTerms(conversationId, sequence, frequencies, length);
+        return true;
+    }
+
+    private void addTerms(long conversationId, int sequence, Map<String, Integer> frequencies, int length) {
+        int doc = docCount++;
+        if (doc == docConversation.length) {
+            int capacity = doc * 2;
+            docConversation = Arrays.copyOf(docConversation, capacity);
+            docSequence = Arrays.copyOf(docSequence, capacity);
+            docLength = Arrays.copyOf(docLength, capacity);
+        }
+        docConversation[doc] = conversationId;
+        docSequence[doc] = sequence;
+        docLength[doc] = length;
+        totalLength += length;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new Postings()).add(doc, entry.getValue());
+        }
+    }
+
+    private static Map<String, Integer> frequencies(List<String> tokens) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    /**
+     * Find the best matching message of each conversation, best conversations first
+     *
+     * @param query Query text, tokenized like the content
+     * @param limit Maximum number of conversations
+     * @return Hits ordered by descending BM25 score
+     */
+    public synchronized List<Hit> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(SearchTokenizer.tokenize(query));
+        if (docCount == 0 || terms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        double averageLength = Math.max(1.0, (double) totalLength / docCount);
+        double[] scores = new double[docCount];
+        for (String term : terms) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                continue;
+            }
+            double idf = Math.log(1.0 + (docCount - list.df + 0.5) / (list.df + 0.5));
+            byte[] data = list.data;
+            int position = 0;
+            int doc = -1;
+            while (position < list.length) {
+                int delta = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                int frequency = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+                    frequency |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                doc += delta;
+                double norm = K1 * (1.0 - B + B * docLength[doc] / averageLength);
+                scores[doc] += idf * frequency * (K1 + 1.0) / (frequency + norm);
+            }
+        }
+
+        // Keep the best message per conversation, then the best conversations
+        Map<Long, Integer> bestDoc = new HashMap<>();
+        for (int doc = 0; doc < docCount; doc++) {
+            if (scores[doc] > 0) {
+                final int candidate = doc;
+                bestDoc.merge(docConversation[doc], doc,
+                        (current, ignored) -> scores[candidate] > scores[current] ? candidate : current);
+            }
+        }
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(scores[a], scores[b]));
+        for (int doc : bestDoc.values()) {
+            top.add(doc);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            int doc = top.poll();
+            hits.add(0, new Hit(docConversation[doc], docSequence[doc], scores[doc]));
+        }
+        return hits;
+    }
+
+    /**
+     * Number of indexed messages
+     */
+    public synchronized int size() {
+        return docCount;
+    }
+
+    /**
+     * Approximate memory held by the postings and document arrays, in bytes
+     */
+    public synchronized long sizeInBytes() {
+        long bytes = (long) docConversation.length * (Long.BYTES + Integer.BYTES * 2);
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            bytes += entry.getKey().length() * 2L + entry.getValue().data.length + 48;
+        }
+        return bytes + indexed.size() * 48L;
+    }
+
+    /**
+     * Write the index in a compact binary form
+     *
+     * @param out Output
+     * @throws IOException if writing fails
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(docCount);
+        out.writeLong(totalLength);
+        for (int doc = 0; doc < docCount; doc++) {
+            out.writeLong(docConversation[doc]);
+            out.writeInt(docSequence[doc]);
+            out.writeInt(docLength[doc]);
+        }
+        out.writeInt(postings.size());
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            Postings list = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeInt(list.df);
+            out.writeInt(list.lastDoc);
+            out.writeInt(list.length);
+            out.write(list.data, 0, list.length);
+        }
+    }
+
+    /**
+     * Read an index written by {@link #writeTo}
+     *
+     * @param in Input
+     * @return Index
+     * @throws IOException if reading fails or the format is unknown
+     */
+    public static InvertedIndex readFrom(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported index format: " + version);
+        }
+
+        InvertedIndex index = new InvertedIndex();
+        int docCount = in.readInt();
+        int capacity = Math.max(16, docCount);
+        index.docConversation = new long[capacity];
+        index.docSequence = new int[capacity];
+        index.docLength = new int[capacity];
+        index.docCount = docCount;
+        index.totalLength = in.readLong();
+        for (int doc = 0; doc < docCount; doc++) {
+            index.docConversation[doc] = in.readLong();
+            index.docSequence[doc] = in.readInt();
+            index.docLength[doc] = in.readInt();
+            index.indexed.add(key(index.docConversation[doc], index.docSequence[doc]));
+        }
+        int terms = in.readInt();
+        for (int i = 0; i < terms; i++) {
+            String term = in.readUTF();
+            Postings list = new Postings();
+            list.df = in.readInt();
+            list.lastDoc = in.readInt();
+            list.length = in.readInt();
+            list.data = new byte[list.length];
+            in.readFully(list.data);
+            index.postings.put(term, list);
+        }
+        return index;
+    }
+
+    /**
+     * Sequences stay far below 2^24 in practice, leaving 40 bits for the conversation ID
+     */
+    private static long key(long conversationId, int sequence) {
+        return conversationId << 24 | (sequence & 0xFFFFFFL);
+    }
+
+    /**
+     * Best matching message of a conversation
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Hit {
+
+        private long conversationId;
+
+        private int sequence;
+
+        private double score;
+    }
+
+    /**
+     * Varint-encoded posting list of one term
+     */
+    private static class Postings {
+
+        private byte[] data = new byte[8];
+
+        private int length;
+
+        /**
+         * Number of documents containing the term
+         */
+        private int df;
+
+        private int lastDoc = -1;
+
+        private void add(int doc, int frequency) {
+            if (data.length - length < 10) {
+                data = Arrays.copyOf(data, Math.max(16, data.length * 2));
+            }
+            writeVarint(doc - lastDoc);
+            writeVarint(frequency);
+            lastDoc = doc;
+            df++;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+}
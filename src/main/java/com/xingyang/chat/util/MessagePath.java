@@ -0,0 +1,145 @@
+package com.xingyang.chat.util;
+
+import com.xingyang.chat.model.entity.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Materialized path of a message: the sequences from the first message of its branch to itself
+ * <p>
+ * Ancestors always have lower sequences, and a turn takes consecutive ones, so a path is stored as
+ * ascending runs such as "1-5,11-12". A linear conversation stays a single run however long it
+ * gets; every fork adds one. Each run becomes one range on the sequence index when the branch is loaded.
+ *
+ * @author XingYang
+ */
+public final class MessagePath {
+
+    private static final MessagePath ROOT = new MessagePath(Collections.emptyList());
+
+    private final List<Range> ranges;
+
+    private MessagePath(List<Range> ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * Path above the first messages, for messages that start a branch
+     */
+    public static MessagePath root() {
+        return ROOT;
+    }
+
+    /**
+     * Path of a message; messages stored before branching existed have none and are on one linear branch
+     *
+     * @param message Message with its sequence and path
+     * @return Path ending at the message
+     */
+    public static MessagePath of(ChatMessage message) {
+        if (message.getPath() == null || message.getPath().isEmpty()) {
+            return new MessagePath(Collections.singletonList(new Range(1, message.getSequence())));
+        }
+        return parse(message.getPath());
+    }
+
+    /**
+     * Parse a stored path
+     *
+     * @param path Runs as written by {@link #toString}
+     * @return Path
+     * @throws IllegalArgumentException if the path is malformed
+     */
+    public static MessagePath parse(String path) {
+        List<Range> ranges = new ArrayList<>();
+        try {
+            for (String run : path.split(",")) {
+                int dash = run.indexOf('-');
+                int from = Integer.parseInt(dash < 0 ? run : run.substring(0, dash));
+                int to = dash < 0 ? from : Integer.parseInt(run.substring(dash + 1));
+                ranges.add(new Range(from, to));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid message path: " + path, e);
+        }
+        return new MessagePath(Collections.unmodifiableList(ranges));
+    }
+
+    /**
+     * Path of a child message
+     *
+     * @param sequence Sequence of the child, higher than every sequence on this path
+     * @return This path extended by the child
+     */
+    public MessagePath child(int sequence) {
+        List<Range> extended = new ArrayList<>(ranges);
+        int last = extended.size() - 1;
+        if (last >= 0 && extended.get(last).getTo() == sequence - 1) {
+            extended.set(last, new Range(extended.get(last).getFrom(), sequence));
+        } else {
+            extended.add(new Range(sequence, sequence));
+        }
+        return new MessagePath(Collections.unmodifiableList(extended));
+    }
+
+    /**
+     * Whether a sequence lies on this path
+     */
+    public boolean contains(int sequence) {
+        for (Range range : ranges) {
+            if (sequence >= range.getFrom() && sequence <= range.getTo()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sequence of the last message, 0 for the root
+     */
+    public int leaf() {
+        return ranges.isEmpty() ? 0 : ranges.get(ranges.size() - 1).getTo();
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * Runs of consecutive sequences in ascending order
+     */
+    public List<Range> getRanges() {
+        return ranges;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Range range : ranges) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(range.getFrom());
+            if (range.getTo() != range.getFrom()) {
+                builder.append('-').append(range.getTo());
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Inclusive run of sequences
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Range {
+
+        private int from;
+
+        private int to;
+    }
+}
@@ -0,0 +1,79 @@
+package com.xingyang.chat.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tokenizer for the message search index
+ * <p>
+ * Runs of letters and digits become lower-cased words. CJK text has no word boundaries, so runs
+ * of CJK characters become overlapping character bigrams (a lone character stays a unigram), the
+ * same scheme as the MySQL ngram parser used by the full-text index.
+ *
+ * @author XingYang
+ */
+public final class SearchTokenizer {
+
+    /**
+     * Longer words are cut, they are almost always encoded data rather than text
+     */
+    private static final int MAX_WORD_LENGTH = 32;
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * Split text into tokens, in order and with repetitions
+     *
+     * @param text Text to tokenize, may be null
+     * @return Tokens
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                int start = i;
+                while (i < length && isCjk(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                addBigrams(text.substring(start, i), tokens);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < length && !isCjk(text.codePointAt(i)) && Character.isLetterOrDigit(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                String word = text.substring(start, Math.min(i, start + MAX_WORD_LENGTH));
+                tokens.add(word.toLowerCase());
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addBigrams(String run, List<String> tokens) {
+        int[] codePoints = run.codePoints().toArray();
+        if (codePoints.length == 1) {
+            tokens.add(run);
+            return;
+        }
+        for (int i = 0; i < codePoints.length - 1; i++) {
+            tokens.add(new String(codePoints, i, 2));
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,118 @@
+package com.xingyang.chat.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split answers into token-sized chunks for streaming
+ * <p>
+ * This is an approximation of a BPE tokenizer: every CJK character is one token, runs of
+ * letters or digits are one token per four characters, and whitespace sticks to the token
+ * before it. Chunks therefore never start with whitespace (bar leading whitespace of the whole
+ * text), which SSE clients would strip after "data:".
+ *
+ * @author XingYang
+ */
+public final class TokenChunker {
+
+    /**
+     * Maximum characters per token for runs of letters or digits
+     */
+    private static final int MAX_WORD_PIECE = 4;
+
+    private TokenChunker() {
+    }
+
+    /**
+     * Split text into consecutive chunks covering the whole text
+     *
+     * @param text Text to split
+     * @param tokensPerChunk Number of tokens per chunk
+     * @return Chunks in order
+     */
+    public static List<String> split(String text, int tokensPerChunk) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return chunks;
+        }
+
+        int perChunk = Math.max(1, tokensPerChunk);
+        int chunkStart = 0;
+        int tokens = 0;
+        int position = 0;
+        int length = text.length();
+
+        while (position < length) {
+            position = nextTokenEnd(text, position);
+            if (++tokens == perChunk || position >= length) {
+                chunks.add(text.substring(chunkStart, position));
+                chunkStart = position;
+                tokens = 0;
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Estimate the number of tokens in a text
+     *
+     * @param text Text to count
+     * @return Estimated token count
+     */
+    public static int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+
+        int tokens = 0;
+        int position = 0;
+        while (position < text.length()) {
+            position = nextTokenEnd(text, position);
+            tokens++;
+        }
+        return tokens;
+    }
+
+    private static int nextTokenEnd(String text, int start) {
+        int length = text.length();
+        int position = start;
+
+        // Only whitespace at the very start of the text gets here, it joins the first token
+        while (position < length && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        if (position >= length) {
+            return length;
+        }
+
+        int codePoint = text.codePointAt(position);
+        if (isCjk(codePoint) || !Character.isLetterOrDigit(codePoint)) {
+            position += Character.charCount(codePoint);
+        } else {
+            int pieceLength = 0;
+            while (position < length && pieceLength < MAX_WORD_PIECE) {
+                codePoint = text.codePointAt(position);
+                if (isCjk(codePoint) || !Character.isLetterOrDigit(codePoint)) {
+                    break;
+                }
+                position += Character.charCount(codePoint);
+                pieceLength++;
+            }
+        }
+
+        // Trailing whitespace belongs to this token
+        while (position < length && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
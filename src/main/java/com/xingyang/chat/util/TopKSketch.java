@@ -0,0 +1,165 @@
+package com.xingyang.chat.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Streaming heavy-hitters sketch (Space-Saving)
+ * <p>
+ * Tracks at most {@code capacity} keys. When a new key arrives and the sketch is full, the
+ * key with the smallest count is replaced and the newcomer inherits its count as an error
+ * bound, so frequent keys survive while memory stays constant.
+ *
+ * @author XingYang
+ */
+public class TopKSketch {
+
+    private final int capacity;
+
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    /**
+     * Keys grouped by count, lowest count first
+     */
+    private final TreeMap<Long, LinkedHashSet<String>> buckets = new TreeMap<>();
+
+    public TopKSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Count one occurrence of a key
+     *
+     * @param key Key to count
+     */
+    public void add(String key) {
+        add(key, 1L, 0L);
+    }
+
+    /**
+     * Count occurrences of a key and remember the largest tag seen for it
+     *
+     * @param key Key to count
+     * @param weight Number of occurrences
+     * @param tag Caller defined value, e.g. the newest row ID that produced the key
+     */
+    public synchronized void add(String key, long weight, long tag) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            long inherited = 0L;
+            if (counters.size() >= capacity) {
+                Map.Entry<Long, LinkedHashSet<String>> lowest = buckets.firstEntry();
+                Iterator<String> iterator = lowest.getValue().iterator();
+                String evicted = iterator.next();
+                iterator.remove();
+                if (lowest.getValue().isEmpty()) {
+                    buckets.remove(lowest.getKey());
+                }
+                counters.remove(evicted);
+                inherited = lowest.getKey();
+            }
+            counter = new Counter(inherited, inherited, tag);
+            counters.put(key, counter);
+        } else {
+            unlink(key, counter.count);
+        }
+
+        counter.count += weight;
+        counter.tag = Math.max(counter.tag, tag);
+        buckets.computeIfAbsent(counter.count, k -> new LinkedHashSet<>()).add(key);
+    }
+
+    /**
+     * Get the most frequent keys, highest count first
+     *
+     * @param n Maximum number of keys
+     * @return Heavy hitters
+     */
+    public synchronized List<Entry> top(int n) {
+        List<Entry> result = new ArrayList<>(Math.min(n, counters.size()));
+        for (Map.Entry<Long, LinkedHashSet<String>> bucket : buckets.descendingMap().entrySet()) {
+            for (String key : bucket.getValue()) {
+                if (result.size() >= n) {
+                    return result;
+                }
+                Counter counter = counters.get(key);
+                result.add(new Entry(key, counter.count, counter.error, counter.tag));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of keys currently tracked
+     */
+    public synchronized int size() {
+        return counters.size();
+    }
+
+    /**
+     * Forget every key
+     */
+    public synchronized void clear() {
+        counters.clear();
+        buckets.clear();
+    }
+
+    private void unlink(String key, long count) {
+        LinkedHashSet<String> bucket = buckets.get(count);
+        bucket.remove(key);
+        if (bucket.isEmpty()) {
+            buckets.remove(count);
+        }
+    }
+
+    private static class Counter {
+        private long count;
+        private final long error;
+        private long tag;
+
+        Counter(long count, long error, long tag) {
+            this.count = count;
+            this.error = error;
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * Heavy hitter snapshot
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Entry {
+
+        /**
+         * Tracked key
+         */
+        private String key;
+
+        /**
+         * Estimated count, never lower than the true count
+         */
+        private long count;
+
+        /**
+         * Maximum overestimation of the count
+         */
+        private long error;
+
+        /**
+         * Largest tag recorded for the key
+         */
+        private long tag;
+    }
+}
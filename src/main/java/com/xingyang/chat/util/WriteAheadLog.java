@@ -0,0 +1,319 @@
+package com.xingyang.chat.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log with group fsync
+ * <p>
+ * Records are appended to segment files named after their first log sequence number (LSN) and
+ * framed as {@code [lsn][length][crc32][payload]}. A background thread forces the current
+ * segment every sync interval, or earlier once enough bytes are pending, so concurrent writers
+ * share one fsync. A checkpoint file remembers the highest LSN applied downstream; segments
+ * entirely below it are deleted. A torn record at the tail is dropped on recovery.
+ *
+ * @author XingYang
+ */
+@Slf4j
+public class WriteAheadLog implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final long syncIntervalMillis;
+    private final long syncBytes;
+
+    /**
+     * Segment files keyed by their first LSN
+     */
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+    private final Thread syncThread;
+
+    private FileChannel current;
+    private long currentSize;
+    private long lastLsn;
+    private long syncedLsn;
+    private long unsyncedBytes;
+    private long checkpointLsn;
+    private volatile boolean closed;
+
+    /**
+     * Open the log, creating the directory if needed
+     *
+     * @param dir Log directory
+     * @param segmentBytes Size at which a new segment is started
+     * @param syncIntervalMillis Maximum time between fsyncs
+     * @param syncBytes Pending bytes that trigger an early fsync
+     * @throws IOException if the directory or segments cannot be read
+     */
+    public WriteAheadLog(Path dir, long segmentBytes, long syncIntervalMillis, long syncBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.syncIntervalMillis = Math.max(1, syncIntervalMillis);
+        this.syncBytes = syncBytes;
+
+        Files.createDirectories(dir);
+        Path checkpointFile = dir.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpointFile)) {
+            checkpointLsn = Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim());
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).forEach(path -> {
+                String name = path.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), path);
+            });
+        }
+        lastLsn = checkpointLsn;
+        syncedLsn = checkpointLsn;
+
+        syncThread = new Thread(this::syncLoop, "wal-sync");
+        syncThread.setDaemon(true);
+    }
+
+    /**
+     * Read every record above the checkpoint and open a fresh segment for appending
+     * <p>
+     * Must be called once before the first append.
+     *
+     * @return Records not yet checkpointed, in LSN order
+     * @throws IOException if a segment cannot be read
+     */
+    public synchronized List<Record> recover() throws IOException {
+        List<Record> records = new ArrayList<>();
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            readSegment(segment.getValue(), records);
+        }
+        if (!records.isEmpty()) {
+            lastLsn = Math.max(lastLsn, records.get(records.size() - 1).getLsn());
+        }
+        syncedLsn = lastLsn;
+
+        // Never append after a possibly torn tail; start a new segment instead
+        openSegment(lastLsn + 1);
+        syncThread.start();
+
+        records.removeIf(record -> record.getLsn() <= checkpointLsn);
+        return records;
+    }
+
+    /**
+     * Append a record without waiting for it to be durable
+     *
+     * @param payload Record payload
+     * @return LSN of the record
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Write-ahead log is closed");
+        }
+        if (currentSize >= segmentBytes) {
+            current.force(false);
+            current.close();
+            syncedLsn = lastLsn;
+            unsyncedBytes = 0;
+            notifyAll();
+            openSegment(lastLsn + 1);
+        }
+
+        long lsn = lastLsn + 1;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putLong(lsn).putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            current.write(buffer);
+        }
+
+        lastLsn = lsn;
+        currentSize += HEADER_BYTES + payload.length;
+        unsyncedBytes += HEADER_BYTES + payload.length;
+        if (unsyncedBytes >= syncBytes) {
+            notifyAll();
+        }
+        return lsn;
+    }
+
+    /**
+     * Wait until a record has been forced to disk by a group fsync
+     *
+     * @param lsn LSN returned by append
+     * @throws IOException if the log was closed before the record became durable
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitDurable(long lsn) throws IOException, InterruptedException {
+        while (syncedLsn < lsn) {
+            if (closed) {
+                throw new IOException("Write-ahead log closed before record " + lsn + " was synced");
+            }
+            wait(syncIntervalMillis);
+        }
+    }
+
+    /**
+     * Record that everything up to the given LSN has been applied, and drop obsolete segments
+     *
+     * @param lsn Highest applied LSN
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public synchronized void checkpoint(long lsn) throws IOException {
+        if (lsn <= checkpointLsn) {
+            return;
+        }
+        Path temp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(lsn).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(temp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        checkpointLsn = lsn;
+
+        // A segment is obsolete once the next one starts at or below the checkpoint
+        while (segments.size() > 1) {
+            Map.Entry<Long, Path> oldest = segments.firstEntry();
+            if (segments.higherKey(oldest.getKey()) - 1 > checkpointLsn) {
+                break;
+            }
+            Files.deleteIfExists(oldest.getValue());
+            segments.remove(oldest.getKey());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (current != null) {
+                current.force(false);
+                syncedLsn = lastLsn;
+                current.close();
+            }
+            notifyAll();
+        }
+        syncThread.interrupt();
+    }
+
+    private void syncLoop() {
+        while (!closed) {
+            synchronized (this) {
+                try {
+                    if (unsyncedBytes < syncBytes) {
+                        wait(syncIntervalMillis);
+                    }
+                    if (!closed && lastLsn > syncedLsn) {
+                        current.force(false);
+                        syncedLsn = lastLsn;
+                        unsyncedBytes = 0;
+                        notifyAll();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    log.error("Failed to sync write-ahead log", e);
+                }
+            }
+        }
+    }
+
+    private void openSegment(long firstLsn) throws IOException {
+        Path path = dir.resolve(SEGMENT_PREFIX + firstLsn + SEGMENT_SUFFIX);
+        // An existing file here can only hold a torn tail, which recovery already skipped
+        current = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        currentSize = 0;
+        segments.put(firstLsn, path);
+    }
+
+    private void readSegment(Path path, List<Record> records) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (true) {
+                header.clear();
+                if (readFully(channel, header) < HEADER_BYTES) {
+                    return;
+                }
+                header.flip();
+                long lsn = header.getLong();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < 0 || length > channel.size() - channel.position()) {
+                    log.warn("Ignoring torn record at LSN {} in {}", lsn, path.getFileName());
+                    return;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("Ignoring corrupt record at LSN {} in {}", lsn, path.getFileName());
+                    return;
+                }
+                records.add(new Record(lsn, payload.array()));
+            }
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Log record
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Record {
+
+        /**
+         * Log sequence number
+         */
+        private long lsn;
+
+        /**
+         * Record payload
+         */
+        private byte[] payload;
+    }
+}
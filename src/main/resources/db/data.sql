@@ -33,8 +33,8 @@ INSERT INTO `conversation` (title, user_id, model_id, model_config, status, crea
 VALUES ('Introduction Chat', 1, 1, '{"temperature": 0.7}', 1, NOW(), NOW(), 1);
 
 -- Insert sample messages
-INSERT INTO `message` (conversation_id, content, role, token_count, type, create_time, update_time, create_by)
-VALUES (1, 'Hello, can you introduce yourself?', 'user', 10, 'text', NOW(), NOW(), 1);
+INSERT INTO `chat_message` (conversation_id, role, content, sequence, token_count, model_id, create_time, update_time, create_by)
+VALUES (1, 'user', 'Hello, can you introduce yourself?', 1, 10, '1', NOW(), NOW(), 1);
 
-INSERT INTO `message` (conversation_id, content, role, token_count, type, parent_id, create_time, update_time, create_by)
-VALUES (1, 'Hello! I am SmartAI, an advanced AI assistant designed to provide helpful, harmless, and honest responses to your questions and requests. I can assist with a wide range of tasks including answering questions, generating creative content, providing information, and having thoughtful conversations. How can I help you today?', 'assistant', 62, 'text', 1, NOW(), NOW(), 1); 
\ No newline at end of file
+INSERT INTO `chat_message` (conversation_id, role, content, sequence, token_count, model_id, create_time, update_time, create_by)
+VALUES (1, 'assistant', 'Hello! I am SmartAI, an advanced AI assistant designed to provide helpful, harmless, and honest responses to your questions and requests. I can assist with a wide range of tasks including answering questions, generating creative content, providing information, and having thoughtful conversations. How can I help you today?', 2, 62, '1', NOW(), NOW(), 1); 
\ No newline at end of file
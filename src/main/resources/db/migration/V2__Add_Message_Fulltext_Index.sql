@@ -0,0 +1,31 @@
+-- V1 never created the message table; databases set up from schema.sql already have it.
+-- Create it here so the chain also runs on a fresh database.
+CREATE TABLE IF NOT EXISTS `message` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT 'Primary key ID',
+  `conversation_id` bigint(20) NOT NULL COMMENT 'Conversation ID',
+  `content` text NOT NULL COMMENT 'Message content',
+  `role` varchar(20) NOT NULL COMMENT 'Message role (user/assistant/system)',
+  `token_count` int(11) DEFAULT 0 COMMENT 'Token count',
+  `type` varchar(20) DEFAULT 'text' COMMENT 'Message type (text/image/audio)',
+  `parent_id` bigint(20) DEFAULT NULL COMMENT 'Parent message ID',
+  `metadata` text DEFAULT NULL COMMENT 'Message metadata (JSON format)',
+  `model_id` bigint(20) DEFAULT NULL COMMENT 'Model ID used for this message',
+  `create_time` datetime NOT NULL COMMENT 'Creation time',
+  `update_time` datetime NOT NULL COMMENT 'Update time',
+  `create_by` bigint(20) DEFAULT NULL COMMENT 'Creator ID',
+  `update_by` bigint(20) DEFAULT NULL COMMENT 'Updater ID',
+  `deleted` int(1) DEFAULT 0 COMMENT 'Logical delete flag (0: not deleted, 1: deleted)',
+  `version` int(11) DEFAULT 1 COMMENT 'Version number',
+  PRIMARY KEY (`id`),
+  KEY `idx_conversation_id` (`conversation_id`) USING BTREE,
+  KEY `idx_parent_id` (`parent_id`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Message table';
+
+-- Full-text index over message content for similar-question lookup.
+-- The ngram parser tokenizes CJK text, which the default parser cannot split into words.
+ALTER TABLE `message`
+  ADD FULLTEXT INDEX `ft_content` (`content`) WITH PARSER ngram;
+
+-- Supports the time window filter on user questions
+ALTER TABLE `message`
+  ADD INDEX `idx_role_create_time` (`role`, `create_time`);
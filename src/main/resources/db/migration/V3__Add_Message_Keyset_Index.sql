@@ -0,0 +1,10 @@
+-- Keyset pagination over a conversation's messages.
+-- Equality on conversation_id and deleted, then range and order on sequence,
+-- so a page of N messages is a single index range scan of N entries.
+ALTER TABLE `chat_message`
+  ADD INDEX `idx_conversation_deleted_sequence` (`conversation_id`, `deleted`, `sequence`);
+
+-- Both are prefixes of the new index
+ALTER TABLE `chat_message`
+  DROP INDEX `idx_sequence`,
+  DROP INDEX `idx_conversation_id`;
@@ -0,0 +1,24 @@
+-- Denormalized list-view fields, maintained on every appended turn
+ALTER TABLE `conversation`
+  ADD COLUMN `last_message_preview` varchar(255) DEFAULT NULL COMMENT '最新消息预览' AFTER `status`,
+  ADD COLUMN `message_count` int(11) NOT NULL DEFAULT '0' COMMENT '消息数量' AFTER `last_message_preview`,
+  ADD COLUMN `total_tokens` int(11) NOT NULL DEFAULT '0' COMMENT 'Token总数' AFTER `message_count`;
+
+-- Keyset pagination of a user's conversations, newest first, without a filesort
+ALTER TABLE `conversation`
+  ADD INDEX `idx_user_deleted_update_time` (`user_id`, `deleted`, `update_time`, `id`),
+  DROP INDEX `idx_user_id`;
+
+-- Backfill counters and previews from existing messages
+UPDATE `conversation` c
+JOIN (
+  SELECT conversation_id, COUNT(*) AS message_count, COALESCE(SUM(token_count), 0) AS total_tokens,
+         MAX(sequence) AS last_sequence
+  FROM `chat_message`
+  WHERE deleted = 0
+  GROUP BY conversation_id
+) s ON s.conversation_id = c.id
+JOIN `chat_message` m ON m.conversation_id = s.conversation_id AND m.sequence = s.last_sequence AND m.deleted = 0
+SET c.message_count = s.message_count,
+    c.total_tokens = s.total_tokens,
+    c.last_message_preview = LEFT(m.content, 100);
@@ -0,0 +1,10 @@
+-- Long message content is stored compressed in content_blob (first byte: codec), short content
+-- stays in content so the full-text index keeps covering questions. Exactly one of them is set.
+-- Existing rows are converted with POST /admin/messages/compress.
+ALTER TABLE `chat_message`
+  MODIFY COLUMN `content` text DEFAULT NULL COMMENT 'Message content, NULL if compressed',
+  ADD COLUMN `content_blob` mediumblob DEFAULT NULL COMMENT 'Compressed message content' AFTER `content`;
+
+ALTER TABLE `message`
+  MODIFY COLUMN `content` text DEFAULT NULL COMMENT 'Message content, NULL if compressed',
+  ADD COLUMN `content_blob` mediumblob DEFAULT NULL COMMENT 'Compressed message content' AFTER `content`;
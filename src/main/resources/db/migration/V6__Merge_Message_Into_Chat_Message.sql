@@ -0,0 +1,77 @@
+-- chat_message becomes the only message store; the similar-question lookup moves with it
+ALTER TABLE `chat_message`
+  ADD FULLTEXT INDEX `ft_content` (`content`) WITH PARSER ngram,
+  ADD INDEX `idx_role_create_time` (`role`, `create_time`);
+
+-- Most turns were written to both tables within moments of each other; cache hits only to message.
+-- A message row is the copy of a chat_message row of the same turn when both have the same role and
+-- are each other's closest row by create_time, at most a minute apart. Content is not compared, so
+-- a repeated "ok" of a later turn is not mistaken for an earlier one. Deleted chat_message rows are
+-- matched too, so a message deleted there does not come back.
+CREATE TEMPORARY TABLE `message_copy` (PRIMARY KEY (`message_id`))
+SELECT message_id
+FROM (
+  SELECT m.id AS message_id,
+         ROW_NUMBER() OVER (PARTITION BY c.id
+                            ORDER BY ABS(TIMESTAMPDIFF(MICROSECOND, c.create_time, m.create_time)), m.id) AS rank_for_chat,
+         ROW_NUMBER() OVER (PARTITION BY m.id
+                            ORDER BY ABS(TIMESTAMPDIFF(MICROSECOND, c.create_time, m.create_time)), c.id) AS rank_for_message
+  FROM `message` m
+  JOIN `chat_message` c ON c.conversation_id = m.conversation_id AND c.role = m.role
+    AND c.create_time BETWEEN m.create_time - INTERVAL 60 SECOND AND m.create_time + INTERVAL 60 SECOND
+  WHERE m.deleted = 0
+) pairs
+WHERE rank_for_chat = 1 AND rank_for_message = 1;
+
+-- Copy the rest with provisional sequences above the conversation's, in their original order
+INSERT INTO `chat_message` (conversation_id, role, content, content_blob, sequence, token_count, model_id,
+                            create_time, update_time, create_by, update_by, deleted, version)
+SELECT m.conversation_id, m.role, m.content, m.content_blob,
+       COALESCE(s.last_sequence, 0) + ROW_NUMBER() OVER (PARTITION BY m.conversation_id ORDER BY m.create_time, m.id),
+       m.token_count, CAST(m.model_id AS CHAR), m.create_time, m.update_time, m.create_by, m.update_by, 0, 1
+FROM `message` m
+LEFT JOIN (
+  SELECT conversation_id, MAX(sequence) AS last_sequence
+  FROM `chat_message`
+  GROUP BY conversation_id
+) s ON s.conversation_id = m.conversation_id
+WHERE m.deleted = 0
+  AND m.id NOT IN (SELECT message_id FROM `message_copy`);
+
+-- Renumber the conversations that gained messages in create_time order; rows of one turn share a
+-- create_time and keep their relative order
+CREATE TEMPORARY TABLE `message_order` (PRIMARY KEY (`id`))
+SELECT c.id, ROW_NUMBER() OVER (PARTITION BY c.conversation_id ORDER BY c.create_time, c.sequence, c.id) AS sequence
+FROM `chat_message` c
+WHERE c.conversation_id IN (
+  SELECT m.conversation_id FROM `message` m
+  WHERE m.deleted = 0 AND m.id NOT IN (SELECT message_id FROM `message_copy`)
+);
+
+UPDATE `chat_message` c
+JOIN `message_order` o ON o.id = c.id
+SET c.sequence = o.sequence
+WHERE c.sequence <> o.sequence;
+
+DROP TEMPORARY TABLE `message_order`;
+DROP TEMPORARY TABLE `message_copy`;
+
+-- Refresh counters and previews of the conversations that gained messages
+UPDATE `conversation` c
+JOIN (
+  SELECT conversation_id, COUNT(*) AS message_count, COALESCE(SUM(token_count), 0) AS total_tokens,
+         MAX(sequence) AS last_sequence
+  FROM `chat_message`
+  WHERE deleted = 0
+  GROUP BY conversation_id
+) s ON s.conversation_id = c.id
+JOIN `chat_message` m ON m.conversation_id = s.conversation_id AND m.sequence = s.last_sequence AND m.deleted = 0
+SET c.message_count = s.message_count,
+    c.total_tokens = s.total_tokens,
+    -- Codec 1 in content_blob is the COMPRESS() layout, codec 0 plain text
+    c.last_message_preview = LEFT(COALESCE(m.content, CONVERT(IF(ASCII(m.content_blob) = 1,
+        UNCOMPRESS(SUBSTRING(m.content_blob, 2)), SUBSTRING(m.content_blob, 2)) USING utf8mb4)), 100)
+WHERE c.message_count <> s.message_count;
+
+-- Kept as a backup until the merge is verified; nothing reads or writes it any more
+RENAME TABLE `message` TO `message_legacy`;
@@ -0,0 +1,13 @@
+-- Token usage per user, model and hour, written by the usage meter in batched upserts.
+-- The primary key serves both the upsert and the per-user quota sum over a time range.
+CREATE TABLE IF NOT EXISTS `usage_hourly` (
+  `user_id` bigint(20) NOT NULL COMMENT 'User ID, 0 for calls without a user',
+  `hour` datetime NOT NULL COMMENT 'Start of the hour',
+  `model` varchar(100) NOT NULL COMMENT 'Upstream model ID',
+  `prompt_tokens` bigint(20) NOT NULL DEFAULT 0 COMMENT 'Prompt tokens',
+  `completion_tokens` bigint(20) NOT NULL DEFAULT 0 COMMENT 'Completion tokens',
+  `requests` int(11) NOT NULL DEFAULT 0 COMMENT 'Number of upstream calls',
+  `update_time` datetime NOT NULL COMMENT 'Update time',
+  PRIMARY KEY (`user_id`, `hour`, `model`),
+  KEY `idx_hour` (`hour`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Hourly token usage table';
@@ -0,0 +1,10 @@
+-- Messages form a tree per conversation, parents referenced by sequence. The path lists the ancestor
+-- sequences as runs ("1-5,11-12"), so a branch loads with range scans on the sequence index.
+-- Older rows keep NULL in both and read as one linear branch.
+ALTER TABLE `chat_message`
+  ADD COLUMN `parent_sequence` int(11) DEFAULT NULL COMMENT 'Sequence of the parent message, 0 for a first message' AFTER `sequence`,
+  ADD COLUMN `path` text DEFAULT NULL COMMENT 'Sequences from the first message to this one, as runs' AFTER `parent_sequence`,
+  ADD INDEX `idx_conversation_deleted_parent` (`conversation_id`, `deleted`, `parent_sequence`, `sequence`);
+
+ALTER TABLE `conversation`
+  ADD COLUMN `active_sequence` int(11) DEFAULT NULL COMMENT 'Last message of the active branch, NULL for the latest message' AFTER `total_tokens`;
@@ -0,0 +1,7 @@
+-- Sequences come from a Redis counter and fall back to MAX(sequence) + 1 while Redis is down, and the
+-- append lock is node-local without Redis too. Two nodes can then pick the same sequence; the unique
+-- key makes that insert fail instead of silently interleaving two messages at one position.
+-- Existing duplicates must be renumbered first, find them with:
+--   SELECT conversation_id, sequence, COUNT(*) FROM chat_message GROUP BY conversation_id, sequence HAVING COUNT(*) > 1;
+ALTER TABLE `chat_message`
+  ADD UNIQUE INDEX `uk_conversation_sequence` (`conversation_id`, `sequence`);
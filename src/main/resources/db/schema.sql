@@ -85,6 +85,10 @@ CREATE TABLE IF NOT EXISTS `conversation` (
   `model_id` bigint(20) NOT NULL COMMENT 'Model ID',
   `model_config` text DEFAULT NULL COMMENT 'Model configuration (JSON format)',
   `status` int(1) DEFAULT 1 COMMENT 'Status (0: archived, 1: active)',
+  `last_message_preview` varchar(255) DEFAULT NULL COMMENT 'Start of the latest message',
+  `message_count` int(11) NOT NULL DEFAULT 0 COMMENT 'Number of messages',
+  `total_tokens` int(11) NOT NULL DEFAULT 0 COMMENT 'Total tokens of all messages',
+  `active_sequence` int(11) DEFAULT NULL COMMENT 'Last message of the active branch, NULL for the latest message',
   `create_time` datetime NOT NULL COMMENT 'Creation time',
   `update_time` datetime NOT NULL COMMENT 'Update time',
   `create_by` bigint(20) DEFAULT NULL COMMENT 'Creator ID',
@@ -92,27 +96,45 @@ CREATE TABLE IF NOT EXISTS `conversation` (
   `deleted` int(1) DEFAULT 0 COMMENT 'Logical delete flag (0: not deleted, 1: deleted)',
   `version` int(11) DEFAULT 1 COMMENT 'Version number',
   PRIMARY KEY (`id`),
-  KEY `idx_user_id` (`user_id`) USING BTREE
+  KEY `idx_user_deleted_update_time` (`user_id`, `deleted`, `update_time`, `id`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Conversation table';
 
--- Message table
-CREATE TABLE IF NOT EXISTS `message` (
+-- Chat message table
+CREATE TABLE IF NOT EXISTS `chat_message` (
   `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT 'Primary key ID',
   `conversation_id` bigint(20) NOT NULL COMMENT 'Conversation ID',
-  `content` text NOT NULL COMMENT 'Message content',
-  `role` varchar(20) NOT NULL COMMENT 'Message role (user/assistant/system)',
-  `token_count` int(11) DEFAULT 0 COMMENT 'Token count',
-  `type` varchar(20) DEFAULT 'text' COMMENT 'Message type (text/image/audio)',
-  `parent_id` bigint(20) DEFAULT NULL COMMENT 'Parent message ID',
-  `metadata` text DEFAULT NULL COMMENT 'Message metadata (JSON format)',
-  `model_id` bigint(20) DEFAULT NULL COMMENT 'Model ID used for this message',
+  `role` varchar(50) NOT NULL COMMENT 'Message role (user/assistant/system)',
+  `content` text DEFAULT NULL COMMENT 'Message content, NULL if compressed',
+  `content_blob` mediumblob DEFAULT NULL COMMENT 'Compressed message content',
+  `sequence` int(11) NOT NULL COMMENT 'Message sequence in conversation',
+  `parent_sequence` int(11) DEFAULT NULL COMMENT 'Sequence of the parent message, 0 for a first message',
+  `path` text DEFAULT NULL COMMENT 'Sequences from the first message to this one, as runs',
+  `token_count` int(11) DEFAULT NULL COMMENT 'Token count',
+  `model_id` varchar(50) DEFAULT NULL COMMENT 'Model ID used for this message',
   `create_time` datetime NOT NULL COMMENT 'Creation time',
   `update_time` datetime NOT NULL COMMENT 'Update time',
   `create_by` bigint(20) DEFAULT NULL COMMENT 'Creator ID',
   `update_by` bigint(20) DEFAULT NULL COMMENT 'Updater ID',
-  `deleted` int(1) DEFAULT 0 COMMENT 'Logical delete flag (0: not deleted, 1: deleted)',
-  `version` int(11) DEFAULT 1 COMMENT 'Version number',
+  `deleted` int(1) NOT NULL DEFAULT 0 COMMENT 'Logical delete flag (0: not deleted, 1: deleted)',
+  `version` int(11) NOT NULL DEFAULT 1 COMMENT 'Version number',
   PRIMARY KEY (`id`),
-  KEY `idx_conversation_id` (`conversation_id`) USING BTREE,
-  KEY `idx_parent_id` (`parent_id`) USING BTREE
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Message table'; 
\ No newline at end of file
+  UNIQUE KEY `uk_conversation_sequence` (`conversation_id`, `sequence`) USING BTREE,
+  KEY `idx_conversation_deleted_sequence` (`conversation_id`, `deleted`, `sequence`) USING BTREE,
+  KEY `idx_conversation_deleted_parent` (`conversation_id`, `deleted`, `parent_sequence`, `sequence`) USING BTREE,
+  KEY `idx_create_time` (`create_time`) USING BTREE,
+  KEY `idx_role_create_time` (`role`, `create_time`) USING BTREE,
+  FULLTEXT KEY `ft_content` (`content`) WITH PARSER ngram
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Chat message table';
+
+-- Hourly token usage table
+CREATE TABLE IF NOT EXISTS `usage_hourly` (
+  `user_id` bigint(20) NOT NULL COMMENT 'User ID, 0 for calls without a user',
+  `hour` datetime NOT NULL COMMENT 'Start of the hour',
+  `model` varchar(100) NOT NULL COMMENT 'Upstream model ID',
+  `prompt_tokens` bigint(20) NOT NULL DEFAULT 0 COMMENT 'Prompt tokens',
+  `completion_tokens` bigint(20) NOT NULL DEFAULT 0 COMMENT 'Completion tokens',
+  `requests` int(11) NOT NULL DEFAULT 0 COMMENT 'Number of upstream calls',
+  `update_time` datetime NOT NULL COMMENT 'Update time',
+  PRIMARY KEY (`user_id`, `hour`, `model`),
+  KEY `idx_hour` (`hour`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Hourly token usage table';
@@ -0,0 +1,247 @@
+package com.xingyang.chat.service.impl;
+
+import com.xingyang.chat.config.ConversationConfig;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.mapper.ConversationMapper;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.model.entity.Conversation;
+import com.xingyang.chat.model.vo.ConversationImportVO;
+import com.xingyang.chat.service.ConversationArchiveService;
+import com.xingyang.chat.service.ConversationIndexService;
+import com.xingyang.chat.service.MessageSearchService;
+import com.xingyang.chat.util.JwtTokenUtil;
+import com.xingyang.chat.util.MessagePath;
+import com.xingyang.chat.util.SecurityUtil;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * An export fed back into the import restores the conversations with their branches
+ *
+ * @author XingYang
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ConversationExportImportTest {
+
+    private static final Long USER_ID = 7L;
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 3, 1, 10, 15, 30);
+
+    @Mock
+    private ConversationMapper conversationMapper;
+
+    @Mock
+    private ChatMessageMapper chatMessageMapper;
+
+    @Mock
+    private ConversationArchiveService conversationArchiveService;
+
+    @Mock
+    private ConversationIndexService conversationIndexService;
+
+    @Mock
+    private MessageSearchService messageSearchService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private JwtTokenUtil jwtTokenUtil;
+
+    private ConversationExportServiceImpl exportService;
+
+    private ConversationImportServiceImpl importService;
+
+    private final List<Conversation> insertedConversations = new ArrayList<>();
+
+    private final List<ChatMessage> insertedMessages = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer token");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        when(jwtTokenUtil.getUserIdFromToken("Bearer token")).thenReturn(USER_ID);
+        SecurityUtil.setJwtTokenUtil(jwtTokenUtil);
+
+        exportService = new ConversationExportServiceImpl();
+        ReflectionTestUtils.setField(exportService, "conversationMapper", conversationMapper);
+        ReflectionTestUtils.setField(exportService, "chatMessageMapper", chatMessageMapper);
+        ReflectionTestUtils.setField(exportService, "conversationArchiveService", conversationArchiveService);
+
+        importService = new ConversationImportServiceImpl();
+        ReflectionTestUtils.setField(importService, "conversationMapper", conversationMapper);
+        ReflectionTestUtils.setField(importService, "chatMessageMapper", chatMessageMapper);
+        ReflectionTestUtils.setField(importService, "conversationIndexService", conversationIndexService);
+        ReflectionTestUtils.setField(importService, "messageSearchService", messageSearchService);
+        ReflectionTestUtils.setField(importService, "conversationConfig", new ConversationConfig());
+        ReflectionTestUtils.setField(importService, "transactionManager", transactionManager);
+        importService.init();
+
+        doAnswer(invocation -> {
+            List<Conversation> conversations = invocation.getArgument(0);
+            for (Conversation conversation : conversations) {
+                conversation.setId(100L + insertedConversations.size());
+                insertedConversations.add(conversation);
+            }
+            return conversations.size();
+        }).when(conversationMapper).insertBatch(anyList());
+        doAnswer(invocation -> {
+            List<ChatMessage> messages = invocation.getArgument(0);
+            insertedMessages.addAll(messages);
+            return messages.size();
+        }).when(chatMessageMapper).insertBatch(anyList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityUtil.setJwtTokenUtil(null);
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void exportImportsBackWithBranches() throws Exception {
+        Conversation branched = conversation(11L, "Redis");
+        Conversation empty = conversation(12L, "Empty");
+        Conversation legacy = conversation(13L, "Legacy");
+        List<ChatMessage> messages = Arrays.asList(
+                // Sequence 3 was deleted; 4 regenerates the answer to 1 and 5 continues from it
+                message(11L, 1, 0, "user", "How do I configure Redis?"),
+                message(11L, 2, 1, "assistant", "Add spring-boot-starter-data-redis."),
+                message(11L, 4, 1, "assistant", "Use Lettuce with a pool."),
+                message(11L, 5, 4, "user", "Which pool size?"),
+                // Stored before branching, without a parent
+                message(13L, 1, null, "user", "Hello"),
+                message(13L, 2, null, "assistant", "Hi"));
+        when(conversationArchiveService.isArchived(any())).thenReturn(false);
+        Cursor<Conversation> conversations = cursor(Arrays.asList(branched, empty, legacy));
+        Cursor<ChatMessage> messageCursor = cursor(messages);
+        when(conversationMapper.streamByUserId(USER_ID)).thenReturn(conversations);
+        when(chatMessageMapper.streamByUserId(USER_ID)).thenReturn(messageCursor);
+
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        exportService.export(exported);
+        ConversationImportVO result = importService.importConversations(
+                new ByteArrayInputStream(exported.toByteArray()));
+
+        assertThat(result.getRejected()).as("errors: %s", result.getErrors()).isZero();
+        assertThat(result.getConversations()).isEqualTo(3);
+        assertThat(result.getMessages()).isEqualTo(6);
+        assertThat(insertedConversations).extracting(Conversation::getTitle)
+                .containsExactly("Redis", "Legacy", "Empty");
+        Conversation imported = insertedConversations.get(0);
+        assertThat(imported.getUserId()).isEqualTo(USER_ID);
+        assertThat(imported.getCreateTime()).isEqualTo(CREATED);
+        assertThat(imported.getMessageCount()).isEqualTo(4);
+
+        List<ChatMessage> restored = messagesOf(imported.getId());
+        assertThat(restored).extracting(ChatMessage::getSequence).containsExactly(1, 2, 3, 4);
+        assertThat(restored).extracting(ChatMessage::getParentSequence).containsExactly(0, 1, 1, 3);
+        assertThat(restored.get(3).getPath())
+                .isEqualTo(MessagePath.root().child(1).child(3).child(4).toString());
+        assertThat(restored).extracting(ChatMessage::getCreateTime).containsOnly(CREATED);
+        assertThat(restored.get(1).getTokenCount()).isEqualTo(42);
+
+        List<ChatMessage> linear = messagesOf(insertedConversations.get(1).getId());
+        assertThat(linear).extracting(ChatMessage::getParentSequence).containsExactly(0, 1);
+        assertThat(messagesOf(insertedConversations.get(2).getId())).isEmpty();
+    }
+
+    @Test
+    void rejectsUnknownTypesAndOrphanMessages() throws Exception {
+        String upload = "{\"type\":\"folder\",\"id\":1}\n"
+                + "{\"type\":\"message\",\"conversationId\":5,\"sequence\":1,\"role\":\"user\",\"content\":\"Hi\"}\n";
+
+        ConversationImportVO result = importService.importConversations(
+                new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getConversations()).isZero();
+        assertThat(insertedConversations).isEmpty();
+    }
+
+    @Test
+    void readsNestedConversationsWithLocalTimestamps() throws Exception {
+        long timestamp = CREATED.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        String upload = "{\"title\":\"Nested\",\"messages\":[{\"role\":\"user\",\"content\":\"Hi\",\"timestamp\":"
+                + timestamp + "}]}";
+
+        ConversationImportVO result = importService.importConversations(
+                new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result.getConversations()).isEqualTo(1);
+        assertThat(insertedMessages).hasSize(1);
+        assertThat(insertedMessages.get(0).getCreateTime())
+                .isEqualTo(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+    }
+
+    private List<ChatMessage> messagesOf(Long conversationId) {
+        return insertedMessages.stream()
+                .filter(message -> conversationId.equals(message.getConversationId()))
+                .collect(Collectors.toList());
+    }
+
+    private static Conversation conversation(Long id, String title) {
+        Conversation conversation = new Conversation();
+        conversation.setId(id);
+        conversation.setTitle(title);
+        conversation.setUserId(USER_ID);
+        conversation.setModelId(3L);
+        conversation.setStatus(1);
+        conversation.setCreateTime(CREATED);
+        conversation.setUpdateTime(CREATED);
+        return conversation;
+    }
+
+    private static ChatMessage message(Long conversationId, int sequence, Integer parentSequence, String role,
+                                       String content) {
+        ChatMessage message = new ChatMessage();
+        message.setConversationId(conversationId);
+        message.setSequence(sequence);
+        message.setParentSequence(parentSequence);
+        message.setRole(role);
+        message.setContent(content);
+        message.setTokenCount(42);
+        message.setCreateTime(CREATED);
+        return message;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Cursor<T> cursor(List<T> rows) {
+        Cursor<T> cursor = mock(Cursor.class);
+        when(cursor.iterator()).thenReturn(Collections.unmodifiableList(rows).iterator());
+        return cursor;
+    }
+}
@@ -0,0 +1,124 @@
+package com.xingyang.chat.service.impl;
+
+import com.xingyang.chat.config.PersistenceConfig;
+import com.xingyang.chat.mapper.ChatMessageMapper;
+import com.xingyang.chat.model.entity.ChatMessage;
+import com.xingyang.chat.service.MessageWriteBehindService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Blocks are reserved from a counter seeded once from the highest stored or pending sequence
+ *
+ * @author XingYang
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MessageSequenceServiceImplTest {
+
+    private static final Long CONVERSATION_ID = 42L;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ChatMessageMapper chatMessageMapper;
+
+    @Mock
+    private MessageWriteBehindService messageWriteBehindService;
+
+    private MessageSequenceServiceImpl sequenceService;
+
+    /**
+     * Counters the scripts run against, standing in for Redis
+     */
+    private final Map<String, Long> counters = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        sequenceService = new MessageSequenceServiceImpl();
+        ReflectionTestUtils.setField(sequenceService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(sequenceService, "chatMessageMapper", chatMessageMapper);
+        ReflectionTestUtils.setField(sequenceService, "messageWriteBehindService", messageWriteBehindService);
+        ReflectionTestUtils.setField(sequenceService, "persistenceConfig", new PersistenceConfig());
+
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any())).thenAnswer(invocation -> {
+            String key = invocation.<List<String>>getArgument(1).get(0);
+            if (!counters.containsKey(key)) {
+                return -1L;
+            }
+            return counters.merge(key, Long.parseLong(invocation.getArgument(2)), Long::sum);
+        });
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenAnswer(invocation -> {
+            String key = invocation.<List<String>>getArgument(1).get(0);
+            counters.putIfAbsent(key, Long.parseLong(invocation.getArgument(2)));
+            return counters.merge(key, Long.parseLong(invocation.getArgument(3)), Long::sum);
+        });
+    }
+
+    @Test
+    void seedsFromStoredAndPendingMaximum() {
+        when(chatMessageMapper.getMaxAllocatedSequence(CONVERSATION_ID)).thenReturn(5);
+        when(messageWriteBehindService.getPendingMessages(CONVERSATION_ID))
+                .thenReturn(Collections.singletonList(message(7)));
+
+        assertThat(sequenceService.allocate(CONVERSATION_ID, 2)).isEqualTo(8);
+        assertThat(sequenceService.allocate(CONVERSATION_ID, 1)).isEqualTo(10);
+        assertThat(sequenceService.allocate(CONVERSATION_ID, 3)).isEqualTo(11);
+        verify(chatMessageMapper, times(1)).getMaxAllocatedSequence(CONVERSATION_ID);
+    }
+
+    @Test
+    void blocksNeverOverlap() {
+        when(chatMessageMapper.getMaxAllocatedSequence(CONVERSATION_ID)).thenReturn(0);
+        when(messageWriteBehindService.getPendingMessages(CONVERSATION_ID)).thenReturn(Collections.emptyList());
+
+        Set<Integer> allocated = new HashSet<>();
+        for (int turn = 0; turn < 50; turn++) {
+            int first = sequenceService.allocate(CONVERSATION_ID, 2);
+            assertThat(allocated.add(first)).isTrue();
+            assertThat(allocated.add(first + 1)).isTrue();
+        }
+        assertThat(allocated).hasSize(100).contains(1, 100);
+    }
+
+    @Test
+    void fallsBackToStoredMaximumWithoutRedis() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        when(chatMessageMapper.getMaxAllocatedSequence(CONVERSATION_ID)).thenReturn(12);
+        when(messageWriteBehindService.getPendingMessages(CONVERSATION_ID)).thenReturn(Collections.emptyList());
+
+        assertThat(sequenceService.allocate(CONVERSATION_ID, 2)).isEqualTo(13);
+    }
+
+    private static ChatMessage message(int sequence) {
+        ChatMessage message = new ChatMessage();
+        message.setConversationId(CONVERSATION_ID);
+        message.setSequence(sequence);
+        return message;
+    }
+}
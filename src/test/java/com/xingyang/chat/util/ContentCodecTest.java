@@ -0,0 +1,70 @@
+package com.xingyang.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Content decodes to what was encoded, in the layout of MySQL's COMPRESS()
+ *
+ * @author XingYang
+ */
+class ContentCodecTest {
+
+    @Test
+    void compressesRepetitiveText() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append("Redis 缓存配置 line ").append(i % 10).append('\n');
+        }
+        String content = builder.toString();
+        int rawLength = content.getBytes(StandardCharsets.UTF_8).length;
+
+        byte[] encoded = ContentCodec.encode(content);
+
+        assertThat(encoded[0]).isEqualTo(ContentCodec.CODEC_ZLIB);
+        assertThat(encoded.length).isLessThan(rawLength);
+        // Uncompressed length, 4 bytes little-endian, as COMPRESS() writes it
+        int length = (encoded[1] & 0xff) | (encoded[2] & 0xff) << 8 | (encoded[3] & 0xff) << 16
+                | (encoded[4] & 0xff) << 24;
+        assertThat(length).isEqualTo(rawLength);
+        assertThat(ContentCodec.decode(encoded)).isEqualTo(content);
+    }
+
+    @Test
+    void keepsIncompressibleContentPlain() {
+        // Too short for the zlib header and the length prefix to pay off
+        String content = "ok";
+
+        byte[] encoded = ContentCodec.encode(content);
+
+        assertThat(encoded[0]).isEqualTo(ContentCodec.CODEC_PLAIN);
+        assertThat(encoded.length).isEqualTo(content.length() + 1);
+        assertThat(ContentCodec.decode(encoded)).isEqualTo(content);
+    }
+
+    @Test
+    void decodesNullAndRejectsUnknownCodec() {
+        assertThat(ContentCodec.decode(null)).isNull();
+        assertThat(ContentCodec.decode(new byte[0])).isNull();
+        assertThat(ContentCodec.decode(new byte[]{ContentCodec.CODEC_PLAIN})).isEmpty();
+        assertThatThrownBy(() -> ContentCodec.decode(new byte[]{9, 1, 2}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void compressesFromThreshold() {
+        int threshold = ContentCodec.getThreshold();
+        try {
+            ContentCodec.setThreshold(4);
+            assertThat(ContentCodec.isCompressible("abc")).isFalse();
+            assertThat(ContentCodec.isCompressible("abcd")).isTrue();
+            assertThat(ContentCodec.isCompressible(null)).isFalse();
+        } finally {
+            ContentCodec.setThreshold(threshold);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.xingyang.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Search returns the best message per conversation, and the binary forms restore the same index
+ *
+ * @author XingYang
+ */
+class InvertedIndexTest {
+
+    @Test
+    void ranksBestConversationFirst() {
+        InvertedIndex index = sampleIndex();
+
+        List<InvertedIndex.Hit> hits = index.search("redis cache", 10);
+
+        assertThat(hits).extracting(InvertedIndex.Hit::getConversationId).containsExactly(1L, 2L);
+        assertThat(hits.get(0).getSequence()).isEqualTo(2);
+        assertThat(hits.get(0).getScore()).isGreaterThan(hits.get(1).getScore());
+    }
+
+    @Test
+    void keepsOneHitPerConversation() {
+        InvertedIndex index = sampleIndex();
+
+        assertThat(index.search("redis", 10)).extracting(InvertedIndex.Hit::getConversationId)
+                .doesNotHaveDuplicates();
+        assertThat(index.search("redis", 1)).hasSize(1);
+        assertThat(index.search("kafka", 10)).isEmpty();
+    }
+
+    @Test
+    void skipsMessagesAlreadyIndexed() {
+        InvertedIndex index = new InvertedIndex();
+
+        assertThat(index.add(1L, 1, "hello")).isTrue();
+        assertThat(index.add(1L, 1, "hello again")).isFalse();
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    void searchesCjkContent() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(1L, 1, "如何配置数据库连接池");
+        index.add(2L, 1, "今天天气很好");
+
+        assertThat(index.search("数据库", 10)).extracting(InvertedIndex.Hit::getConversationId).containsExactly(1L);
+    }
+
+    @Test
+    void restoresFromSnapshot() throws Exception {
+        InvertedIndex index = sampleIndex();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.writeTo(out);
+        }
+
+        InvertedIndex restored = InvertedIndex.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(restored.size()).isEqualTo(index.size());
+        assertThat(restored.search("redis cache", 10)).isEqualTo(index.search("redis cache", 10));
+    }
+
+    @Test
+    void addsWrittenDocuments() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            InvertedIndex.writeDocument(out, 3L, 7, "Lettuce connection pool");
+            InvertedIndex.writeDocument(out, 3L, 7, "Lettuce connection pool");
+        }
+
+        InvertedIndex index = new InvertedIndex();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThat(index.readDocument(in)).isTrue();
+        assertThat(index.readDocument(in)).isFalse();
+
+        List<InvertedIndex.Hit> hits = index.search("pool", 10);
+        assertThat(hits).singleElement().satisfies(hit -> {
+            assertThat(hit.getConversationId()).isEqualTo(3L);
+            assertThat(hit.getSequence()).isEqualTo(7);
+        });
+    }
+
+    private static InvertedIndex sampleIndex() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(1L, 1, "How do I configure Redis?");
+        index.add(1L, 2, "Redis cache with Spring cache abstraction and a Redis cache manager");
+        index.add(2L, 1, "Redis or Memcached for sessions?");
+        index.add(3L, 1, "Unrelated question about MySQL indexes");
+        return index;
+    }
+}
@@ -0,0 +1,72 @@
+package com.xingyang.chat.util;
+
+import com.xingyang.chat.model.entity.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Paths grow as runs of consecutive sequences and read back the way they were written
+ *
+ * @author XingYang
+ */
+class MessagePathTest {
+
+    @Test
+    void linearConversationStaysOneRun() {
+        MessagePath path = MessagePath.root();
+        for (int sequence = 1; sequence <= 6; sequence++) {
+            path = path.child(sequence);
+        }
+
+        assertThat(path.toString()).isEqualTo("1-6");
+        assertThat(path.getRanges()).hasSize(1);
+        assertThat(path.leaf()).isEqualTo(6);
+    }
+
+    @Test
+    void forkStartsNewRun() {
+        // 3 and 4 answer 2 on another branch, 5 continues the first branch from 2
+        MessagePath path = MessagePath.root().child(1).child(2).child(5).child(6);
+
+        assertThat(path.toString()).isEqualTo("1-2,5-6");
+        assertThat(path.contains(2)).isTrue();
+        assertThat(path.contains(3)).isFalse();
+        assertThat(path.contains(6)).isTrue();
+        assertThat(path.leaf()).isEqualTo(6);
+    }
+
+    @Test
+    void parsesWhatItWrites() {
+        MessagePath path = MessagePath.parse("1-2,5,9-11");
+
+        assertThat(path.toString()).isEqualTo("1-2,5,9-11");
+        assertThat(path.getRanges()).extracting(MessagePath.Range::getFrom).containsExactly(1, 5, 9);
+        assertThat(path.getRanges()).extracting(MessagePath.Range::getTo).containsExactly(2, 5, 11);
+        assertThat(path.child(12).toString()).isEqualTo("1-2,5,9-12");
+    }
+
+    @Test
+    void messagesWithoutPathAreLinear() {
+        ChatMessage message = new ChatMessage();
+        message.setSequence(4);
+
+        MessagePath path = MessagePath.of(message);
+
+        assertThat(path.toString()).isEqualTo("1-4");
+        assertThat(path.contains(1)).isTrue();
+    }
+
+    @Test
+    void rootIsEmpty() {
+        assertThat(MessagePath.root().isEmpty()).isTrue();
+        assertThat(MessagePath.root().leaf()).isZero();
+        assertThat(MessagePath.root().toString()).isEmpty();
+    }
+
+    @Test
+    void rejectsMalformedPath() {
+        assertThatThrownBy(() -> MessagePath.parse("1-x")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,47 @@
+package com.xingyang.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Words are lower-cased and CJK runs become bigrams, like the ngram full-text parser
+ *
+ * @author XingYang
+ */
+class SearchTokenizerTest {
+
+    @Test
+    void splitsWordsOnPunctuation() {
+        assertThat(SearchTokenizer.tokenize("Hello, Spring-Boot 2.7!"))
+                .containsExactly("hello", "spring", "boot", "2", "7");
+    }
+
+    @Test
+    void splitsCjkIntoBigrams() {
+        assertThat(SearchTokenizer.tokenize("数据库")).containsExactly("数据", "据库");
+        assertThat(SearchTokenizer.tokenize("字")).containsExactly("字");
+    }
+
+    @Test
+    void separatesCjkFromLatin() {
+        assertThat(SearchTokenizer.tokenize("Redis缓存")).containsExactly("redis", "缓存");
+    }
+
+    @Test
+    void cutsLongWords() {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            word.append('a');
+        }
+
+        assertThat(SearchTokenizer.tokenize(word.toString())).singleElement()
+                .satisfies(token -> assertThat(token).hasSize(32));
+    }
+
+    @Test
+    void emptyTextHasNoTokens() {
+        assertThat(SearchTokenizer.tokenize(null)).isEmpty();
+        assertThat(SearchTokenizer.tokenize(" ,. ")).isEmpty();
+    }
+}
@@ -0,0 +1,51 @@
+package com.xingyang.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Chunks cover the whole text and never start with whitespace
+ *
+ * @author XingYang
+ */
+class TokenChunkerTest {
+
+    @Test
+    void chunksCoverWholeText() {
+        String text = "  Hello world, 这是一个测试。\nNext line  with   spaces ";
+
+        for (int perChunk = 1; perChunk <= 5; perChunk++) {
+            List<String> chunks = TokenChunker.split(text, perChunk);
+            assertThat(String.join("", chunks)).isEqualTo(text);
+            assertThat(chunks.subList(1, chunks.size()))
+                    .allSatisfy(chunk -> assertThat(Character.isWhitespace(chunk.charAt(0))).isFalse());
+        }
+    }
+
+    @Test
+    void splitsLongWordsIntoPieces() {
+        assertThat(TokenChunker.split("abcdefghij", 1)).containsExactly("abcd", "efgh", "ij");
+        assertThat(TokenChunker.countTokens("abcdefghij")).isEqualTo(3);
+    }
+
+    @Test
+    void countsEachCjkCharacter() {
+        assertThat(TokenChunker.countTokens("数据库")).isEqualTo(3);
+        assertThat(TokenChunker.split("数据库 ok", 2)).containsExactly("数据", "库 ok");
+    }
+
+    @Test
+    void whitespaceSticksToPreviousToken() {
+        assertThat(TokenChunker.split("one two", 1)).containsExactly("one ", "two");
+    }
+
+    @Test
+    void emptyTextHasNoChunks() {
+        assertThat(TokenChunker.split(null, 1)).isEmpty();
+        assertThat(TokenChunker.split("", 1)).isEmpty();
+        assertThat(TokenChunker.countTokens(null)).isZero();
+    }
+}
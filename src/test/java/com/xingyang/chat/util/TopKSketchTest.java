@@ -0,0 +1,74 @@
+package com.xingyang.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Frequent keys survive eviction and counts never underestimate
+ *
+ * @author XingYang
+ */
+class TopKSketchTest {
+
+    @Test
+    void keepsHeavyHittersWithinCapacity() {
+        TopKSketch sketch = new TopKSketch(10);
+        for (int i = 0; i < 100; i++) {
+            sketch.add("hot");
+            if (i % 2 == 0) {
+                sketch.add("warm");
+            }
+            sketch.add("cold-" + i);
+        }
+
+        List<TopKSketch.Entry> top = sketch.top(2);
+        assertThat(sketch.size()).isEqualTo(10);
+        assertThat(top).extracting(TopKSketch.Entry::getKey).containsExactly("hot", "warm");
+        assertThat(top.get(0).getCount()).isGreaterThanOrEqualTo(100);
+        assertThat(top.get(1).getCount()).isGreaterThanOrEqualTo(50);
+    }
+
+    @Test
+    void newcomerInheritsEvictedCountAsError() {
+        TopKSketch sketch = new TopKSketch(2);
+        sketch.add("a", 5, 0);
+        sketch.add("b", 2, 0);
+        sketch.add("c", 1, 0);
+
+        List<TopKSketch.Entry> top = sketch.top(10);
+        assertThat(top).extracting(TopKSketch.Entry::getKey).containsExactly("a", "c");
+        TopKSketch.Entry newcomer = top.get(1);
+        assertThat(newcomer.getCount()).isEqualTo(3);
+        assertThat(newcomer.getError()).isEqualTo(2);
+        assertThat(newcomer.getCount() - newcomer.getError()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsLargestTag() {
+        TopKSketch sketch = new TopKSketch(4);
+        sketch.add("key", 1, 7);
+        sketch.add("key", 1, 3);
+
+        assertThat(sketch.top(1).get(0).getTag()).isEqualTo(7);
+        assertThat(sketch.top(1).get(0).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    void clearForgetsEverything() {
+        TopKSketch sketch = new TopKSketch(4);
+        sketch.add("key");
+        sketch.clear();
+
+        assertThat(sketch.size()).isZero();
+        assertThat(sketch.top(5)).isEmpty();
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThatThrownBy(() -> new TopKSketch(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,134 @@
+package com.xingyang.chat.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Records survive a restart until they are checkpointed, and a torn tail is dropped
+ *
+ * @author XingYang
+ */
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysRecordsAfterRestart() throws Exception {
+        try (WriteAheadLog wal = open(1 << 20)) {
+            assertThat(wal.recover()).isEmpty();
+            append(wal, "a");
+            append(wal, "b");
+            wal.awaitDurable(append(wal, "c"));
+        }
+
+        try (WriteAheadLog wal = open(1 << 20)) {
+            List<WriteAheadLog.Record> records = wal.recover();
+            assertThat(records).extracting(WriteAheadLog.Record::getLsn).containsExactly(1L, 2L, 3L);
+            assertThat(payloads(records)).containsExactly("a", "b", "c");
+            assertThat(append(wal, "d")).isEqualTo(4L);
+        }
+    }
+
+    @Test
+    void skipsCheckpointedRecords() throws Exception {
+        try (WriteAheadLog wal = open(1 << 20)) {
+            wal.recover();
+            append(wal, "a");
+            append(wal, "b");
+            append(wal, "c");
+            wal.checkpoint(2);
+        }
+
+        try (WriteAheadLog wal = open(1 << 20)) {
+            assertThat(payloads(wal.recover())).containsExactly("c");
+        }
+    }
+
+    @Test
+    void dropsTornTail() throws Exception {
+        try (WriteAheadLog wal = open(1 << 20)) {
+            wal.recover();
+            append(wal, "a");
+            append(wal, "b");
+        }
+        // A crash in the middle of a record: a header promising more bytes than were written
+        Files.write(dir.resolve("wal-1.log"), new byte[]{0, 0, 0, 0, 0, 0, 0, 3, 0, 0, 0, 3, 0, 0, 0, 0, 1, 2},
+                StandardOpenOption.APPEND);
+
+        try (WriteAheadLog wal = open(1 << 20)) {
+            assertThat(payloads(wal.recover())).containsExactly("a", "b");
+            assertThat(append(wal, "c")).isEqualTo(3L);
+        }
+        try (WriteAheadLog wal = open(1 << 20)) {
+            assertThat(payloads(wal.recover())).containsExactly("a", "b", "c");
+        }
+    }
+
+    @Test
+    void deletesSegmentsBelowCheckpoint() throws Exception {
+        try (WriteAheadLog wal = open(1)) {
+            wal.recover();
+            for (int i = 0; i < 5; i++) {
+                append(wal, "record " + i);
+            }
+            assertThat(segments()).hasSize(5);
+
+            // Every record is a segment of its own; the one holding LSN 4 is still needed
+            wal.checkpoint(3);
+            assertThat(segments()).containsExactly("wal-4.log", "wal-5.log");
+        }
+
+        try (WriteAheadLog wal = open(1)) {
+            assertThat(payloads(wal.recover())).containsExactly("record 3", "record 4");
+        }
+    }
+
+    @Test
+    void rejectsAppendsAfterClose() throws Exception {
+        WriteAheadLog wal = open(1 << 20);
+        wal.recover();
+        wal.close();
+
+        assertThatThrownBy(() -> append(wal, "a")).isInstanceOf(IOException.class);
+    }
+
+    private WriteAheadLog open(long segmentBytes) throws IOException {
+        return new WriteAheadLog(dir, segmentBytes, 5, 1 << 20);
+    }
+
+    private static long append(WriteAheadLog wal, String payload) throws IOException {
+        return wal.append(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> payloads(List<WriteAheadLog.Record> records) {
+        return records.stream()
+                .map(record -> new String(record.getPayload(), StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+    }
+
+    private List<String> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("wal-"))
+                    .sorted((a, b) -> Long.compare(lsn(a), lsn(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long lsn(String segment) {
+        return Long.parseLong(segment.substring("wal-".length(), segment.length() - ".log".length()));
+    }
+}